@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The content codings listed in an {@code Accept-Encoding} header. A coding with a quality of {@code 0} is refused
+ * rather than accepted, and {@code *} accepts every coding that is not listed.
+ */
+public final class AcceptEncoding {
+
+    private static final String ANY = "*";
+
+    private final String header;
+    private final Set<String> codings;
+    private final Set<String> refused;
+
+    private AcceptEncoding(String header, Set<String> codings, Set<String> refused) {
+        this.header = header;
+        this.codings = codings;
+        this.refused = refused;
+    }
+
+    public static AcceptEncoding parse(String header) {
+        Set<String> codings = new HashSet<>();
+        Set<String> refused = new HashSet<>();
+        for (String element : header.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (coding.isEmpty()) {
+                continue;
+            }
+            (isRefused(parts) ? refused : codings).add(coding);
+        }
+        return new AcceptEncoding(header, Collections.unmodifiableSet(codings), Collections.unmodifiableSet(refused));
+    }
+
+    /**
+     * @return the header this was parsed from
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the codings that are listed as accepted, in lower case
+     */
+    public Set<String> getCodings() {
+        return codings;
+    }
+
+    /**
+     * @return {@code true} if the given coding is accepted, either by name or by {@code *}
+     */
+    public boolean accepts(String coding) {
+        String lowerCoding = coding.toLowerCase(Locale.ENGLISH);
+        if (codings.contains(lowerCoding)) {
+            return true;
+        }
+        return !refused.contains(lowerCoding) && codings.contains(ANY);
+    }
+
+    private static boolean isRefused(String[] parts) {
+        for (int i = 1; i < parts.length; ++i) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q') && parameter.charAt(1) == '=') {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    //an invalid quality is ignored, as if there was none
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
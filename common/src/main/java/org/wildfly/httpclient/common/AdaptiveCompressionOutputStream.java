@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * A stream that gzips a body only if that is likely to pay off. The start of the body is held back until it is
+ * larger than the threshold, bodies that end before that are written as they are. Once the threshold is passed a
+ * sample of the data is checked, and if it looks compressible (its byte entropy is low enough) the body is gzipped,
+ * otherwise it is passed through.
+ * <p>
+ * Nothing is written to the underlying stream until the decision has been made, so the callback can still add a
+ * {@code Content-Encoding} header to a request that has not been sent yet.
+ */
+public final class AdaptiveCompressionOutputStream extends OutputStream {
+
+    /**
+     * Receives the outcome for each body
+     */
+    public interface Listener {
+
+        /**
+         * @param size           the size of the body
+         * @param compressedSize the size that was written, including the gzip header and trailer
+         * @param cpuTime        the time spent compressing in nanoseconds
+         */
+        void compressed(long size, long compressedSize, long cpuTime);
+
+        void notCompressed(long size);
+    }
+
+    private static final int SAMPLE_SIZE = 4096;
+    /**
+     * Data with more bits of entropy per byte than this is most likely already compressed or encrypted
+     */
+    private static final double MAX_ENTROPY = 7.5;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final OutputStream out;
+    private final int threshold;
+    private final int level;
+    private final Runnable onCompress;
+    private final Listener listener;
+    private final byte[] single = new byte[1];
+    private byte[] head;
+    private int headSize;
+    /**
+     * The stream the body is written to once the decision has been made
+     */
+    private OutputStream target;
+    private CountingOutputStream counter;
+    private long size;
+    private long cpuTime;
+    private boolean closed;
+
+    /**
+     * @param threshold  the size the body has to exceed before it is compressed
+     * @param level      the deflate level
+     * @param onCompress called before anything is written if the body is going to be compressed
+     */
+    public AdaptiveCompressionOutputStream(OutputStream out, int threshold, int level, Runnable onCompress, Listener listener) {
+        this.out = out;
+        this.threshold = threshold;
+        this.level = level;
+        this.onCompress = onCompress;
+        this.listener = listener;
+        this.head = new byte[Math.min(threshold, 512)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw HttpClientMessages.MESSAGES.streamIsClosed();
+        }
+        size += len;
+        if (target == null) {
+            if (headSize + len <= threshold) {
+                if (headSize + len > head.length) {
+                    head = Arrays.copyOf(head, Math.min(threshold, Math.max(headSize + len, head.length * 2)));
+                }
+                System.arraycopy(b, off, head, headSize, len);
+                headSize += len;
+                return;
+            }
+            start(isCompressible(head, headSize, b, off, len));
+            writeTarget(head, 0, headSize);
+            head = null;
+        }
+        writeTarget(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (target != null) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (target == null) {
+            out.write(head, 0, headSize);
+            out.close();
+            listener.notCompressed(size);
+        } else if (counter == null) {
+            out.close();
+            listener.notCompressed(size);
+        } else {
+            long start = cpuTime();
+            target.close();
+            cpuTime += cpuTime() - start;
+            listener.compressed(size, counter.count, cpuTime);
+        }
+    }
+
+    private void start(boolean compress) throws IOException {
+        if (compress) {
+            onCompress.run();
+            counter = new CountingOutputStream(out);
+            long start = cpuTime();
+            target = GzipStreams.compress(counter, level);
+            cpuTime += cpuTime() - start;
+        } else {
+            target = out;
+        }
+    }
+
+    private void writeTarget(byte[] b, int off, int len) throws IOException {
+        if (counter == null) {
+            target.write(b, off, len);
+            return;
+        }
+        long start = cpuTime();
+        target.write(b, off, len);
+        cpuTime += cpuTime() - start;
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Estimates the Shannon entropy of the first {@link #SAMPLE_SIZE} bytes of the two ranges taken together.
+     */
+    static boolean isCompressible(byte[] first, int firstLen, byte[] second, int secondOff, int secondLen) {
+        int[] counts = new int[256];
+        int total = Math.min(firstLen, SAMPLE_SIZE);
+        for (int i = 0; i < total; ++i) {
+            counts[first[i] & 0xFF]++;
+        }
+        int fromSecond = Math.min(secondLen, SAMPLE_SIZE - total);
+        for (int i = 0; i < fromSecond; ++i) {
+            counts[second[secondOff + i] & 0xFF]++;
+        }
+        total += fromSecond;
+        if (total == 0) {
+            return false;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2) <= MAX_ENTROPY;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+
+/**
+ * Collects a request body in pooled buffers, so that a small body can be sent with a {@code Content-Length} header
+ * in a single write once it is complete. If the body grows past the threshold the request is started with chunked
+ * encoding, the data collected so far is written to it and the rest of the body is streamed.
+ */
+final class BufferedRequestOutputStream extends OutputStream {
+
+    /**
+     * Sends the request and returns the stream for its body.
+     */
+    interface RequestStarter {
+
+        /**
+         * @param contentLength the length of the body, or {@code -1} if it is sent with chunked encoding
+         */
+        WildflyClientOutputStream start(long contentLength) throws IOException;
+    }
+
+    private final ByteBufferPool bufferPool;
+    private final int threshold;
+    private final RequestStarter starter;
+    private final Deque<PooledByteBuffer> buffers = new ArrayDeque<>(2);
+    private int size;
+    private WildflyClientOutputStream stream;
+    private boolean started;
+    private boolean closed;
+
+    BufferedRequestOutputStream(ByteBufferPool bufferPool, int threshold, RequestStarter starter) {
+        this.bufferPool = bufferPool;
+        this.threshold = threshold;
+        this.starter = starter;
+    }
+
+    /**
+     * @return {@code true} once sending the request has begun, after that a failure may have left a partial request
+     * on the connection
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        if (stream == null) {
+            if (size < threshold) {
+                buffer().put((byte) b);
+                ++size;
+                return;
+            }
+            startChunked();
+        }
+        stream.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        if (stream == null) {
+            if (len <= threshold - size) {
+                while (len > 0) {
+                    ByteBuffer buffer = buffer();
+                    int put = Math.min(len, buffer.remaining());
+                    buffer.put(b, off, put);
+                    off += put;
+                    len -= put;
+                    size += put;
+                }
+                return;
+            }
+            startChunked();
+        }
+        stream.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Sends the request if it has not been sent yet, and completes the body.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (stream == null) {
+                started = true;
+                stream = starter.start(size);
+                writeBuffers();
+            }
+            stream.close();
+        } finally {
+            discard();
+        }
+    }
+
+    /**
+     * Releases the buffered data without sending anything, for when marshalling the body has failed.
+     */
+    void discard() {
+        closed = true;
+        PooledByteBuffer buffer;
+        while ((buffer = buffers.poll()) != null) {
+            buffer.close();
+        }
+    }
+
+    private void startChunked() throws IOException {
+        started = true;
+        stream = starter.start(-1);
+        writeBuffers();
+    }
+
+    private void writeBuffers() throws IOException {
+        PooledByteBuffer buffer;
+        while ((buffer = buffers.poll()) != null) {
+            stream.write(buffer);
+        }
+    }
+
+    private ByteBuffer buffer() {
+        PooledByteBuffer last = buffers.peekLast();
+        if (last != null && last.getBuffer().hasRemaining()) {
+            return last.getBuffer();
+        }
+        PooledByteBuffer buffer = bufferPool.allocate();
+        buffers.add(buffer);
+        return buffer.getBuffer();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw HttpClientMessages.MESSAGES.streamIsClosed();
+        }
+    }
+}
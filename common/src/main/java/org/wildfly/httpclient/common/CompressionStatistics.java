@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for bodies that went through an {@link AdaptiveCompressionOutputStream}, so the benefit of compression
+ * can be weighed against the CPU time it costs.
+ */
+public final class CompressionStatistics implements AdaptiveCompressionOutputStream.Listener {
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder notCompressed = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder cpuTime = new LongAdder();
+
+    @Override
+    public void compressed(long size, long compressedSize, long cpuTime) {
+        compressed.increment();
+        uncompressedBytes.add(size);
+        compressedBytes.add(compressedSize);
+        this.cpuTime.add(cpuTime);
+    }
+
+    @Override
+    public void notCompressed(long size) {
+        notCompressed.increment();
+    }
+
+    /**
+     * @return the number of bodies that were compressed
+     */
+    public long getCompressed() {
+        return compressed.sum();
+    }
+
+    /**
+     * @return the number of bodies that were sent as they were, because they were too small or did not look
+     * compressible
+     */
+    public long getNotCompressed() {
+        return notCompressed.sum();
+    }
+
+    /**
+     * @return the size of the compressed bodies before compression
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return the compressed size divided by the uncompressed size of all compressed bodies, or {@code 1} if nothing
+     * has been compressed yet
+     */
+    public double getCompressionRatio() {
+        long uncompressed = uncompressedBytes.sum();
+        return uncompressed == 0 ? 1 : (double) compressedBytes.sum() / uncompressed;
+    }
+
+    /**
+     * @return the CPU time spent compressing in nanoseconds, or the elapsed time if the JVM does not measure thread
+     * CPU time
+     */
+    public long getCpuTime() {
+        return cpuTime.sum();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive limit on the number of requests a pool has in flight, based on the gradient algorithm from Netflix's
+ * concurrency-limits library.
+ * <p>
+ * Each completed request is compared against a long term average of the round trip time. While the two are close
+ * the limit grows by roughly its square root, once requests start taking longer than the average (so they are
+ * queueing somewhere) the limit shrinks in proportion. Failed requests cut the limit multiplicatively. The limit
+ * never goes above the configured maximum, which is also where it starts.
+ */
+final class ConcurrencyLimiter {
+
+    private static final int MIN_LIMIT = 1;
+    /**
+     * How much the current round trip time may exceed the long term average before the limit is reduced
+     */
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    /**
+     * The number of samples the long term round trip time is averaged over
+     */
+    private static final int LONG_WINDOW = 600;
+
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRtt;
+
+    ConcurrencyLimiter(int maxLimit) {
+        this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+        this.limit = this.maxLimit;
+        this.estimatedLimit = this.maxLimit;
+    }
+
+    boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param rtt     the time the request held its connection for in nanoseconds
+     * @param dropped {@code true} if the request failed
+     * @return {@code true} if the limit has changed
+     */
+    synchronized boolean onSample(long rtt, boolean dropped) {
+        double newLimit;
+        if (dropped) {
+            newLimit = estimatedLimit * BACKOFF_RATIO;
+        } else {
+            if (rtt <= 0) {
+                return false;
+            }
+            longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / LONG_WINDOW;
+            if (longRtt / rtt > 2) {
+                //the backend has recovered, so let the long term average catch up faster
+                longRtt *= 0.95;
+            }
+            if (inFlight.get() < estimatedLimit / 2) {
+                //we are not using the limit we have, so there is nothing to learn from this sample
+                return false;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+            newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        }
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(MIN_LIMIT, Math.min(maxLimit, newLimit));
+        int old = limit;
+        limit = (int) estimatedLimit;
+        return old != limit;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Gzip streams that take their {@link Deflater} and {@link Inflater} from a shared pool. The JDK gzip streams create
+ * new native zlib state for every stream and only free it when the stream is closed or collected, which shows up as
+ * allocation churn when many bodies are compressed.
+ * <p>
+ * The zlib state is returned to the pool when the stream is closed, or for an input stream also once the end of the
+ * compressed data has been read.
+ */
+public final class GzipStreams {
+
+    private static final int POOL_SIZE = 32;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final byte[] HEADER = {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private static final AtomicReferenceArray<Deflater> DEFLATERS = new AtomicReferenceArray<>(POOL_SIZE);
+    private static final AtomicReferenceArray<Inflater> INFLATERS = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private GzipStreams() {
+    }
+
+    /**
+     * Creates a stream that gzips the data written to it. Closing it finishes the gzip data and closes {@code out}.
+     *
+     * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public static OutputStream compress(OutputStream out, int level) throws IOException {
+        return new GzipOutputStream(out, level);
+    }
+
+    /**
+     * Creates a stream that reads the gzip data from {@code in}. Closing it closes {@code in}.
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        return new GzipInputStream(in);
+    }
+
+    /**
+     * Takes a raw deflater, which has to be handed back to {@link #release(Deflater)} once it is no longer used.
+     */
+    static Deflater takeDeflater(int level) {
+        Deflater deflater = take(DEFLATERS);
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    static void release(Deflater deflater) {
+        deflater.reset();
+        if (!put(DEFLATERS, deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Takes a raw inflater, which has to be handed back to {@link #release(Inflater)} once it is no longer used.
+     */
+    static Inflater takeInflater() {
+        Inflater inflater = take(INFLATERS);
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    static void release(Inflater inflater) {
+        inflater.reset();
+        if (!put(INFLATERS, inflater)) {
+            inflater.end();
+        }
+    }
+
+    private static <T> T take(AtomicReferenceArray<T> slots) {
+        for (int i = 0; i < slots.length(); ++i) {
+            if (slots.get(i) != null) {
+                T value = slots.getAndSet(i, null);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static <T> boolean put(AtomicReferenceArray<T> slots, T value) {
+        for (int i = 0; i < slots.length(); ++i) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class GzipOutputStream extends DeflaterOutputStream {
+
+        private final CRC32 crc = new CRC32();
+        private final byte[] single = new byte[1];
+        private boolean finished;
+        private boolean closed;
+
+        GzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, takeDeflater(level), BUFFER_SIZE);
+            try {
+                out.write(HEADER);
+            } catch (IOException | RuntimeException e) {
+                closed = true;
+                release(def);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            //the deflater may already belong to another stream
+            if (closed) {
+                throw HttpClientMessages.MESSAGES.streamIsClosed();
+            }
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            super.finish();
+            finished = true;
+            byte[] trailer = new byte[8];
+            writeInt(trailer, 0, (int) crc.getValue());
+            writeInt(trailer, 4, (int) def.getBytesRead());
+            out.write(trailer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+            } finally {
+                try {
+                    out.close();
+                } finally {
+                    release(def);
+                }
+            }
+        }
+
+        private static void writeInt(byte[] b, int off, int value) {
+            b[off] = (byte) value;
+            b[off + 1] = (byte) (value >> 8);
+            b[off + 2] = (byte) (value >> 16);
+            b[off + 3] = (byte) (value >> 24);
+        }
+    }
+
+    private static final class GzipInputStream extends InflaterInputStream {
+
+        private final CRC32 crc = new CRC32();
+        private boolean eos;
+        /**
+         * The error the stream has failed with, it is thrown again by any further read
+         */
+        private ZipException failure;
+        private boolean released;
+        /**
+         * The number of bytes of the trailer already consumed from the inflater's left over input
+         */
+        private int trailerOffset;
+
+        GzipInputStream(InputStream in) throws IOException {
+            super(in, takeInflater(), BUFFER_SIZE);
+            try {
+                readHeader();
+            } catch (IOException | RuntimeException e) {
+                releaseInflater();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (eos) {
+                return -1;
+            }
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                if (!inf.finished()) {
+                    throw fail("preset dictionaries are not supported");
+                }
+                readTrailer();
+                eos = true;
+                return -1;
+            }
+            crc.update(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eos || failure != null ? 0 : super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                releaseInflater();
+            }
+        }
+
+        private void releaseInflater() {
+            if (!released) {
+                released = true;
+                release(inf);
+            }
+        }
+
+        private void readHeader() throws IOException {
+            if (readShort() != GZIP_MAGIC || readByte() != Deflater.DEFLATED) {
+                throw HttpClientMessages.MESSAGES.invalidGzipData("not in gzip format");
+            }
+            int flags = readByte();
+            //modification time, extra flags and operating system
+            skip(6);
+            if ((flags & FEXTRA) != 0) {
+                skip(readShort());
+            }
+            if ((flags & FNAME) != 0) {
+                while (readByte() != 0) {
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (readByte() != 0) {
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                skip(2);
+            }
+        }
+
+        private void readTrailer() throws IOException {
+            long expectedCrc = readInt() & 0xFFFFFFFFL;
+            long expectedSize = readInt() & 0xFFFFFFFFL;
+            long size = inf.getBytesWritten() & 0xFFFFFFFFL;
+            if (expectedCrc != crc.getValue() || expectedSize != size) {
+                throw fail("corrupt trailer");
+            }
+        }
+
+        /**
+         * Fails the stream for good. The inflater is only given back to the pool by {@link #close()}, so a read after
+         * the failure can not touch an inflater that already belongs to another stream.
+         */
+        private ZipException fail(String reason) {
+            failure = HttpClientMessages.MESSAGES.invalidGzipData(reason);
+            return failure;
+        }
+
+        private int readInt() throws IOException {
+            return readShort() | (readShort() << 16);
+        }
+
+        private int readShort() throws IOException {
+            return readByte() | (readByte() << 8);
+        }
+
+        /**
+         * Reads a byte that is not part of the deflate data. Once inflating has started the inflater may already have
+         * been handed some of the bytes that follow the deflate data, so those are read first.
+         */
+        private int readByte() throws IOException {
+            if (trailerOffset < inf.getRemaining()) {
+                return buf[len - inf.getRemaining() + trailerOffset++] & 0xFF;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw HttpClientMessages.MESSAGES.invalidGzipData("unexpected end of stream");
+            }
+            return b;
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; ++i) {
+                readByte();
+            }
+        }
+    }
+}
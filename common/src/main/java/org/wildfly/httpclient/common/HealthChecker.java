@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioWorker;
+import org.xnio.channels.Channels;
+import io.undertow.client.ClientCallback;
+import io.undertow.client.ClientConnection;
+import io.undertow.client.ClientExchange;
+import io.undertow.client.ClientRequest;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.NetworkUtils;
+
+/**
+ * Periodically sends a {@code HEAD} request to every address of a {@link HostPool} on a new connection, and feeds
+ * the result into the address selection. Any response below 500 counts as healthy, an error response, a connection
+ * failure or no response within the check interval counts as unhealthy.
+ */
+final class HealthChecker implements Runnable {
+
+    private final HttpConnectionPool connectionPool;
+    private final HostPool hostPool;
+    private final XnioWorker worker;
+    private final long interval;
+    private final String path;
+    private final String host;
+    private XnioExecutor.Key timerKey;
+    private boolean stopped;
+
+    HealthChecker(HttpConnectionPool connectionPool, HostPool hostPool, XnioWorker worker, long interval, String path) {
+        this.connectionPool = connectionPool;
+        this.hostPool = hostPool;
+        this.worker = worker;
+        this.interval = interval;
+        URI uri = hostPool.getUri();
+        if (path != null) {
+            this.path = path;
+        } else {
+            this.path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        }
+        String host = NetworkUtils.formatPossibleIpv6Address(uri.getHost());
+        this.host = uri.getPort() == -1 ? host : host + ":" + uri.getPort();
+    }
+
+    synchronized void start() {
+        if (!stopped && timerKey == null) {
+            timerKey = worker.getIoThread().executeAfter(this, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (timerKey != null) {
+            timerKey.remove();
+            timerKey = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            timerKey = worker.getIoThread().executeAfter(this, interval, TimeUnit.MILLISECONDS);
+        }
+        if (!hostPool.isResolved()) {
+            hostPool.resolve(worker, this::checkAll);
+        } else {
+            checkAll();
+        }
+    }
+
+    private void checkAll() {
+        for (HostPool.AddressResult address : hostPool.getResolvedAddresses()) {
+            check(address);
+        }
+    }
+
+    private void check(HostPool.AddressResult address) {
+        final AtomicBoolean reported = new AtomicBoolean();
+        connectionPool.connectForHealthCheck(address, new ClientCallback<ClientConnection>() {
+            @Override
+            public void completed(ClientConnection connection) {
+                XnioExecutor.Key timeout = connection.getIoThread().executeAfter(() -> {
+                    if (reported.compareAndSet(false, true)) {
+                        address.healthCheckFailed();
+                    }
+                    IoUtils.safeClose(connection);
+                }, interval, TimeUnit.MILLISECONDS);
+                connection.getCloseSetter().set((ChannelListener<ClientConnection>) c -> {
+                    timeout.remove();
+                    if (reported.compareAndSet(false, true)) {
+                        address.healthCheckFailed();
+                    }
+                });
+                ClientRequest request = new ClientRequest().setMethod(Methods.HEAD).setPath(path);
+                request.getRequestHeaders().put(Headers.HOST, host);
+                connection.sendRequest(request, new ClientCallback<ClientExchange>() {
+                    @Override
+                    public void completed(ClientExchange result) {
+                        result.setResponseListener(new ClientCallback<ClientExchange>() {
+                            @Override
+                            public void completed(ClientExchange result) {
+                                if (reported.compareAndSet(false, true)) {
+                                    if (result.getResponse().getResponseCode() < 500) {
+                                        address.healthCheckPassed();
+                                    } else {
+                                        address.healthCheckFailed();
+                                    }
+                                }
+                                try {
+                                    Channels.drain(result.getResponseChannel(), Long.MAX_VALUE);
+                                } catch (IOException ignored) {
+                                }
+                                IoUtils.safeClose(connection);
+                            }
+
+                            @Override
+                            public void failed(IOException e) {
+                                IoUtils.safeClose(connection);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void failed(IOException e) {
+                        IoUtils.safeClose(connection);
+                    }
+                });
+            }
+
+            @Override
+            public void failed(IOException e) {
+                if (reported.compareAndSet(false, true)) {
+                    address.healthCheckFailed();
+                }
+            }
+        });
+    }
+}
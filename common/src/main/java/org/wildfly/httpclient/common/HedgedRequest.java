@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An idempotent request that may be sent twice. If the first attempt has not completed within the hedging delay a
+ * second attempt is sent, the first of the two to complete is used and the other is aborted, see
+ * {@link HttpConnectionPool.ConnectionHandle#abort()}. A failure is only reported once neither attempt can succeed
+ * any more.
+ */
+final class HedgedRequest {
+
+    final Attempt primary = new Attempt();
+    final Attempt hedge = new Attempt();
+    private final long start = System.nanoTime();
+    private boolean done;
+    private boolean hedgeStarted;
+    private TimerWheel.Timeout timer;
+
+    /**
+     * Sends the hedged attempt once the delay has passed, unless the request has already completed or failed by then.
+     */
+    void start(TimerWheel timerWheel, long delay, Runnable sendHedge) {
+        TimerWheel.Timeout timer = new TimerWheel.Timeout(() -> {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                hedgeStarted = true;
+            }
+            sendHedge.run();
+        });
+        synchronized (this) {
+            this.timer = timer;
+        }
+        timerWheel.schedule(timer, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the address the first attempt was sent to, or {@code null} if it does not have a connection yet
+     */
+    synchronized InetAddress getPrimaryAddress() {
+        if (primary.connection == null) {
+            return null;
+        }
+        InetSocketAddress address = primary.connection.getConnection().getPeerAddress(InetSocketAddress.class);
+        return address == null ? null : address.getAddress();
+    }
+
+    /**
+     * @return the time since the request was started in nanoseconds
+     */
+    long elapsed() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Cancels both attempts, used when the request has timed out.
+     */
+    void cancel() {
+        finish(null);
+    }
+
+    /**
+     * Marks the request as done and cancels the attempts that did not win.
+     *
+     * @return {@code false} if the request was already done
+     */
+    private boolean finish(Attempt winner) {
+        HttpConnectionPool.ConnectionHandle primaryConnection;
+        HttpConnectionPool.ConnectionHandle hedgeConnection;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            if (winner != null) {
+                winner.won = true;
+            }
+            if (timer != null) {
+                timer.cancel();
+            }
+            primaryConnection = winner == primary ? null : primary.connection;
+            hedgeConnection = winner == hedge ? null : hedge.connection;
+        }
+        close(primaryConnection);
+        close(hedgeConnection);
+        return true;
+    }
+
+    private static void close(HttpConnectionPool.ConnectionHandle connection) {
+        if (connection != null) {
+            connection.abort();
+        }
+    }
+
+    final class Attempt {
+
+        private HttpConnectionPool.ConnectionHandle connection;
+        private boolean failed;
+        private boolean won;
+
+        /**
+         * Records the connection the attempt is sent on.
+         *
+         * @return {@code false} if the request is already done, in which case the connection should be released
+         */
+        boolean attach(HttpConnectionPool.ConnectionHandle connection) {
+            synchronized (HedgedRequest.this) {
+                this.connection = connection;
+                return !done;
+            }
+        }
+
+        /**
+         * Forgets the connection the attempt was sent on, this must be called before the connection is released, as
+         * it may then be given to another request that the attempt must not cancel.
+         */
+        void detach(HttpConnectionPool.ConnectionHandle connection) {
+            synchronized (HedgedRequest.this) {
+                if (this.connection == connection) {
+                    this.connection = null;
+                }
+            }
+        }
+
+        /**
+         * Called when this attempt has received its response.
+         *
+         * @return {@code true} if this is the first attempt to complete, and so the one whose response is used
+         */
+        boolean complete() {
+            return finish(this);
+        }
+
+        /**
+         * @return {@code true} if the request is done, because an attempt has completed or the request was cancelled
+         */
+        boolean isDone() {
+            synchronized (HedgedRequest.this) {
+                return done;
+            }
+        }
+
+        /**
+         * @return {@code true} if this attempt's response was the one that was used
+         */
+        boolean isWinner() {
+            synchronized (HedgedRequest.this) {
+                return won;
+            }
+        }
+
+        /**
+         * Called when this attempt has failed.
+         *
+         * @return {@code true} if the failure should be reported, because the other attempt has also failed or was
+         * never sent
+         */
+        boolean fail() {
+            synchronized (HedgedRequest.this) {
+                if (done) {
+                    return false;
+                }
+                failed = true;
+                if (hedgeStarted && !(primary.failed && hedge.failed)) {
+                    return false;
+                }
+            }
+            return finish(null);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long an idempotent request waits for a response before a hedged attempt is sent. The delay is the 95th
+ * percentile of the recent response times of idempotent requests to the target, so only the slowest few percent of
+ * requests are ever sent twice.
+ */
+final class HedgingPolicy {
+
+    private static final int WINDOW = 128;
+    /**
+     * The number of response times that are needed before requests are hedged
+     */
+    private static final int MIN_SAMPLES = 20;
+    /**
+     * Once the window is full the percentile is only recalculated after this many new samples
+     */
+    private static final int RECALCULATE_INTERVAL = 16;
+    private static final double PERCENTILE = 0.95;
+
+    private final long[] samples = new long[WINDOW];
+    private int next;
+    private int size;
+    private volatile long delay = -1;
+
+    /**
+     * @param responseTime the time it took to get a response to an idempotent request in nanoseconds
+     */
+    synchronized void record(long responseTime) {
+        samples[next] = responseTime;
+        next = (next + 1) % WINDOW;
+        if (size < WINDOW) {
+            size++;
+        } else if (next % RECALCULATE_INTERVAL != 0) {
+            return;
+        }
+        if (size >= MIN_SAMPLES) {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            delay = sorted[(int) Math.ceil(size * PERCENTILE) - 1];
+        }
+    }
+
+    /**
+     * @return the hedging delay in milliseconds, or -1 if not enough requests have completed to know it yet
+     */
+    long getDelayMillis() {
+        long delay = this.delay;
+        return delay < 0 ? -1 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay));
+    }
+}
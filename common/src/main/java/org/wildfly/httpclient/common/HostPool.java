@@ -18,14 +18,25 @@
 
 package org.wildfly.httpclient.common;
 
+import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.xnio.OptionMap;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioWorker;
+
 /**
  * A host pool is defined as one or more hosts that are are serving
  * the same back end applications.
@@ -44,59 +55,368 @@ import java.util.concurrent.atomic.AtomicLong;
  * This host pool will attempt to simply use a single address, if it is notified of failure on that address it will
  * instead select a different URI. If there are multiple addresses per URI then the next time the URI is selected
  * it will attempt to use a new address.
+ * <p>
+ * If {@link HttpClientOptions#LOAD_BALANCE_ADDRESSES} is enabled new connections are instead spread over all
+ * resolved addresses. Each connection picks the better of two randomly chosen addresses, based on an exponentially
+ * weighted moving average of the connect time and response latency of each address and the number of connections
+ * that are already open to it.
+ * <p>
+ * The host name is resolved on a worker thread rather than by the thread that first needs an address, as this can be
+ * an IO thread. If {@link HttpClientOptions#DNS_REFRESH_INTERVAL} is set it is then periodically re-resolved in the
+ * background. Connections to addresses that are no longer returned by the resolver are not reused, and are closed
+ * once their current request is done.
+ * <p>
+ * If {@link HttpClientOptions#CIRCUIT_BREAKER_THRESHOLD} is set each address also has a circuit breaker. Once that
+ * many connection attempts in a row have failed the address is not used until the backoff has expired, after which a
+ * single probe connection is allowed through. If the probe succeeds the address is used again, otherwise the backoff
+ * is doubled. If every address is unavailable connection attempts fail straight away.
+ * <p>
+ * If {@link HttpClientOptions#HEALTH_CHECK_INTERVAL} is set the connection pool also checks every address in the
+ * background. Addresses that fail the check are not used until they pass it again. If every address has failed the
+ * check the health checks are ignored and all addresses are used, as a failing check may be a problem with the check
+ * itself rather than the server, and failing every request is never better than trying.
  *
  *
  * @author Stuart Douglas
  */
 public class HostPool {
 
+    /**
+     * The weight given to each new latency sample in the moving average
+     */
+    private static final double EWMA_WEIGHT = 0.3;
+    /**
+     * The latency sample that is recorded when a connection to an address fails
+     */
+    private static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * The maximum factor the circuit breaker backoff is increased by after repeated failed probes
+     */
+    private static final int MAX_BACKOFF_MULTIPLIER = 16;
+
     private final URI uri;
-    private volatile InetAddress[] addresses;
+    private final boolean loadBalance;
+    private final long refreshInterval;
+    private final int breakerThreshold;
+    private final long breakerBackoff;
+    private volatile AddressState[] addresses;
     private volatile int currentAddress;
     private final AtomicLong failureCount = new AtomicLong();
 
+    /**
+     * The failure from the last resolution attempt if it failed, this is reported to the next caller of
+     * {@link AddressResult#getAddress()} who will then retry the resolution
+     */
+    private volatile UnknownHostException resolveFailure;
+    /**
+     * The tasks that are waiting for the current resolution to complete, or {@code null} if we are not resolving
+     */
+    private List<Runnable> resolveWaiters;
+    private XnioWorker worker;
+    private XnioExecutor.Key refreshKey;
+    private boolean closed;
+
     public HostPool(URI uri) {
+        this(uri, OptionMap.EMPTY);
+    }
+
+    public HostPool(URI uri, OptionMap options) {
         this.uri = uri;
+        this.loadBalance = options.get(HttpClientOptions.LOAD_BALANCE_ADDRESSES, false);
+        this.refreshInterval = options.get(HttpClientOptions.DNS_REFRESH_INTERVAL, 0L);
+        this.breakerThreshold = options.get(HttpClientOptions.CIRCUIT_BREAKER_THRESHOLD, 0);
+        this.breakerBackoff = TimeUnit.MILLISECONDS.toNanos(options.get(HttpClientOptions.CIRCUIT_BREAKER_BACKOFF, 5000L));
     }
 
     public AddressResult getAddress() {
         return new AddressResult(failureCount.get());
     }
 
-    private InetAddress getAddressImpl() throws UnknownHostException {
-        while (true) {
-            InetAddress[] addresses = this.addresses;
-            int currentAddress = this.currentAddress;
-            if (addresses == null) {
+    /**
+     * Returns an address other than the given one if another address is available, this is used to send a hedged
+     * request to a different node than the original.
+     */
+    AddressResult getAddress(InetAddress avoid) {
+        return new AddressResult(failureCount.get(), avoid);
+    }
+
+    /**
+     * Returns {@code true} if an address can be returned without blocking on the resolver.
+     */
+    boolean isResolved() {
+        return addresses != null || resolveFailure != null;
+    }
+
+    /**
+     * Resolves the host name on a worker thread, and runs the task once the resolution is complete.
+     * If a resolution is already in progress the task will run once it has completed.
+     */
+    void resolve(XnioWorker worker, Runnable task) {
+        synchronized (this) {
+            this.worker = worker;
+            if (!isResolved()) {
+                if (resolveWaiters == null) {
+                    resolveWaiters = new ArrayList<>();
+                    executeResolve(worker);
+                }
+                resolveWaiters.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    private void executeResolve(Executor executor) {
+        executor.execute(() -> {
+            List<Runnable> waiters;
+            try {
+                updateAddresses(lookup());
+                resolveFailure = null;
+            } catch (UnknownHostException e) {
+                if (addresses == null) {
+                    resolveFailure = e;
+                } else {
+                    //keep using the addresses we already have
+                    HttpClientMessages.MESSAGES.debugf(e, "Failed to re-resolve %s", uri.getHost());
+                }
+            }
+            synchronized (this) {
+                waiters = resolveWaiters;
+                resolveWaiters = null;
+                scheduleRefresh();
+            }
+            if (waiters != null) {
+                for (Runnable waiter : waiters) {
+                    waiter.run();
+                }
+            }
+        });
+    }
+
+    private void scheduleRefresh() {
+        assert Thread.holdsLock(this);
+        if (refreshInterval > 0 && refreshKey == null && worker != null && !closed) {
+            refreshKey = worker.getIoThread().executeAfter(() -> {
                 synchronized (this) {
-                    if ((addresses = this.addresses) == null) {
-                        addresses = InetAddress.getAllByName(uri.getHost());
-                        InetAddress primary = InetAddress.getByName(uri.getHost());
-                        List<InetAddress> filtered = new ArrayList<>();
-                        //TODO: how to we handle addresses of different classes?
-                        //at the moment we only take addresses of the same type that is returned from getByName
-                        for(InetAddress a : addresses) {
-                            if(primary.getClass().isAssignableFrom(a.getClass())) {
-                                filtered.add(a);
-                            }
-                        }
-                        addresses = this.addresses = filtered.toArray(new InetAddress[filtered.size()]);
+                    refreshKey = null;
+                }
+                executeResolve(worker);
+            }, refreshInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background re-resolution of the host name.
+     */
+    synchronized void close() {
+        closed = true;
+        if (refreshKey != null) {
+            refreshKey.remove();
+            refreshKey = null;
+        }
+    }
+
+    /**
+     * Resolves the addresses of the host, this is package private so tests can supply their own addresses.
+     */
+    InetAddress[] lookup() throws UnknownHostException {
+        InetAddress[] all = InetAddress.getAllByName(uri.getHost());
+        InetAddress primary = InetAddress.getByName(uri.getHost());
+        List<InetAddress> filtered = new ArrayList<>();
+        //TODO: how to we handle addresses of different classes?
+        //at the moment we only take addresses of the same type that is returned from getByName
+        for(InetAddress a : all) {
+            if(primary.getClass().isAssignableFrom(a.getClass())) {
+                filtered.add(a);
+            }
+        }
+        if (filtered.isEmpty()) {
+            throw new UnknownHostException(uri.getHost());
+        }
+        return filtered.toArray(new InetAddress[filtered.size()]);
+    }
+
+    /**
+     * Swaps in a newly resolved address list. The state of addresses that are still present is kept, addresses that
+     * have gone are marked as removed so their connections are drained.
+     */
+    private synchronized void updateAddresses(InetAddress[] resolved) {
+        AddressState[] old = this.addresses;
+        if (old == null) {
+            AddressState[] addresses = new AddressState[resolved.length];
+            for (int i = 0; i < resolved.length; ++i) {
+                addresses[i] = new AddressState(resolved[i]);
+            }
+            this.currentAddress = new Random().nextInt(addresses.length);
+            this.addresses = addresses;
+            return;
+        }
+        AddressState current = old[currentAddress];
+        AddressState[] addresses = new AddressState[resolved.length];
+        int newCurrent = -1;
+        for (int i = 0; i < resolved.length; ++i) {
+            for (AddressState existing : old) {
+                if (existing.address.equals(resolved[i])) {
+                    addresses[i] = existing;
+                    break;
+                }
+            }
+            if (addresses[i] == null) {
+                addresses[i] = new AddressState(resolved[i]);
+            }
+            if (addresses[i] == current) {
+                newCurrent = i;
+            }
+        }
+        for (AddressState existing : old) {
+            boolean found = false;
+            for (AddressState a : addresses) {
+                if (a == existing) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                existing.removed = true;
+            }
+        }
+        this.currentAddress = newCurrent == -1 ? new Random().nextInt(addresses.length) : newCurrent;
+        this.addresses = addresses;
+    }
+
+    private AddressState[] resolveAddresses() throws UnknownHostException {
+        AddressState[] addresses = this.addresses;
+        if (addresses == null) {
+            UnknownHostException failure = resolveFailure;
+            if (failure != null) {
+                resolveFailure = null; //the next attempt will try again
+                throw failure;
+            }
+            synchronized (this) {
+                if ((addresses = this.addresses) == null) {
+                    updateAddresses(lookup());
+                    addresses = this.addresses;
+                    scheduleRefresh();
+                }
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Returns a result for each address the host currently resolves to, or an empty list if it has not been resolved.
+     */
+    List<AddressResult> getResolvedAddresses() {
+        AddressState[] addresses = this.addresses;
+        if (addresses == null) {
+            return Collections.emptyList();
+        }
+        List<AddressResult> results = new ArrayList<>(addresses.length);
+        for (AddressState address : addresses) {
+            results.add(new AddressResult(address));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of addresses the host currently resolves to, or 1 if it has not been resolved yet.
+     */
+    int getAddressCount() {
+        AddressState[] addresses = this.addresses;
+        return addresses == null ? 1 : addresses.length;
+    }
+
+    private AddressState getAddressImpl(InetAddress avoid, AddressResult result) throws UnknownHostException, ConnectException {
+        for (;;) {
+            AddressState[] addresses = resolveAddresses();
+            long now = System.nanoTime();
+            boolean checkHealth = isAnyHealthy(addresses);
+            AddressState selected;
+            if (loadBalance) {
+                selected = selectAddress(addresses, now, avoid, checkHealth);
+            } else {
+                int currentAddress = this.currentAddress;
+                if (currentAddress >= addresses.length) {
+                    continue; //minor chance of a race, as the address list and current address are not invoked atomically just re-invoke
+                }
+                selected = null;
+                for (int i = 0; i < addresses.length; ++i) {
+                    AddressState candidate = addresses[(currentAddress + i) % addresses.length];
+                    if (candidate.isAvailable(now, checkHealth) && !candidate.address.equals(avoid)) {
+                        selected = candidate;
+                        break;
                     }
-                    this.currentAddress = currentAddress = new Random().nextInt(this.addresses.length);
                 }
             }
-            if (currentAddress >= addresses.length) {
-                continue; //minor chance of a race, as the address list and current address are not invoked atomically just re-invoke
+            if (selected == null) {
+                if (avoid != null) {
+                    //there is no other address, so use whatever is available
+                    return getAddressImpl(null, result);
+                }
+                throw HttpClientMessages.MESSAGES.allAddressesUnavailable(uri);
+            }
+            if (!selected.open) {
+                return selected;
             }
-            return addresses[currentAddress];
+            if (selected.probing.compareAndSet(false, true)) {
+                result.probe = true;
+                return selected;
+            }
+            //another thread got the probe, try again
         }
     }
 
+    /**
+     * Power of two choices, we pick two available addresses at random and use the one with the lower load.
+     */
+    private static AddressState selectAddress(AddressState[] addresses, long now, InetAddress avoid, boolean checkHealth) {
+        List<AddressState> available = new ArrayList<>(addresses.length);
+        for (AddressState address : addresses) {
+            if (address.isAvailable(now, checkHealth) && !address.address.equals(avoid)) {
+                available.add(address);
+            }
+        }
+        if (available.size() < 2) {
+            return available.isEmpty() ? null : available.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        AddressState a = available.get(first);
+        AddressState b = available.get(second);
+        return a.load() <= b.load() ? a : b;
+    }
+
+    /**
+     * Returns {@code false} if every address has failed its last health check, in which case the health checks are
+     * ignored when selecting an address.
+     */
+    private static boolean isAnyHealthy(AddressState[] addresses) {
+        for (AddressState address : addresses) {
+            if (!address.unhealthy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public URI getUri() {
         return uri;
     }
 
-    private void markError() {
+    private void markError(AddressState address) {
+        if (address != null) {
+            address.recordLatency(Math.max(FAILURE_PENALTY, address.latency * 2));
+            if (breakerThreshold > 0) {
+                address.recordFailure(breakerThreshold, breakerBackoff);
+            }
+        }
+        if (loadBalance) {
+            return;
+        }
         synchronized (this) {
             int current = currentAddress;
             current++;
@@ -106,24 +426,197 @@ public class HostPool {
             this.currentAddress = current;
         }
     }
+
+    private static final class AddressState {
+
+        final InetAddress address;
+        final AtomicInteger connections = new AtomicInteger();
+        /**
+         * If this address is no longer returned by the resolver
+         */
+        volatile boolean removed;
+        /**
+         * If this address failed the last health check
+         */
+        volatile boolean unhealthy;
+        /**
+         * The circuit breaker state. While the breaker is open the address is only used for a single probe once
+         * {@link #openUntil} has passed.
+         */
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicBoolean probing = new AtomicBoolean();
+        volatile boolean open;
+        volatile long openUntil;
+        private int backoffMultiplier = 1;
+        /**
+         * The moving average of the latency to this address in nanoseconds, or 0 if nothing has been recorded yet.
+         * Updates are not atomic, losing the occasional sample does not matter.
+         */
+        volatile long latency;
+
+        AddressState(InetAddress address) {
+            this.address = address;
+        }
+
+        void recordLatency(long sample) {
+            long current = latency;
+            latency = current == 0 ? sample : (long) (current + EWMA_WEIGHT * (sample - current));
+        }
+
+        boolean isAvailable(long now, boolean checkHealth) {
+            return !(checkHealth && unhealthy) && (!open || (now - openUntil >= 0 && !probing.get()));
+        }
+
+        void recordSuccess() {
+            failures.set(0);
+            if (open) {
+                synchronized (this) {
+                    open = false;
+                    backoffMultiplier = 1;
+                }
+            }
+            probing.set(false);
+        }
+
+        void recordFailure(int threshold, long backoff) {
+            if (failures.incrementAndGet() >= threshold || open) {
+                synchronized (this) {
+                    openUntil = System.nanoTime() + backoff * backoffMultiplier;
+                    if (open) {
+                        //a failed probe, back off for longer next time
+                        backoffMultiplier = Math.min(backoffMultiplier * 2, MAX_BACKOFF_MULTIPLIER);
+                    }
+                    open = true;
+                }
+            }
+            probing.set(false);
+        }
+
+        /**
+         * Addresses that have not been measured yet have a load of zero, so every address gets tried.
+         */
+        double load() {
+            return (double) latency * (connections.get() + 1);
+        }
+    }
+
     public class AddressResult {
 
         private final long failCount;
+        private final InetAddress avoid;
+        private AddressState address;
+        /**
+         * If this result holds the half-open probe of the address
+         */
+        private boolean probe;
 
         public AddressResult(long failCount) {
+            this(failCount, null);
+        }
+
+        private AddressResult(long failCount, InetAddress avoid) {
             this.failCount = failCount;
+            this.avoid = avoid;
+        }
+
+        private AddressResult(AddressState address) {
+            this.failCount = failureCount.get();
+            this.avoid = null;
+            this.address = address;
         }
 
         public InetAddress getAddress() throws UnknownHostException {
-            return getAddressImpl();
+            if (address == null) {
+                try {
+                    address = getAddressImpl(avoid, this);
+                } catch (ConnectException e) {
+                    UnknownHostException failure = new UnknownHostException(e.getMessage());
+                    failure.initCause(e);
+                    throw failure;
+                }
+            }
+            return address.address;
+        }
+
+        /**
+         * Called if no connection to the address was attempted after {@link #getAddress()}, for example because the
+         * connect URI was invalid. If this result holds the half-open probe of the address it is given up, otherwise
+         * the address would never be selected again.
+         */
+        void abandoned() {
+            if (probe) {
+                probe = false;
+                address.probing.set(false);
+            }
+        }
+
+        /**
+         * Returns {@code true} if this result has been resolved to the given address.
+         */
+        boolean isAddress(InetAddress address) {
+            return this.address != null && this.address.address.equals(address);
         }
 
         public URI getURI() {
             return uri;
         }
 
+        /**
+         * Returns {@code true} if the address is no longer returned by the resolver, in which case connections to it
+         * should not be reused.
+         */
+        boolean isRemoved() {
+            return address != null && address.removed;
+        }
+
         public void failed() {
-            markError();
+            markError(address);
+        }
+
+        /**
+         * Called when a connection to this address has been established.
+         *
+         * @param connectTime the time it took to connect in nanoseconds
+         */
+        public void connectionOpened(long connectTime) {
+            if (address != null) {
+                address.connections.incrementAndGet();
+                address.recordLatency(connectTime);
+                address.recordSuccess();
+            }
+        }
+
+        /**
+         * Called when a connection that was reported with {@link #connectionOpened(long)} has been closed.
+         */
+        public void connectionClosed() {
+            if (address != null) {
+                address.connections.decrementAndGet();
+            }
+        }
+
+        /**
+         * Called when a request on a connection to this address has completed successfully.
+         *
+         * @param latency the time from acquiring the connection to the request being done in nanoseconds
+         */
+        public void requestCompleted(long latency) {
+            if (address != null) {
+                address.recordLatency(latency);
+            }
+        }
+
+        void healthCheckPassed() {
+            if (address != null) {
+                address.unhealthy = false;
+                address.recordSuccess();
+            }
+        }
+
+        void healthCheckFailed() {
+            if (address != null) {
+                address.unhealthy = true;
+            }
         }
 
     }
@@ -19,6 +19,10 @@
 package org.wildfly.httpclient.common;
 
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.zip.ZipException;
 import javax.naming.AuthenticationException;
 
 import org.jboss.logging.BasicLogger;
@@ -73,4 +77,30 @@ interface HttpClientMessages extends BasicLogger {
 
     @Message(id = 13, value = "Authentication failed (full response %s)")
     AuthenticationException authenticationFailed(ClientResponse response);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 14, value = "Failed to open pre-warmed connections to %s")
+    void failedToPrewarmConnections(URI uri, @Cause Throwable t);
+
+    @Message(id = 15, value = "All addresses for %s are currently unavailable")
+    ConnectException allAddressesUnavailable(URI uri);
+
+    @Message(id = 16, value = "The connection pool for %s has been closed")
+    IOException connectionPoolClosed(URI uri);
+
+    @Message(id = 17, value = "Request to %s timed out after %dms")
+    SocketTimeoutException requestTimedOut(URI uri, long timeout);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 18, value = "Timer task failed")
+    void timerTaskFailed(@Cause Throwable t);
+
+    @Message(id = 19, value = "Request to %s rejected, there are already %d requests waiting for a connection")
+    RequestRejectedException pendingQueueFull(URI uri, int maxPending);
+
+    @Message(id = 20, value = "Request to %s rejected after waiting %dms for a connection")
+    RequestRejectedException queueWaitExceeded(URI uri, long maxQueueWait);
+
+    @Message(id = 21, value = "Invalid gzip data: %s")
+    ZipException invalidGzipData(String reason);
 }
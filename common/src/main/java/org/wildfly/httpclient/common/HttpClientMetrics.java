@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+
+/**
+ * Receives events from the connection pools and the request pipeline. Every method has an empty default
+ * implementation, so implementations only need to override the events they are interested in.
+ * <p>
+ * Events are reported from IO threads, so implementations must be thread safe and must not block.
+ *
+ * @see InMemoryHttpClientMetrics
+ * @see JmxHttpClientMetrics
+ */
+public interface HttpClientMetrics {
+
+    /**
+     * Metrics implementation that discards all events, this is used if no other implementation is configured.
+     */
+    HttpClientMetrics NOOP = new HttpClientMetrics() {
+    };
+
+    /**
+     * A request for a connection has been added to the pending queue.
+     */
+    default void requestQueued(URI target) {
+    }
+
+    /**
+     * A request has been rejected by the pool without being sent, because too many requests were already waiting
+     * for a connection or because it waited longer than the maximum queue wait. Requests that are rejected after
+     * waiting are also reported as {@link #acquireFailed(URI)}.
+     */
+    default void requestRejected(URI target) {
+    }
+
+    /**
+     * A pending request has been given a connection.
+     *
+     * @param waitTime the time the request spent waiting for a connection in nanoseconds
+     */
+    default void connectionAcquired(URI target, long waitTime) {
+    }
+
+    /**
+     * A pending request could not be given a connection and has failed.
+     */
+    default void acquireFailed(URI target) {
+    }
+
+    /**
+     * A request has finished with its connection, and given it back to the pool.
+     */
+    default void connectionReleased(URI target) {
+    }
+
+    /**
+     * A new connection has been opened.
+     *
+     * @param connectTime the time it took to connect in nanoseconds
+     */
+    default void connectionOpened(URI target, long connectTime) {
+    }
+
+    /**
+     * An attempt to open a new connection has failed.
+     */
+    default void connectFailed(URI target) {
+    }
+
+    /**
+     * A connection that was reported by {@link #connectionOpened(URI, long)} has been closed.
+     */
+    default void connectionClosed(URI target) {
+    }
+
+    /**
+     * A new {@code UndertowXnioSsl} instance has been created, because an {@link javax.net.ssl.SSLContext} was used
+     * that is not in the cache. A high number of these means TLS sessions are not being resumed.
+     */
+    default void sslInstanceCreated(URI target) {
+    }
+
+    /**
+     * An {@code UndertowXnioSsl} instance has been evicted from the cache.
+     */
+    default void sslInstanceEvicted(URI target) {
+    }
+
+    /**
+     * The response headers for a request have been received.
+     *
+     * @param responseTime the time from sending the request to receiving the response in nanoseconds
+     */
+    default void responseReceived(URI target, long responseTime, int statusCode) {
+    }
+
+    /**
+     * The adaptive concurrency limit of the pool has changed, this is only reported if
+     * {@link HttpClientOptions#ADAPTIVE_CONCURRENCY} is enabled.
+     */
+    default void concurrencyLimitChanged(URI target, int limit) {
+    }
+
+    /**
+     * A request that failed on a stale pooled connection before any of the response arrived has been retried on a
+     * new connection.
+     */
+    default void requestRetried(URI target) {
+    }
+
+    /**
+     * An idempotent request has not had a response within the hedging delay, so a second attempt has been sent, see
+     * {@link HttpClientOptions#HEDGE_IDEMPOTENT_REQUESTS}.
+     */
+    default void requestHedged(URI target) {
+    }
+
+    /**
+     * A request has failed, either because of an error or because the server returned an exception.
+     */
+    default void requestFailed(URI target) {
+    }
+
+    /**
+     * A request body has been compressed, because it was larger than the {@link HttpClientOptions#COMPRESSION_THRESHOLD}
+     * and looked compressible.
+     *
+     * @param size           the size of the body before compression
+     * @param compressedSize the size that was sent
+     * @param cpuTime        the CPU time spent compressing in nanoseconds
+     */
+    default void requestCompressed(URI target, long size, long compressedSize, long cpuTime) {
+    }
+
+    /**
+     * A request body has been sent uncompressed, because it was smaller than the
+     * {@link HttpClientOptions#COMPRESSION_THRESHOLD} or did not look compressible.
+     */
+    default void requestNotCompressed(URI target, long size) {
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import org.xnio.Option;
+
+/**
+ * Options that control the behaviour of a {@link HttpConnectionPool}.
+ * <p>
+ * These are passed to the pool in the same {@link org.xnio.OptionMap} as the Undertow client options, which
+ * will simply ignore them.
+ */
+public final class HttpClientOptions {
+
+    /**
+     * If connections that have negotiated a multiplexed protocol (i.e. HTTP/2) should be shared between concurrent
+     * requests. If this is enabled each connection will carry up to {@code maxStreamsPerConnection} requests at a time.
+     */
+    public static final Option<Boolean> MULTIPLEXING = Option.simple(HttpClientOptions.class, "MULTIPLEXING", Boolean.class);
+
+    /**
+     * If the pool should be split into one stripe per IO thread. Each stripe has its own pending queue, connections
+     * and share of the connection limit, and borrows from the other stripes when it runs out. This reduces contention
+     * when a large number of threads are making invocations at the same time.
+     */
+    public static final Option<Boolean> STRIPING = Option.simple(HttpClientOptions.class, "STRIPING", Boolean.class);
+
+    /**
+     * The minimum number of idle connections the pool keeps open. Idle connections are not reaped below this number,
+     * however many other connections are in use at the time, and connections that are closed are replaced in the
+     * background.
+     */
+    public static final Option<Integer> MIN_IDLE_CONNECTIONS = Option.simple(HttpClientOptions.class, "MIN_IDLE_CONNECTIONS", Integer.class);
+
+    /**
+     * If the pool should open {@link #MIN_IDLE_CONNECTIONS} connections in the background as soon as the target
+     * context is initialised, rather than waiting for the first invocation.
+     */
+    public static final Option<Boolean> PREWARM_ON_INIT = Option.simple(HttpClientOptions.class, "PREWARM_ON_INIT", Boolean.class);
+
+    /**
+     * If new connections should be balanced over all the addresses the target host name resolves to, preferring the
+     * addresses with the lowest latency. If this is disabled all connections go to a single address until it fails.
+     */
+    public static final Option<Boolean> LOAD_BALANCE_ADDRESSES = Option.simple(HttpClientOptions.class, "LOAD_BALANCE_ADDRESSES", Boolean.class);
+
+    /**
+     * The interval in milliseconds at which the target host name is re-resolved in the background, so changes to
+     * the addresses it resolves to are picked up without a restart. If this is not set the host name is only
+     * resolved once. Note that the JVM's own DNS cache still applies to each lookup.
+     */
+    public static final Option<Long> DNS_REFRESH_INTERVAL = Option.simple(HttpClientOptions.class, "DNS_REFRESH_INTERVAL", Long.class);
+
+    /**
+     * The number of consecutive connection failures after which an address is taken out of use. If this is not set
+     * addresses are never taken out of use.
+     */
+    public static final Option<Integer> CIRCUIT_BREAKER_THRESHOLD = Option.simple(HttpClientOptions.class, "CIRCUIT_BREAKER_THRESHOLD", Integer.class);
+
+    /**
+     * The time in milliseconds an address is taken out of use for before a probe connection is attempted, defaults
+     * to 5 seconds. This is doubled each time the probe fails.
+     */
+    public static final Option<Long> CIRCUIT_BREAKER_BACKOFF = Option.simple(HttpClientOptions.class, "CIRCUIT_BREAKER_BACKOFF", Long.class);
+
+    /**
+     * The interval in milliseconds at which every address of the target is checked in the background. If this is not
+     * set no health checks are done. If every address fails the check they are all still used, rather than failing
+     * every request.
+     */
+    public static final Option<Long> HEALTH_CHECK_INTERVAL = Option.simple(HttpClientOptions.class, "HEALTH_CHECK_INTERVAL", Long.class);
+
+    /**
+     * The path the health check sends a {@code HEAD} request to, defaults to the path of the target URI.
+     */
+    public static final Option<String> HEALTH_CHECK_PATH = Option.simple(HttpClientOptions.class, "HEALTH_CHECK_PATH", String.class);
+
+    /**
+     * The time in milliseconds a request is given to complete, including the time spent waiting for a connection,
+     * connecting, sending the request and reading the response headers. The remaining time is sent to the server so
+     * it can abandon work the client is no longer waiting for. If this is not set requests do not time out.
+     */
+    public static final Option<Long> REQUEST_TIMEOUT = Option.simple(HttpClientOptions.class, "REQUEST_TIMEOUT", Long.class);
+
+    /**
+     * The maximum number of requests that may be waiting for a connection. Once the queue is full new requests fail
+     * straight away with a {@link RequestRejectedException}. Control traffic is never rejected. If this is not set
+     * the queue is unbounded.
+     */
+    public static final Option<Integer> MAX_PENDING_REQUESTS = Option.simple(HttpClientOptions.class, "MAX_PENDING_REQUESTS", Integer.class);
+
+    /**
+     * The time in milliseconds a request may wait for a connection before it fails with a
+     * {@link RequestRejectedException}. If this is not set requests wait until a connection is available.
+     */
+    public static final Option<Long> MAX_QUEUE_WAIT = Option.simple(HttpClientOptions.class, "MAX_QUEUE_WAIT", Long.class);
+
+    /**
+     * The largest request body in bytes that is marshalled into memory first and sent with a {@code Content-Length}
+     * header in a single write. Larger bodies are streamed with chunked encoding. If this is not set, or is {@code 0},
+     * bodies are always streamed. A good value is the size of a pooled buffer.
+     */
+    public static final Option<Integer> MAX_BUFFERED_REQUEST_SIZE = Option.simple(HttpClientOptions.class, "MAX_BUFFERED_REQUEST_SIZE", Integer.class);
+
+    /**
+     * The deflate level, from 0 to 9, used for request bodies that are compressed. A level requested for an
+     * individual invocation takes precedence. If this is not set the zlib default is used.
+     */
+    public static final Option<Integer> COMPRESSION_LEVEL = Option.simple(HttpClientOptions.class, "COMPRESSION_LEVEL", Integer.class);
+
+    /**
+     * Enables adaptive compression. EJB request bodies larger than this many bytes are compressed if they look
+     * compressible, whether or not the method asks for compression, and smaller ones are always sent as they are. The
+     * request is only sent once that much of the body has been marshalled, so the decision is made for each request
+     * from its actual size. Responses are only accepted compressed if the method asks for it, the server then makes
+     * the same decision for them if it is configured to.
+     */
+    public static final Option<Integer> COMPRESSION_THRESHOLD = Option.simple(HttpClientOptions.class, "COMPRESSION_THRESHOLD", Integer.class);
+
+    /**
+     * Enables read ahead of response bodies. The IO thread keeps reading a response into up to this many pooled
+     * buffers while the caller is still unmarshalling the start of it, rather than reading one buffer at a time when
+     * it is asked for. This helps with large responses, at the cost of holding more buffers per request. If this is
+     * not set, or is {@code 0}, responses are not read ahead.
+     */
+    public static final Option<Integer> READ_AHEAD_BUFFERS = Option.simple(HttpClientOptions.class, "READ_AHEAD_BUFFERS", Integer.class);
+
+    /**
+     * If the number of connections in use should adapt to the round trip time and error rate of the target, rather
+     * than only being capped by the maximum connection count. The maximum connection count is then the upper bound
+     * of the adaptive limit.
+     */
+    public static final Option<Boolean> ADAPTIVE_CONCURRENCY = Option.simple(HttpClientOptions.class, "ADAPTIVE_CONCURRENCY", Boolean.class);
+
+    /**
+     * If idempotent requests, such as naming list operations and EJB discovery, should be hedged. A request that has
+     * not had a response within the 95th percentile of recent response times is sent again, to a different address of
+     * the target if there is one, and whichever response arrives first is used. Only {@code GET} requests without side
+     * effects on the server are hedged, so naming lookups, which may create a stateful session bean, and transaction
+     * recovery scans, which move the server's scan cursor, are never hedged.
+     */
+    public static final Option<Boolean> HEDGE_IDEMPOTENT_REQUESTS = Option.simple(HttpClientOptions.class, "HEDGE_IDEMPOTENT_REQUESTS", Boolean.class);
+
+    /**
+     * The number of connections that control traffic, such as transaction completion, may open on top of the maximum
+     * connection count when the pool is full. If this is not set, or is {@code 0}, the maximum connection count is
+     * never exceeded and control traffic only jumps the queue of pending requests.
+     */
+    public static final Option<Integer> PRIORITY_OVERDRAFT = Option.simple(HttpClientOptions.class, "PRIORITY_OVERDRAFT", Integer.class);
+
+    /**
+     * The time in milliseconds that connections which are still in use are given to finish their current request when
+     * the pool is closed, before they are closed forcibly. Defaults to 30 seconds.
+     */
+    public static final Option<Long> CLOSE_TIMEOUT = Option.simple(HttpClientOptions.class, "CLOSE_TIMEOUT", Long.class);
+
+    /**
+     * The {@link HttpClientMetrics} that pool and request events are reported to. If this is not set events are
+     * discarded.
+     */
+    public static final Option<HttpClientMetrics> METRICS = Option.simple(HttpClientOptions.class, "METRICS", HttpClientMetrics.class);
+
+    /**
+     * The {@link RetryBudget} that limits automatic retries of requests that failed on a stale pooled connection. The
+     * same budget should be used for every target of a client, {@link WildflyHttpContext} creates one that allows
+     * retries for 10% of requests unless {@code retry-budget-percent} is configured.
+     */
+    public static final Option<RetryBudget> RETRY_BUDGET = Option.simple(HttpClientOptions.class, "RETRY_BUDGET", RetryBudget.class);
+
+    /**
+     * The maximum number of SSL contexts the pool keeps an SSL instance for, defaults to 8. If more contexts are in
+     * use the least recently used instance is dropped.
+     */
+    public static final Option<Integer> SSL_CONTEXT_CACHE_SIZE = Option.simple(HttpClientOptions.class, "SSL_CONTEXT_CACHE_SIZE", Integer.class);
+
+    private HttpClientOptions() {
+    }
+}
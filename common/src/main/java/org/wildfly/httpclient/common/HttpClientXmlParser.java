@@ -211,6 +211,33 @@ final class HttpClientXmlParser {
         }
     }
 
+    private static String parseStringElement(final ConfigurationXMLStreamReader reader) throws ConfigXMLParseException {
+        final int attributeCount = reader.getAttributeCount();
+        String value = null;
+        for (int i = 0; i < attributeCount; i++) {
+            switch (reader.getAttributeLocalName(i)) {
+                case "value": {
+                    value = reader.getAttributeValueResolved(i);
+                    break;
+                }
+                default: {
+                    throw reader.unexpectedAttribute(i);
+                }
+            }
+        }
+        if (value == null) {
+            throw reader.missingRequiredAttribute(null, "value");
+        }
+        switch (reader.nextTag()) {
+            case END_ELEMENT: {
+                return value;
+            }
+            default: {
+                throw reader.unexpectedElement();
+            }
+        }
+    }
+
     private static boolean parseBooleanElement(final ConfigurationXMLStreamReader reader) throws ConfigXMLParseException {
         final int attributeCount = reader.getAttributeCount();
         Boolean value = null;
@@ -307,6 +334,90 @@ final class HttpClientXmlParser {
                             builder.setEnableHttp2(parseBooleanElement(reader));
                             break;
                         }
+                        case "enable-multiplexing": {
+                            builder.setEnableMultiplexing(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "enable-striping": {
+                            builder.setEnableStriping(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "load-balance-addresses": {
+                            builder.setLoadBalanceAddresses(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "adaptive-concurrency": {
+                            builder.setAdaptiveConcurrency(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "hedge-idempotent-requests": {
+                            builder.setHedgeIdempotentRequests(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "min-idle-connections": {
+                            builder.setMinIdleConnections(parseIntElement(reader));
+                            break;
+                        }
+                        case "dns-refresh-interval": {
+                            builder.setDnsRefreshInterval(parseLongElement(reader));
+                            break;
+                        }
+                        case "request-timeout": {
+                            builder.setRequestTimeout(parseLongElement(reader));
+                            break;
+                        }
+                        case "retry-budget-percent": {
+                            builder.setRetryBudgetPercent(parseIntElement(reader));
+                            break;
+                        }
+                        case "max-pending-requests": {
+                            builder.setMaxPendingRequests(parseIntElement(reader));
+                            break;
+                        }
+                        case "max-queue-wait": {
+                            builder.setMaxQueueWait(parseLongElement(reader));
+                            break;
+                        }
+                        case "priority-overdraft": {
+                            builder.setPriorityOverdraft(parseIntElement(reader));
+                            break;
+                        }
+                        case "max-buffered-request-size": {
+                            builder.setMaxBufferedRequestSize(parseIntElement(reader));
+                            break;
+                        }
+                        case "compression-level": {
+                            builder.setCompressionLevel(parseIntElement(reader));
+                            break;
+                        }
+                        case "compression-threshold": {
+                            builder.setCompressionThreshold(parseIntElement(reader));
+                            break;
+                        }
+                        case "read-ahead-buffers": {
+                            builder.setReadAheadBuffers(parseIntElement(reader));
+                            break;
+                        }
+                        case "circuit-breaker-threshold": {
+                            builder.setCircuitBreakerThreshold(parseIntElement(reader));
+                            break;
+                        }
+                        case "circuit-breaker-backoff": {
+                            builder.setCircuitBreakerBackoff(parseLongElement(reader));
+                            break;
+                        }
+                        case "health-check-interval": {
+                            builder.setHealthCheckInterval(parseLongElement(reader));
+                            break;
+                        }
+                        case "health-check-path": {
+                            builder.setHealthCheckPath(parseStringElement(reader));
+                            break;
+                        }
+                        case "prewarm-on-init": {
+                            builder.setPrewarmOnInit(parseBooleanElement(reader));
+                            break;
+                        }
                         case "buffer-pool": {
                             builder.setBufferConfig(parseBufferConfig(reader));
                             break;
@@ -425,6 +536,86 @@ final class HttpClientXmlParser {
                             targetBuilder.setEnableHttp2(parseBooleanElement(reader));
                             break;
                         }
+                        case "enable-multiplexing": {
+                            targetBuilder.setEnableMultiplexing(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "enable-striping": {
+                            targetBuilder.setEnableStriping(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "load-balance-addresses": {
+                            targetBuilder.setLoadBalanceAddresses(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "adaptive-concurrency": {
+                            targetBuilder.setAdaptiveConcurrency(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "hedge-idempotent-requests": {
+                            targetBuilder.setHedgeIdempotentRequests(parseBooleanElement(reader));
+                            break;
+                        }
+                        case "min-idle-connections": {
+                            targetBuilder.setMinIdleConnections(parseIntElement(reader));
+                            break;
+                        }
+                        case "dns-refresh-interval": {
+                            targetBuilder.setDnsRefreshInterval(parseLongElement(reader));
+                            break;
+                        }
+                        case "request-timeout": {
+                            targetBuilder.setRequestTimeout(parseLongElement(reader));
+                            break;
+                        }
+                        case "max-pending-requests": {
+                            targetBuilder.setMaxPendingRequests(parseIntElement(reader));
+                            break;
+                        }
+                        case "max-queue-wait": {
+                            targetBuilder.setMaxQueueWait(parseLongElement(reader));
+                            break;
+                        }
+                        case "priority-overdraft": {
+                            targetBuilder.setPriorityOverdraft(parseIntElement(reader));
+                            break;
+                        }
+                        case "max-buffered-request-size": {
+                            targetBuilder.setMaxBufferedRequestSize(parseIntElement(reader));
+                            break;
+                        }
+                        case "compression-level": {
+                            targetBuilder.setCompressionLevel(parseIntElement(reader));
+                            break;
+                        }
+                        case "compression-threshold": {
+                            targetBuilder.setCompressionThreshold(parseIntElement(reader));
+                            break;
+                        }
+                        case "read-ahead-buffers": {
+                            targetBuilder.setReadAheadBuffers(parseIntElement(reader));
+                            break;
+                        }
+                        case "circuit-breaker-threshold": {
+                            targetBuilder.setCircuitBreakerThreshold(parseIntElement(reader));
+                            break;
+                        }
+                        case "circuit-breaker-backoff": {
+                            targetBuilder.setCircuitBreakerBackoff(parseLongElement(reader));
+                            break;
+                        }
+                        case "health-check-interval": {
+                            targetBuilder.setHealthCheckInterval(parseLongElement(reader));
+                            break;
+                        }
+                        case "health-check-path": {
+                            targetBuilder.setHealthCheckPath(parseStringElement(reader));
+                            break;
+                        }
+                        case "prewarm-on-init": {
+                            targetBuilder.setPrewarmOnInit(parseBooleanElement(reader));
+                            break;
+                        }
                         case "bind-address": {
                             targetBuilder.setBindAddress(parseBind(reader));
                             break;
@@ -23,18 +23,22 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 import javax.net.ssl.SSLContext;
 
 import org.xnio.ChannelListener;
 import org.xnio.IoUtils;
 import org.xnio.OptionMap;
-import org.xnio.XnioExecutor;
+import org.xnio.XnioIoThread;
 import org.xnio.XnioWorker;
 import io.undertow.client.ClientCallback;
 import io.undertow.client.ClientConnection;
@@ -59,11 +63,47 @@ public class HttpConnectionPool implements Closeable {
     private final OptionMap options;
     private final HostPool hostPool;
     private final long connectionIdleTimeout;
+    private final boolean multiplexing;
+    private final int minIdleConnections;
+    private final boolean prewarmOnInit;
+    private final boolean hedging;
 
-    private final Map<Object, ConcurrentLinkedDeque<ClientConnectionHolder>> connections = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedDeque<RequestHolder> pendingConnectionRequests = new ConcurrentLinkedDeque<>();
-    private final AtomicInteger activeInvocationCount = new AtomicInteger();
-    private final Map<SSLContext, UndertowXnioSsl> sslInstances = new ConcurrentHashMap<>();
+    /**
+     * The pool is split into one or more stripes, each of which has its own pending queue, connections and share of
+     * the connection limit. Unless striping is enabled there is only a single stripe.
+     */
+    private final Stripe[] stripes;
+    /**
+     * Extra connection slots that only requests which ignore the connection limit can use once the pool is full, or
+     * {@code null} if there are none
+     */
+    private final Stripe overdraft;
+    /**
+     * The adaptive limit on connections in use, or {@code null} if only the static limit applies
+     */
+    private final ConcurrencyLimiter limiter;
+    private final SslInstanceCache sslInstances;
+    /**
+     * The SSL context used to open idle connections, only set once the floor is being maintained
+     */
+    private volatile SSLContext idleSslContext;
+    private volatile boolean maintainIdleConnections;
+    /**
+     * The SSL context used by the health checker, this is the last one used to open a connection
+     */
+    private volatile SSLContext healthCheckSslContext;
+    private final HealthChecker healthChecker;
+    private final long closeTimeout;
+    private final long requestTimeout;
+    private final RetryBudget retryBudget;
+    private final int maxPendingRequests;
+    private final long maxQueueWait;
+    private final int maxBufferedRequestSize;
+    private final int compressionLevel;
+    private final int compressionThreshold;
+    private final int readAheadBuffers;
+    private volatile boolean closed;
+    private final HttpClientMetrics metrics;
 
     private final Object NULL_SSL_CONTEXT = new Object();
     private final PoolAuthenticationContext poolAuthenticationContext = new PoolAuthenticationContext();
@@ -76,104 +116,713 @@ public class HttpConnectionPool implements Closeable {
         this.options = options;
         this.hostPool = hostPool;
         this.connectionIdleTimeout = connectionIdleTimeout;
+        this.multiplexing = maxStreamsPerConnection > 1 && options.get(HttpClientOptions.MULTIPLEXING, false);
+        this.minIdleConnections = Math.min(options.get(HttpClientOptions.MIN_IDLE_CONNECTIONS, 0), maxConnections);
+        this.prewarmOnInit = options.get(HttpClientOptions.PREWARM_ON_INIT, false);
+        this.hedging = options.get(HttpClientOptions.HEDGE_IDEMPOTENT_REQUESTS, false);
+        this.closeTimeout = options.get(HttpClientOptions.CLOSE_TIMEOUT, 30000L);
+        this.requestTimeout = options.get(HttpClientOptions.REQUEST_TIMEOUT, 0L);
+        RetryBudget retryBudget = options.get(HttpClientOptions.RETRY_BUDGET);
+        this.retryBudget = retryBudget == null ? new RetryBudget(RetryBudget.DEFAULT_RATIO) : retryBudget;
+        this.maxPendingRequests = options.get(HttpClientOptions.MAX_PENDING_REQUESTS, 0);
+        this.maxQueueWait = options.get(HttpClientOptions.MAX_QUEUE_WAIT, 0L);
+        this.maxBufferedRequestSize = options.get(HttpClientOptions.MAX_BUFFERED_REQUEST_SIZE, 0);
+        this.compressionLevel = options.get(HttpClientOptions.COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION);
+        this.compressionThreshold = options.get(HttpClientOptions.COMPRESSION_THRESHOLD, 0);
+        this.readAheadBuffers = options.get(HttpClientOptions.READ_AHEAD_BUFFERS, 0);
+        HttpClientMetrics metrics = options.get(HttpClientOptions.METRICS);
+        this.metrics = metrics == null ? HttpClientMetrics.NOOP : metrics;
+        this.sslInstances = new SslInstanceCache(worker.getXnio(), options.get(HttpClientOptions.SSL_CONTEXT_CACHE_SIZE, 8), this.metrics, hostPool.getUri());
+        int stripeCount = options.get(HttpClientOptions.STRIPING, false) ? Math.max(1, Math.min(worker.getIoThreadCount(), maxConnections)) : 1;
+        this.limiter = options.get(HttpClientOptions.ADAPTIVE_CONCURRENCY, false) ? new ConcurrencyLimiter(maxConnections) : null;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i) {
+            int limit = maxConnections / stripeCount + (i < maxConnections % stripeCount ? 1 : 0);
+            int minIdle = minIdleConnections / stripeCount + (i < minIdleConnections % stripeCount ? 1 : 0);
+            stripes[i] = new Stripe(i, limit, minIdle, stripeCount == 1 ? null : worker.getIoThread(i), limiter);
+        }
+        int overdraftSize = options.get(HttpClientOptions.PRIORITY_OVERDRAFT, 0);
+        //control traffic is not subject to the adaptive limit
+        this.overdraft = overdraftSize > 0 ? new Stripe(0, overdraftSize, 0, null, null) : null;
+        long healthCheckInterval = options.get(HttpClientOptions.HEALTH_CHECK_INTERVAL, 0L);
+        if (healthCheckInterval > 0) {
+            healthChecker = new HealthChecker(this, hostPool, worker, healthCheckInterval, options.get(HttpClientOptions.HEALTH_CHECK_PATH));
+            healthChecker.start();
+        } else {
+            healthChecker = null;
+        }
     }
 
+    /**
+     * Acquires a connection from the pool.
+     *
+     * @param ignoreConnectionLimits if this is {@code true} the request is control traffic, such as transaction
+     *                               completion, which is served before any other pending request and may use the
+     *                               overdraft connections if the pool is full. Control traffic is never rejected
+     *                               because of {@link HttpClientOptions#MAX_PENDING_REQUESTS} or
+     *                               {@link HttpClientOptions#MAX_QUEUE_WAIT}
+     */
     public void getConnection(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext sslContext) {
-        pendingConnectionRequests.add(new RequestHolder(connectionListener, errorListener, ignoreConnectionLimits, sslContext));
-        runPending();
+        getConnection(connectionListener, errorListener, ignoreConnectionLimits, sslContext, null);
+    }
+
+    /**
+     * Acquires a connection from the pool, preferring a connection to any address other than the given one. This is
+     * used by hedged requests, which should go to a different node than the attempt they are hedging.
+     */
+    void getConnection(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext sslContext, InetAddress avoidAddress) {
+        getConnection(connectionListener, errorListener, ignoreConnectionLimits, sslContext, avoidAddress, false);
+    }
+
+    /**
+     * Acquires a newly opened connection, this is used to retry a request that failed on a stale pooled connection.
+     */
+    void getNewConnection(ConnectionListener connectionListener, ErrorListener errorListener, SSLContext sslContext) {
+        getConnection(connectionListener, errorListener, false, sslContext, null, true);
+    }
+
+    private void getConnection(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext sslContext, InetAddress avoidAddress, boolean newConnection) {
+        Stripe stripe = currentStripe();
+        if (!ignoreConnectionLimits && !tryAddPending(stripe)) {
+            metrics.requestRejected(hostPool.getUri());
+            errorListener.error(HttpClientMessages.MESSAGES.pendingQueueFull(hostPool.getUri(), maxPendingRequests));
+            return;
+        }
+        metrics.requestQueued(hostPool.getUri());
+        //with a single address there is nowhere else to go, so any connection will do
+        RequestHolder request = new RequestHolder(connectionListener, errorListener, ignoreConnectionLimits, sslContext, hostPool.getAddressCount() > 1 ? avoidAddress : null, newConnection, stripe);
+        if (maxQueueWait > 0 && !ignoreConnectionLimits) {
+            request.queueTimeout = new TimerWheel.Timeout(() -> queueWaitExceeded(request));
+            TimerWheel.forThread(worker.getIoThread()).schedule(request.queueTimeout, maxQueueWait, TimeUnit.MILLISECONDS);
+        }
+        stripe.pendingQueue(request).add(request);
+        runPending(stripe);
+    }
+
+    /**
+     * Counts a request as pending on the given stripe. The limit applies to the sum over all stripes, which is only
+     * computed if there is a limit. Threads on different stripes can both pass the check at the same time, so the
+     * queue can briefly exceed the limit by up to the number of stripes.
+     */
+    private boolean tryAddPending(Stripe stripe) {
+        if (maxPendingRequests > 0 && getPendingRequests() >= maxPendingRequests) {
+            return false;
+        }
+        stripe.pendingRequests.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the number of requests that are waiting for a connection, not counting control traffic
+     */
+    int getPendingRequests() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.pendingRequests.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of connections that are open or being opened
+     */
+    int getOpenConnections() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.openConnections.get();
+        }
+        return count;
+    }
+
+    /**
+     * Called by the timer wheel once a request has waited for the maximum queue wait. If the request is currently
+     * being served it is left alone, if it is put back in the queue after this {@link #requeue} rejects it instead.
+     */
+    private void queueWaitExceeded(RequestHolder request) {
+        request.queueWaitExceeded = true;
+        for (Stripe stripe : stripes) {
+            if (stripe.pendingConnectionRequests.remove(request)) {
+                reject(request);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Puts a request that could not be served yet back at the head of the queue, unless it has waited too long
+     */
+    private void requeue(ConcurrentLinkedDeque<RequestHolder> queue, RequestHolder request) {
+        queue.addFirst(request);
+        //if the timeout fired while the request was out of the queue it could not remove it, so we do
+        if (request.queueWaitExceeded && queue.remove(request)) {
+            reject(request);
+        }
+    }
+
+    private void reject(RequestHolder request) {
+        metrics.requestRejected(hostPool.getUri());
+        fail(request, HttpClientMessages.MESSAGES.queueWaitExceeded(hostPool.getUri(), maxQueueWait));
     }
 
     public void returnConnection(ClientConnectionHolder connection) {
-        activeInvocationCount.decrementAndGet();
-        if (connection.getConnection().isOpen()) {
-            connections.get(connection.sslContext == null ? NULL_SSL_CONTEXT : connection.sslContext).add(connection);
+        Stripe permit = connection.permit;
+        permit.release();
+        if (closed) {
+            connection.tryClose();
+        } else if (connection.getConnection().isOpen()) {
+            queue(connection.stripe.connections, connectionKey(connection.sslContext)).add(connection);
         }
-        runPending();
+        runPending(permit == overdraft ? connection.stripe : permit);
     }
 
-    private void runPending() {
+    /**
+     * Picks the stripe for the calling thread. IO threads of our worker map to their own stripe, so connections
+     * they create stay on the same thread, other threads are spread by thread id.
+     */
+    private Stripe currentStripe() {
+        if (stripes.length == 1) {
+            return stripes[0];
+        }
+        Thread thread = Thread.currentThread();
+        if (thread instanceof XnioIoThread && ((XnioIoThread) thread).getWorker() == worker) {
+            return stripes[((XnioIoThread) thread).getNumber() % stripes.length];
+        }
+        return stripes[(int) (thread.getId() % stripes.length)];
+    }
+
+    private void runPending(Stripe stripe) {
+        if (closed) {
+            failPending(stripe);
+            return;
+        }
+        if (multiplexing) {
+            runMultiplexed(stripe, stripe.priorityConnectionRequests);
+            runMultiplexed(stripe, stripe.pendingConnectionRequests);
+        }
 
-        int count;
-        do {
-            count = activeInvocationCount.get();
-            if (count == maxConnections) {
+        Stripe reserved = reservePermit(stripe);
+        if (reserved == null) {
+            //the pool is full, but control traffic can still use the overdraft
+            if (overdraft == null || stripe.priorityConnectionRequests.isEmpty() || !overdraft.tryReserve()) {
                 return;
             }
-        } while (!activeInvocationCount.compareAndSet(count, count + 1));
-        RequestHolder next = pendingConnectionRequests.poll();
+        }
+        final Stripe permit = reserved == null ? overdraft : reserved;
+        RequestHolder next = reserved == null ? pollPriority(stripe) : pollPending(stripe);
         if (next == null) {
-            activeInvocationCount.decrementAndGet();
+            permit.release();
             return;
         }
         SSLContext sslContext = null;
-        UndertowXnioSsl ssl = null;
         if (hostPool.getUri().getScheme().equals("https")) {
             sslContext = next.context;
-            if (sslContext != null) {
-                ssl = sslInstances.get(sslContext);
-                if (ssl == null) {
-                    sslInstances.put(sslContext, ssl = new UndertowXnioSsl(worker.getXnio(), OptionMap.EMPTY, sslContext));
-                }
+            if (sslContext != null && healthCheckSslContext != sslContext) {
+                healthCheckSslContext = sslContext;
             }
         }
-        Object key = sslContext == null ? NULL_SSL_CONTEXT : sslContext;
-        ConcurrentLinkedDeque<ClientConnectionHolder> queue = connections.get(key);
-        if (queue == null) {
-            connections.putIfAbsent(key, new ConcurrentLinkedDeque<>());
-            queue = connections.get(key);
-        }
-        for (; ; ) {
-            ClientConnectionHolder existingConnection = queue.poll();
-            if (existingConnection == null) {
-                break;
-            }
-            if(!existingConnection.connection.isOpen()) {
+        Object key = connectionKey(sslContext);
+        //look for an idle connection, if our own stripe does not have one we steal one from another stripe
+        for (int i = 0; i < stripes.length; ++i) {
+            ConcurrentLinkedDeque<ClientConnectionHolder> queue = stripes[(stripe.index + i) % stripes.length].connections.get(key);
+            if (queue == null) {
                 continue;
             }
-            if (existingConnection.tryAcquire()) {
-                next.connectionListener.done(existingConnection);
-                return;
+            for (; ; ) {
+                ClientConnectionHolder existingConnection = next.newConnection ? null : next.avoidAddress == null ? queue.poll() : pollAvoiding(queue, next.avoidAddress);
+                if (existingConnection == null) {
+                    break;
+                }
+                if(!existingConnection.connection.isOpen()) {
+                    continue;
+                }
+                if (existingConnection.hostPoolAddress.isRemoved()) {
+                    //the address is no longer in DNS, drain the connection
+                    existingConnection.tryClose();
+                    continue;
+                }
+                if (existingConnection.tryAcquire()) {
+                    existingConnection.permit = permit;
+                    existingConnection.acquireTime = System.nanoTime();
+                    existingConnection.reused = true;
+                    complete(next, existingConnection.createHandle());
+                    if (multiplexing) {
+                        runPending(existingConnection.stripe); //the connection may be able to take some of the other pending requests
+                    }
+                    return;
+                }
             }
         }
 
-        HostPool.AddressResult hostPoolAddress = hostPool.getAddress();
+        if (!hostPool.isResolved()) {
+            //we don't want to block on DNS here, as this may be an IO thread
+            permit.release();
+            requeue(stripe.pendingQueue(next), next);
+            hostPool.resolve(worker, () -> runPending(stripe));
+            return;
+        }
+        HostPool.AddressResult hostPoolAddress = next.avoidAddress == null ? hostPool.getAddress() : hostPool.getAddress(next.avoidAddress);
         InetAddress address;
         try {
             address = hostPoolAddress.getAddress();
-        } catch (UnknownHostException e) {
-            next.errorListener.error(e);
+        } catch (IOException e) {
+            permit.release();
+            fail(next, e);
             return;
         }
 
         try {
 
             final SSLContext context = sslContext;
-            UndertowClient.getInstance().connect(new ClientCallback<ClientConnection>() {
+            if (minIdleConnections > 0 && !maintainIdleConnections) {
+                //the pool is in use, so from now on we keep the idle floor in place
+                idleSslContext = context;
+                maintainIdleConnections = true;
+            }
+            stripe.openConnections.incrementAndGet();
+            final long connectStart = System.nanoTime();
+            ClientCallback<ClientConnection> callback = new ClientCallback<ClientConnection>() {
                 @Override
                 public void completed(ClientConnection result) {
-                    result.getCloseSetter().set((ChannelListener<ClientConnection>) connections::remove);
-                    ClientConnectionHolder clientConnectionHolder = new ClientConnectionHolder(result, hostPoolAddress.getURI(), context);
+                    long connectTime = System.nanoTime() - connectStart;
+                    hostPoolAddress.connectionOpened(connectTime);
+                    metrics.connectionOpened(hostPool.getUri(), connectTime);
+                    ClientConnectionHolder clientConnectionHolder = createConnectionHolder(result, hostPoolAddress, context, stripe);
                     clientConnectionHolder.tryAcquire(); //aways suceeds
-                    next.connectionListener.done(clientConnectionHolder);
+                    clientConnectionHolder.permit = permit;
+                    clientConnectionHolder.acquireTime = System.nanoTime();
+                    complete(next, clientConnectionHolder.createHandle());
+                    if (multiplexing) {
+                        runPending(stripe); //the connection may be able to take some of the other pending requests
+                    }
                 }
 
                 @Override
                 public void failed(IOException e) {
                     hostPoolAddress.failed(); //notify the host pool that this host has failed
-                    activeInvocationCount.decrementAndGet();
-                    next.errorListener.error(e);
+                    metrics.connectFailed(hostPool.getUri());
+                    stripe.openConnections.decrementAndGet();
+                    permit.release();
+                    if (++next.connectAttempts < hostPool.getAddressCount()) {
+                        //fail over to the next address straight away
+                        requeue(stripe.pendingQueue(next), next);
+                        runPending(stripe);
+                    } else {
+                        fail(next, e);
+                    }
                 }
-            }, new URI(hostPoolAddress.getURI().getScheme(), hostPoolAddress.getURI().getUserInfo(), address.getHostAddress(), hostPoolAddress.getURI().getPort(), "/", null, null), worker, ssl, byteBufferPool, options);
+            };
+            connect(stripe, hostPoolAddress, address, sslContext, callback);
         } catch (URISyntaxException e) {
-            next.errorListener.error(e);
+            hostPoolAddress.abandoned();
+            stripe.openConnections.decrementAndGet();
+            permit.release();
+            fail(next, e);
+        }
+
+
+    }
+
+    private void connect(Stripe stripe, HostPool.AddressResult hostPoolAddress, InetAddress address, SSLContext sslContext, ClientCallback<ClientConnection> callback) throws URISyntaxException {
+        UndertowXnioSsl ssl = null;
+        if (sslContext != null) {
+            ssl = sslInstances.get(sslContext);
+        }
+        URI connectUri = new URI(hostPoolAddress.getURI().getScheme(), hostPoolAddress.getURI().getUserInfo(), address.getHostAddress(), hostPoolAddress.getURI().getPort(), "/", null, null);
+        if (stripe.ioThread == null) {
+            UndertowClient.getInstance().connect(callback, connectUri, worker, ssl, byteBufferPool, options);
+        } else {
+            UndertowClient.getInstance().connect(callback, connectUri, stripe.ioThread, ssl, byteBufferPool, options);
+        }
+    }
+
+    /**
+     * Opens a connection to the given address that is not part of the pool, for use by the health checker. For https
+     * this does nothing until the pool has been used, as we don't know which SSL context to use.
+     */
+    void connectForHealthCheck(HostPool.AddressResult hostPoolAddress, ClientCallback<ClientConnection> callback) {
+        SSLContext sslContext = null;
+        if (hostPool.getUri().getScheme().equals("https")) {
+            sslContext = healthCheckSslContext;
+            if (sslContext == null) {
+                return;
+            }
+        }
+        try {
+            connect(stripes[0], hostPoolAddress, hostPoolAddress.getAddress(), sslContext, callback);
+        } catch (IOException e) {
+            callback.failed(e);
+        } catch (URISyntaxException e) {
+            callback.failed(new IOException(e));
+        }
+    }
+
+    private ClientConnectionHolder createConnectionHolder(ClientConnection connection, HostPool.AddressResult hostPoolAddress, SSLContext sslContext, Stripe stripe) {
+        ClientConnectionHolder holder = new ClientConnectionHolder(connection, hostPoolAddress, sslContext, stripe);
+        stripe.allConnections.add(holder);
+        connection.getCloseSetter().set((ChannelListener<ClientConnection>) c -> {
+            stripe.allConnections.remove(holder);
+            holder.cancelIdleTimeout();
+            hostPoolAddress.connectionClosed();
+            metrics.connectionClosed(hostPool.getUri());
+            queue(stripe.connections, connectionKey(sslContext)).remove(holder);
+            stripe.openConnections.decrementAndGet();
+            fillIdleConnections(stripe);
+        });
+        return holder;
+    }
+
+    /**
+     * Returns {@code true} if {@link #prewarm(SSLContext)} should be called when the owning target context is
+     * initialised.
+     */
+    public boolean isPrewarmOnInit() {
+        return prewarmOnInit;
+    }
+
+    boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * Opens connections in the background until the pool has at least {@code minIdleConnections} open connections.
+     * This floor is then maintained as connections are closed, and idle connections are not reaped while no more than
+     * {@code minIdleConnections} connections are idle, however many others are in use.
+     *
+     * @param sslContext the SSL context to use for the connections, ignored for non-https URIs
+     */
+    public void prewarm(SSLContext sslContext) {
+        if (minIdleConnections <= 0) {
+            return;
+        }
+        idleSslContext = hostPool.getUri().getScheme().equals("https") ? sslContext : null;
+        maintainIdleConnections = true;
+        fillIdleConnections();
+    }
+
+    private void fillIdleConnections() {
+        for (Stripe stripe : stripes) {
+            fillIdleConnections(stripe);
+        }
+    }
+
+    /**
+     * Each stripe keeps its own share of the floor, so this only ever touches the counter of the given stripe.
+     */
+    private void fillIdleConnections(Stripe stripe) {
+        if (!maintainIdleConnections) {
+            return;
+        }
+        for (; ; ) {
+            int count = stripe.openConnections.get();
+            if (count >= stripe.minIdleConnections) {
+                return;
+            }
+            if (stripe.openConnections.compareAndSet(count, count + 1)) {
+                openIdleConnection(stripe);
+            }
+        }
+    }
+
+    private void openIdleConnection(Stripe stripe) {
+        final SSLContext sslContext = idleSslContext;
+        if (!hostPool.isResolved()) {
+            stripe.openConnections.decrementAndGet();
+            hostPool.resolve(worker, () -> fillIdleConnections(stripe));
+            return;
+        }
+        HostPool.AddressResult hostPoolAddress = hostPool.getAddress();
+        try {
+            InetAddress address = hostPoolAddress.getAddress();
+            final long connectStart = System.nanoTime();
+            connect(stripe, hostPoolAddress, address, sslContext, new ClientCallback<ClientConnection>() {
+                @Override
+                public void completed(ClientConnection result) {
+                    long connectTime = System.nanoTime() - connectStart;
+                    hostPoolAddress.connectionOpened(connectTime);
+                    metrics.connectionOpened(hostPool.getUri(), connectTime);
+                    ClientConnectionHolder clientConnectionHolder = createConnectionHolder(result, hostPoolAddress, sslContext, stripe);
+                    if (closed) {
+                        clientConnectionHolder.tryClose();
+                        return;
+                    }
+                    clientConnectionHolder.scheduleIdleTimeout();
+                    queue(stripe.connections, connectionKey(sslContext)).add(clientConnectionHolder);
+                    runPending(stripe);
+                }
+
+                @Override
+                public void failed(IOException e) {
+                    hostPoolAddress.failed();
+                    metrics.connectFailed(hostPool.getUri());
+                    stripe.openConnections.decrementAndGet();
+                    HttpClientMessages.MESSAGES.debugf(e, "Failed to open idle connection to %s", hostPool.getUri());
+                }
+            });
+        } catch (IOException | URISyntaxException e) {
+            hostPoolAddress.abandoned();
+            stripe.openConnections.decrementAndGet();
+            HttpClientMessages.MESSAGES.debugf(e, "Failed to open idle connection to %s", hostPool.getUri());
+        }
+    }
+
+    /**
+     * Reserves a connection slot. If the given stripe has used up its share of the connection limit we attempt to
+     * borrow a slot from one of the other stripes, so the pool as a whole can still use all of {@code maxConnections}.
+     *
+     * @return the stripe the slot was reserved from, or {@code null} if the pool is at its limit
+     */
+    private Stripe reservePermit(Stripe stripe) {
+        for (int i = 0; i < stripes.length; ++i) {
+            Stripe candidate = stripes[(stripe.index + i) % stripes.length];
+            if (candidate.tryReserve()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the next pending request, stealing from the other stripes if this stripe has no pending requests.
+     * Control traffic from any stripe is served before other requests.
+     */
+    private RequestHolder pollPending(Stripe stripe) {
+        RequestHolder priority = pollPriority(stripe);
+        if (priority != null) {
+            return priority;
+        }
+        for (int i = 0; i < stripes.length; ++i) {
+            RequestHolder next = stripes[(stripe.index + i) % stripes.length].pendingConnectionRequests.poll();
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private RequestHolder pollPriority(Stripe stripe) {
+        for (int i = 0; i < stripes.length; ++i) {
+            RequestHolder next = stripes[(stripe.index + i) % stripes.length].priorityConnectionRequests.poll();
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the first idle connection that is not to the given address.
+     */
+    private static ClientConnectionHolder pollAvoiding(ConcurrentLinkedDeque<ClientConnectionHolder> queue, InetAddress avoidAddress) {
+        for (ClientConnectionHolder holder : queue) {
+            if (!holder.hostPoolAddress.isAddress(avoidAddress) && queue.removeFirstOccurrence(holder)) {
+                return holder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs as many of the pending requests as possible on streams of multiplexed connections that are in use. A
+     * request that can not be placed, such as one that needs a new connection or has to avoid the address of the
+     * only connection with free streams, does not hold up the requests behind it. The requests that could not be
+     * placed are put back at the head of the queue in their original order.
+     */
+    private void runMultiplexed(Stripe stripe, ConcurrentLinkedDeque<RequestHolder> pending) {
+        ArrayDeque<RequestHolder> skipped = null;
+        for (; ; ) {
+            RequestHolder next = pending.poll();
+            if (next == null) {
+                break;
+            }
+            if (!tryMultiplexedConnection(stripe, next)) {
+                if (skipped == null) {
+                    skipped = new ArrayDeque<>();
+                }
+                skipped.push(next);
+                if (!next.newConnection && next.avoidAddress == null) {
+                    //any free stream would have done, so there are none left for the requests behind it either
+                    break;
+                }
+            }
+        }
+        if (skipped != null) {
+            //the most recently skipped goes back first, so the earliest ends up at the head
+            RequestHolder request;
+            while ((request = skipped.poll()) != null) {
+                requeue(pending, request);
+            }
+        }
+    }
+
+    /**
+     * Attempts to run the request on a multiplexed connection that is already in use but still has spare stream
+     * capacity. This does not need a connection slot, as the connection is already counted as active.
+     */
+    private boolean tryMultiplexedConnection(Stripe stripe, RequestHolder next) {
+        Object key = connectionKey(next.context);
+        for (int i = 0; i < stripes.length; ++i) {
+            ConcurrentLinkedDeque<ClientConnectionHolder> queue = stripes[(stripe.index + i) % stripes.length].multiplexedConnections.get(key);
+            if (queue == null) {
+                continue;
+            }
+            for (ClientConnectionHolder existingConnection : queue) {
+                if (!existingConnection.connection.isOpen()) {
+                    queue.remove(existingConnection);
+                    continue;
+                }
+                if (next.newConnection || (next.avoidAddress != null && existingConnection.hostPoolAddress.isAddress(next.avoidAddress))) {
+                    continue;
+                }
+                if (existingConnection.tryAcquireStream()) {
+                    complete(next, new StreamHandle(existingConnection, System.nanoTime()));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Object connectionKey(SSLContext sslContext) {
+        if (sslContext == null || !hostPool.getUri().getScheme().equals("https")) {
+            return NULL_SSL_CONTEXT;
+        }
+        return sslContext;
+    }
+
+    private static <T> ConcurrentLinkedDeque<T> queue(Map<Object, ConcurrentLinkedDeque<T>> map, Object key) {
+        ConcurrentLinkedDeque<T> queue = map.get(key);
+        if (queue == null) {
+            map.putIfAbsent(key, new ConcurrentLinkedDeque<>());
+            queue = map.get(key);
+        }
+        return queue;
+    }
+
+    private void complete(RequestHolder request, ConnectionHandle connection) {
+        dequeued(request);
+        metrics.connectionAcquired(hostPool.getUri(), System.nanoTime() - request.queueTime);
+        request.connectionListener.done(connection);
+    }
+
+    private void fail(RequestHolder request, Exception error) {
+        dequeued(request);
+        metrics.acquireFailed(hostPool.getUri());
+        request.errorListener.error(error);
+    }
+
+    private void dequeued(RequestHolder request) {
+        if (request.queueTimeout != null) {
+            request.queueTimeout.cancel();
         }
+        if (!request.ignoreConnectionLimits) {
+            request.stripe.pendingRequests.decrementAndGet();
+        }
+    }
+
+    HttpClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void requestCompleted(long time, boolean failed) {
+        if (limiter != null && limiter.onSample(time, failed)) {
+            metrics.concurrencyLimitChanged(hostPool.getUri(), limiter.getLimit());
+        }
+    }
+
+    long getRequestTimeout() {
+        return requestTimeout;
+    }
 
+    RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @return the largest request body that is buffered and sent with a content length, or {@code 0} if bodies are
+     * always streamed
+     */
+    int getMaxBufferedRequestSize() {
+        return maxBufferedRequestSize;
+    }
+
+    /**
+     * @return the deflate level for compressed request bodies, or {@link Deflater#DEFAULT_COMPRESSION} if none has
+     * been configured
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
 
+    /**
+     * @return the size a request body has to exceed before it is compressed, or {@code 0} if adaptive compression is
+     * not enabled
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
     }
 
+    /**
+     * @return the number of buffers a response body is read ahead into, or {@code 0} if it is only read on demand
+     */
+    public int getReadAheadBuffers() {
+        return readAheadBuffers;
+    }
+
+    XnioWorker getWorker() {
+        return worker;
+    }
+
+    private void failPending(Stripe stripe) {
+        RequestHolder next;
+        while ((next = stripe.priorityConnectionRequests.poll()) != null) {
+            fail(next, HttpClientMessages.MESSAGES.connectionPoolClosed(hostPool.getUri()));
+        }
+        while ((next = stripe.pendingConnectionRequests.poll()) != null) {
+            fail(next, HttpClientMessages.MESSAGES.connectionPoolClosed(hostPool.getUri()));
+        }
+    }
+
+    /**
+     * Closes the pool. New and pending requests fail straight away, idle connections are closed, and connections that
+     * are in use are closed once their current request is done. Connections that are still open after the close
+     * timeout are closed forcibly.
+     */
     @Override
     public void close() throws IOException {
-        //TODO
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        maintainIdleConnections = false;
+        if (healthChecker != null) {
+            healthChecker.stop();
+        }
+        hostPool.close();
+        for (Stripe stripe : stripes) {
+            failPending(stripe);
+            for (ConcurrentLinkedDeque<ClientConnectionHolder> queue : stripe.connections.values()) {
+                ClientConnectionHolder holder;
+                while ((holder = queue.poll()) != null) {
+                    holder.tryClose();
+                }
+            }
+        }
+        sslInstances.clear();
+        boolean open = false;
+        for (Stripe stripe : stripes) {
+            open |= !stripe.allConnections.isEmpty();
+        }
+        if (open) {
+            worker.getIoThread().executeAfter(() -> {
+                for (Stripe stripe : stripes) {
+                    for (ClientConnectionHolder holder : stripe.allConnections) {
+                        IoUtils.safeClose(holder.connection);
+                    }
+                }
+            }, closeTimeout, TimeUnit.MILLISECONDS);
+        }
     }
 
     public interface ConnectionListener {
@@ -196,6 +845,34 @@ public class HttpConnectionPool implements Closeable {
         URI getUri();
 
         PoolAuthenticationContext getAuthenticationContext();
+
+        /**
+         * @return {@code true} if the connection has been idle in the pool since its last request, and so may have
+         * been closed by the server or a load balancer without us having noticed yet
+         */
+        default boolean isReused() {
+            return false;
+        }
+
+        /**
+         * @return the content codings the server has listed in the {@code Accept-Encoding} header of its last response
+         * on this connection, which it accepts for request bodies
+         */
+        default Set<String> getRequestEncodings() {
+            return Collections.emptySet();
+        }
+
+        default void setRequestEncodings(Set<String> encodings) {
+        }
+
+        /**
+         * Gives up the request that is using this handle, because it has timed out or was cancelled. By default the
+         * connection is closed, which fails the exchange and so releases the connection back to the pool. The handles
+         * of the pool ignore this once they have been released, as the connection may then belong to another request.
+         */
+        default void abort() {
+            IoUtils.safeClose(getConnection());
+        }
     }
 
 
@@ -204,54 +881,109 @@ public class HttpConnectionPool implements Closeable {
         final ErrorListener errorListener;
         final boolean ignoreConnectionLimits;
         final SSLContext context;
+        /**
+         * The number of failed attempts to connect for this request
+         */
+        int connectAttempts;
+        /**
+         * The time the request was made, used to measure the time spent waiting for a connection
+         */
+        final long queueTime = System.nanoTime();
+        /**
+         * Rejects the request once it has waited for {@link HttpClientOptions#MAX_QUEUE_WAIT}, or {@code null}
+         */
+        TimerWheel.Timeout queueTimeout;
+        volatile boolean queueWaitExceeded;
+        /**
+         * The address of the attempt a hedged request is hedging, which should not be used if there is another one
+         */
+        final InetAddress avoidAddress;
+        /**
+         * If the request must not be given an idle connection from the pool
+         */
+        final boolean newConnection;
+        /**
+         * The stripe whose pending request count includes this request
+         */
+        final Stripe stripe;
 
-        private RequestHolder(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext context) {
+        private RequestHolder(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext context, InetAddress avoidAddress, boolean newConnection, Stripe stripe) {
             this.connectionListener = connectionListener;
             this.errorListener = errorListener;
             this.ignoreConnectionLimits = ignoreConnectionLimits;
             this.context = context;
+            this.avoidAddress = avoidAddress;
+            this.newConnection = newConnection;
+            this.stripe = stripe;
         }
     }
 
-    private class ClientConnectionHolder implements ConnectionHandle {
+    private class ClientConnectionHolder {
 
         //0 = idle
-        //1 = in use
-        //2 - closed
+        //n > 0 = number of active streams, this can only be greater than 1 if the connection is multiplexed
+        //-1 = closed
+        private static final int CLOSED = -1;
         private volatile AtomicInteger state = new AtomicInteger();
         private final ClientConnection connection;
         private final URI uri;
-        private volatile XnioExecutor.Key timeoutKey;
-        private long timeout;
+        private final HostPool.AddressResult hostPoolAddress;
+        private final TimerWheel timerWheel;
+        private final TimerWheel.Timeout idleTimeout;
         private final SSLContext sslContext;
+        /**
+         * The stripe that this connection belongs to
+         */
+        private final Stripe stripe;
+        /**
+         * The stripe that the connection slot for the current use of this connection was reserved from
+         */
+        private volatile Stripe permit;
+        /**
+         * The time the connection was handed out for the current request, used to measure the request latency
+         */
+        private volatile long acquireTime;
+        /**
+         * If the connection has been taken from the idle queue at least once
+         */
+        private volatile boolean reused;
+        private volatile Set<String> requestEncodings = Collections.emptySet();
 
         private final Runnable timeoutTask = new Runnable() {
             @Override
             public void run() {
-                timeoutKey = null;
-                if (state.get() == 2) {
+                if (state.get() == CLOSED) {
                     return;
                 }
-                long time = System.currentTimeMillis();
-                if (timeout > time) {
-                    timeoutKey = connection.getIoThread().executeAfter(this, timeout - time, TimeUnit.MILLISECONDS);
-                    return;
+                final boolean closed;
+                //connections of a stripe can time out on different IO threads, they must not all see the same count
+                synchronized (stripe) {
+                    //connections that are in use do not count, they may all be busy when the floor is needed most
+                    if (stripe.minIdleConnections > 0 && stripe.idleConnectionCount() <= stripe.minIdleConnections) {
+                        //keep the connection open to maintain the minimum number of idle connections
+                        scheduleIdleTimeout();
+                        return;
+                    }
+                    closed = tryClose();
                 }
-                if (tryClose()) {
-                    activeInvocationCount.decrementAndGet();
-                    runPending(); //needed to avoid a very unlikely race
+                if (closed) {
+                    runPending(stripe); //needed to avoid a very unlikely race
                 }
             }
         };
 
-        private ClientConnectionHolder(ClientConnection connection, URI uri, SSLContext sslContext) {
+        private ClientConnectionHolder(ClientConnection connection, HostPool.AddressResult hostPoolAddress, SSLContext sslContext, Stripe stripe) {
             this.connection = connection;
-            this.uri = uri;
+            this.uri = hostPoolAddress.getURI();
+            this.hostPoolAddress = hostPoolAddress;
             this.sslContext = sslContext;
+            this.stripe = stripe;
+            this.timerWheel = TimerWheel.forThread(connection.getIoThread());
+            this.idleTimeout = new TimerWheel.Timeout(timeoutTask);
         }
 
         boolean tryClose() {
-            if (state.compareAndSet(0, 2)) {
+            if (state.compareAndSet(0, CLOSED)) {
                 IoUtils.safeClose(connection);
                 return true;
             }
@@ -262,37 +994,325 @@ public class HttpConnectionPool implements Closeable {
             return state.compareAndSet(0, 1);
         }
 
-        @Override
-        public ClientConnection getConnection() {
+        boolean isIdle() {
+            return state.get() == 0;
+        }
+
+        /**
+         * Acquires an additional stream on a connection that is already in use.
+         */
+        boolean tryAcquireStream() {
+            final int max = maxStreams();
+            for (; ; ) {
+                int current = state.get();
+                if (current < 1 || current >= max) {
+                    return false;
+                }
+                if (state.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private int maxStreams() {
+            return multiplexing && connection.isMultiplexingSupported() ? maxStreamsPerConnection : 1;
+        }
+
+        /**
+         * Creates the handle that is passed to the caller after a successful {@link #tryAcquire()}. If the connection
+         * can be shared it is also made available to other requests.
+         */
+        ConnectionHandle createHandle() {
+            if (maxStreams() == 1) {
+                return new ExclusiveHandle(this, acquireTime);
+            }
+            queue(stripe.multiplexedConnections, connectionKey(sslContext)).add(this);
+            return new StreamHandle(this, acquireTime);
+        }
+
+        void streamDone(boolean close) {
+            for (; ; ) {
+                int current = state.get();
+                if (current < 1) {
+                    return;
+                }
+                if (current > 1) {
+                    //other streams are still active, so we leave the connection open even if close was requested
+                    if (state.compareAndSet(current, current - 1)) {
+                        runPending(stripe);
+                        return;
+                    }
+                } else if (state.compareAndSet(1, close || hostPoolAddress.isRemoved() ? CLOSED : 0)) {
+                    stripe.multiplexedConnections.get(connectionKey(sslContext)).remove(this);
+                    if (close || hostPoolAddress.isRemoved()) {
+                        IoUtils.safeClose(connection);
+                    } else {
+                        scheduleIdleTimeout();
+                    }
+                    returnConnection(this);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Closes the connection if the calling stream is the only one that is active on it, which also resets that
+         * stream. The connection is released straight away, so the later release of the stream does nothing.
+         *
+         * @return {@code true} if the connection was closed
+         */
+        boolean closeIfLastStream() {
+            if (!state.compareAndSet(1, CLOSED)) {
+                return false;
+            }
+            stripe.multiplexedConnections.get(connectionKey(sslContext)).remove(this);
+            IoUtils.safeClose(connection);
+            returnConnection(this);
+            return true;
+        }
+
+        ClientConnection getConnection() {
             return connection;
         }
 
-        @Override
-        public void done(boolean close) {
+        /**
+         * Releases a connection that is not multiplexed once its request is done.
+         */
+        void done(boolean close) {
             if (!state.compareAndSet(1, 0)) {
                 return;
             }
-            if (close) {
+            if (close || hostPoolAddress.isRemoved()) {
                 IoUtils.safeClose(connection);
+            } else {
+                scheduleIdleTimeout();
             }
-            timeout = System.currentTimeMillis() + connectionIdleTimeout;
+            returnConnection(this);
+        }
 
+        private void cancelIdleTimeout() {
+            idleTimeout.cancel();
+        }
 
-            if (timeoutKey == null && connectionIdleTimeout > 0 && !close) {
-                timeoutKey = connection.getIoThread().executeAfter(timeoutTask, connectionIdleTimeout, TimeUnit.MILLISECONDS);
+        private void scheduleIdleTimeout() {
+            if (connectionIdleTimeout > 0) {
+                timerWheel.schedule(idleTimeout, connectionIdleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * The handle for a single use of a pooled connection. A connection is used by many requests over its lifetime, so
+     * every request gets a handle of its own, and once that handle has been released it no longer has any effect on
+     * the connection, which may already be in use by another request.
+     */
+    private abstract class PooledHandle implements ConnectionHandle {
+
+        final ClientConnectionHolder holder;
+        private final long acquireTime;
+        final AtomicBoolean done = new AtomicBoolean();
+
+        private PooledHandle(ClientConnectionHolder holder, long acquireTime) {
+            this.holder = holder;
+            this.acquireTime = acquireTime;
+        }
+
+        @Override
+        public ClientConnection getConnection() {
+            return holder.connection;
+        }
+
+        @Override
+        public void done(boolean close) {
+            if (done.compareAndSet(false, true)) {
+                metrics.connectionReleased(holder.uri);
+                long time = System.nanoTime() - acquireTime;
+                if (!close) {
+                    holder.hostPoolAddress.requestCompleted(time);
+                }
+                requestCompleted(time, close);
+                release(close);
             }
-            returnConnection(this);
         }
 
+        /**
+         * Gives the connection back, this is called once for each handle
+         */
+        abstract void release(boolean close);
+
         @Override
         public URI getUri() {
-            return uri;
+            return holder.uri;
         }
 
         @Override
         public PoolAuthenticationContext getAuthenticationContext() {
             return poolAuthenticationContext;
         }
+
+        @Override
+        public boolean isReused() {
+            return holder.reused;
+        }
+
+        @Override
+        public Set<String> getRequestEncodings() {
+            return holder.requestEncodings;
+        }
+
+        @Override
+        public void setRequestEncodings(Set<String> encodings) {
+            holder.requestEncodings = encodings;
+        }
+    }
+
+    /**
+     * A handle to a connection that is not shared with other requests.
+     */
+    private class ExclusiveHandle extends PooledHandle {
+
+        private ExclusiveHandle(ClientConnectionHolder holder, long acquireTime) {
+            super(holder, acquireTime);
+        }
+
+        @Override
+        void release(boolean close) {
+            holder.done(close);
+        }
+
+        /**
+         * Closes the connection, unless the handle has already been released. Closing the connection also fails the
+         * exchange, whose own release of the handle then does nothing.
+         */
+        @Override
+        public void abort() {
+            done(true);
+        }
+    }
+
+    /**
+     * A handle to a single stream on a multiplexed connection.
+     */
+    private class StreamHandle extends PooledHandle {
+
+        private StreamHandle(ClientConnectionHolder holder, long acquireTime) {
+            super(holder, acquireTime);
+        }
+
+        @Override
+        public synchronized void done(boolean close) {
+            super.done(close);
+        }
+
+        @Override
+        void release(boolean close) {
+            holder.streamDone(close);
+        }
+
+        /**
+         * Other streams may still be using the connection, so it is not closed. The stream stays open on the server
+         * until it responds, so it keeps its slot until then, as otherwise the connection could have more streams
+         * open than the server allows. The response is then discarded and the slot released. If this is the only
+         * stream on the connection the connection is closed instead, which also cancels the stream.
+         * <p>
+         * This is synchronized with {@link #done(boolean)}, so the connection is never closed once the stream has been
+         * released and the connection may have been given to another request.
+         */
+        @Override
+        public synchronized void abort() {
+            if (!done.get()) {
+                holder.closeIfLastStream();
+            }
+        }
+    }
+
+    /**
+     * A share of the pool. Everything that is updated on every acquire and release is kept per stripe, so threads on
+     * different stripes do not contend with each other. Totals are only summed up when they are needed.
+     */
+    private static final class Stripe {
+
+        final int index;
+        final int maxConnections;
+        /**
+         * This stripe's share of the minimum idle connection floor
+         */
+        final int minIdleConnections;
+        /**
+         * The IO thread that new connections for this stripe are created on, or {@code null} to let the worker choose
+         */
+        final XnioIoThread ioThread;
+        final Map<Object, ConcurrentLinkedDeque<ClientConnectionHolder>> connections = new ConcurrentHashMap<>();
+        /**
+         * Multiplexed connections that are currently in use, and so may be able to accept additional streams.
+         */
+        final Map<Object, ConcurrentLinkedDeque<ClientConnectionHolder>> multiplexedConnections = new ConcurrentHashMap<>();
+        final ConcurrentLinkedDeque<RequestHolder> pendingConnectionRequests = new ConcurrentLinkedDeque<>();
+        /**
+         * Pending requests that ignore the connection limit, these are served first
+         */
+        final ConcurrentLinkedDeque<RequestHolder> priorityConnectionRequests = new ConcurrentLinkedDeque<>();
+        final AtomicInteger activeInvocationCount = new AtomicInteger();
+        /**
+         * The number of connections of this stripe that are open or being opened, used to maintain the idle floor
+         */
+        final AtomicInteger openConnections = new AtomicInteger();
+        /**
+         * The number of requests queued on this stripe that are waiting for a connection, not counting control traffic
+         */
+        final AtomicInteger pendingRequests = new AtomicInteger();
+        /**
+         * All open connections of this stripe, including the ones that are in use
+         */
+        final Set<ClientConnectionHolder> allConnections = ConcurrentHashMap.newKeySet();
+        final ConcurrencyLimiter limiter;
+
+        Stripe(int index, int maxConnections, int minIdleConnections, XnioIoThread ioThread, ConcurrencyLimiter limiter) {
+            this.index = index;
+            this.maxConnections = maxConnections;
+            this.minIdleConnections = minIdleConnections;
+            this.ioThread = ioThread;
+            this.limiter = limiter;
+        }
+
+        /**
+         * @return the number of open connections of this stripe that are not in use
+         */
+        int idleConnectionCount() {
+            int count = 0;
+            for (ClientConnectionHolder connection : allConnections) {
+                if (connection.isIdle()) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        ConcurrentLinkedDeque<RequestHolder> pendingQueue(RequestHolder request) {
+            return request.ignoreConnectionLimits ? priorityConnectionRequests : pendingConnectionRequests;
+        }
+
+        boolean tryReserve() {
+            int count;
+            do {
+                count = activeInvocationCount.get();
+                if (count >= maxConnections) {
+                    return false;
+                }
+            } while (!activeInvocationCount.compareAndSet(count, count + 1));
+            if (limiter != null && !limiter.tryAcquire()) {
+                activeInvocationCount.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            activeInvocationCount.decrementAndGet();
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
     }
 
 }
@@ -19,6 +19,7 @@
 package org.wildfly.httpclient.common;
 
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.Marshaller;
@@ -27,7 +28,9 @@ import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.river.RiverMarshallerFactory;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
 
 /**
  * @author Stuart Douglas
@@ -36,6 +39,10 @@ public class HttpServerHelper {
 
     public static final MarshallerFactory RIVER_MARSHALLER_FACTORY = new RiverMarshallerFactory();
 
+    private static final AttachmentKey<Long> REQUEST_DEADLINE = AttachmentKey.create(Long.class);
+
+    private static final MarshallerPool EXCEPTION_MARSHALLERS = new MarshallerPool(createExceptionMarshallingConfig());
+
     private HttpServerHelper() {
 
     }
@@ -44,9 +51,7 @@ public class HttpServerHelper {
         try {
             exchange.setStatusCode(status);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/x-wf-jbmar-exception;version=1");
-            final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
-            marshallingConfiguration.setVersion(2);
-            final Marshaller marshaller = RIVER_MARSHALLER_FACTORY.createMarshaller(marshallingConfiguration);
+            final Marshaller marshaller = EXCEPTION_MARSHALLERS.getMarshaller();
             OutputStream outputStream = exchange.getOutputStream();
             final ByteOutput byteOutput = Marshalling.createByteOutput(outputStream);
             // start the marshaller
@@ -55,6 +60,7 @@ public class HttpServerHelper {
             marshaller.write(0);
             marshaller.finish();
             marshaller.flush();
+            EXCEPTION_MARSHALLERS.release(marshaller);
             exchange.endExchange();
         } catch (Exception ex) {
             ex.addSuppressed(e);
@@ -62,4 +68,52 @@ public class HttpServerHelper {
             exchange.endExchange();
         }
     }
+
+    private static MarshallingConfiguration createExceptionMarshallingConfig() {
+        final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
+        marshallingConfiguration.setVersion(2);
+        return marshallingConfiguration;
+    }
+
+    /**
+     * Records when the client will stop waiting for the response, based on the remaining time it sent with the
+     * request. This should be called as soon as the request is received, before it is dispatched or queued.
+     */
+    public static void recordRequestDeadline(HttpServerExchange exchange) {
+        if (exchange.getAttachment(REQUEST_DEADLINE) != null) {
+            return;
+        }
+        String timeout = exchange.getRequestHeaders().getFirst(HttpTargetContext.REQUEST_TIMEOUT);
+        if (timeout != null) {
+            try {
+                exchange.putAttachment(REQUEST_DEADLINE, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(timeout)));
+            } catch (NumberFormatException e) {
+                HttpClientMessages.MESSAGES.debugf("Ignoring invalid request timeout %s", timeout);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the client has already given up waiting for the response to this request
+     */
+    public static boolean isRequestExpired(HttpServerExchange exchange) {
+        Long deadline = exchange.getAttachment(REQUEST_DEADLINE);
+        return deadline != null && deadline - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Ends the exchange with a {@code 503} if the client has already given up waiting for the response, as there is
+     * no point in running the request then.
+     *
+     * @return {@code true} if the exchange has been ended
+     */
+    public static boolean endIfRequestExpired(HttpServerExchange exchange) {
+        if (!isRequestExpired(exchange)) {
+            return false;
+        }
+        HttpClientMessages.MESSAGES.debugf("Abandoning request %s as the client is no longer waiting for it", exchange);
+        exchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+        exchange.endExchange();
+        return true;
+    }
 }
@@ -21,18 +21,23 @@ package org.wildfly.httpclient.common;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectInput;
 import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.URI;
 import java.security.AccessController;
 import java.security.GeneralSecurityException;
 import java.security.PrivilegedAction;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.GZIPInputStream;
+import java.util.function.Function;
 import javax.net.ssl.SSLContext;
 
 import org.jboss.marshalling.InputStreamByteInput;
@@ -55,9 +60,11 @@ import io.undertow.client.ClientRequest;
 import io.undertow.client.ClientResponse;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.util.AbstractAttachable;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.Cookies;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
 import io.undertow.util.StatusCodes;
 
@@ -77,6 +84,10 @@ public class HttpTargetContext extends AbstractAttachable {
     private static final String EXCEPTION_TYPE = "application/x-wf-jbmar-exception";
 
     private static final String JSESSIONID = "JSESSIONID";
+    /**
+     * The time in milliseconds the client is still waiting for the response, sent when a request timeout is configured
+     */
+    public static final HttpString REQUEST_TIMEOUT = new HttpString("x-wf-request-timeout");
     static final MarshallerFactory MARSHALLER_FACTORY = new RiverMarshallerFactory();
 
     private final HttpConnectionPool connectionPool;
@@ -85,8 +96,17 @@ public class HttpTargetContext extends AbstractAttachable {
     private volatile String sessionId;
     private final URI uri;
     private final AuthenticationContext initAuthenticationContext;
+    /**
+     * The hedging delay for idempotent requests, or {@code null} if they are not hedged
+     */
+    private final HedgingPolicy hedgingPolicy;
 
     private final AtomicBoolean affinityRequestSent = new AtomicBoolean();
+    private final AtomicBoolean prewarmed = new AtomicBoolean();
+    /**
+     * The last {@code Accept-Encoding} response header that was parsed, as a server sends the same one every time
+     */
+    private volatile AcceptEncoding lastAcceptEncoding;
 
     private static ClassLoader getContextClassLoader() {
         if(System.getSecurityManager() == null) {
@@ -106,12 +126,27 @@ public class HttpTargetContext extends AbstractAttachable {
         this.eagerlyAcquireAffinity = eagerlyAcquireAffinity;
         this.uri = uri;
         this.initAuthenticationContext = AuthenticationContext.captureCurrent();
+        this.hedgingPolicy = connectionPool.isHedging() ? new HedgingPolicy() : null;
     }
 
     void init() {
         if (eagerlyAcquireAffinity) {
             acquireAffinitiy(AUTH_CONTEXT_CLIENT.getAuthenticationConfiguration(uri, AuthenticationContext.captureCurrent()));
         }
+        if (connectionPool.isPrewarmOnInit() && prewarmed.compareAndSet(false, true)) {
+            prewarmConnections();
+        }
+    }
+
+    private void prewarmConnections() {
+        SSLContext sslContext;
+        try {
+            sslContext = AUTH_CONTEXT_CLIENT.getSSLContext(uri, AuthenticationContext.captureCurrent());
+        } catch (GeneralSecurityException e) {
+            HttpClientMessages.MESSAGES.failedToPrewarmConnections(uri, e);
+            return;
+        }
+        connectionPool.prewarm(sslContext);
     }
 
     private void acquireAffinitiy(AuthenticationConfiguration authenticationConfiguration) {
@@ -137,7 +172,25 @@ public class HttpTargetContext extends AbstractAttachable {
         sendRequest(clientRequest, sslContext, authenticationConfiguration, null, null, (e) -> {
             latch.countDown();
             HttpClientMessages.MESSAGES.failedToAcquireSession(e);
-        }, null, latch::countDown);
+        }, null, latch::countDown, false, true);
+    }
+
+    /**
+     * Returns the marshaller pool stored on this target under the given key, creating it the first time. The
+     * configuration is built once for the target, so it must only depend on the target URI.
+     */
+    public MarshallerPool getMarshallerPool(AttachmentKey<MarshallerPool> key, Function<URI, MarshallingConfiguration> configurationFactory) {
+        MarshallerPool pool = getAttachment(key);
+        if (pool == null) {
+            synchronized (this) {
+                pool = getAttachment(key);
+                if (pool == null) {
+                    pool = new MarshallerPool(configurationFactory.apply(uri));
+                    putAttachment(key, pool);
+                }
+            }
+        }
+        return pool;
     }
 
     public Unmarshaller createUnmarshaller(MarshallingConfiguration marshallingConfiguration) throws IOException {
@@ -153,15 +206,219 @@ public class HttpTargetContext extends AbstractAttachable {
     }
 
     public void sendRequest(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent) {
+        sendRequest(request, sslContext, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, false);
+    }
+
+    /**
+     * Sends a request to the target.
+     *
+     * @param control {@code true} if this is control traffic, such as transaction completion or cancellation, that
+     *                should not wait behind other requests when the connection pool is full
+     */
+    public void sendRequest(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean control) {
+        sendRequest(request, sslContext, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, control, false);
+    }
+
+    public void sendIdempotentRequest(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask) {
+        sendIdempotentRequest(request, sslContext, authenticationConfiguration, httpResultHandler, failureHandler, expectedResponse, completedTask, false);
+    }
+
+    /**
+     * Sends a request without a body that has no side effects on the server, such as EJB discovery. If
+     * {@link HttpClientOptions#HEDGE_IDEMPOTENT_REQUESTS} is enabled and there is no response within the hedging delay
+     * the request is sent again, to a different address of the target if there is one, and the first response is used.
+     * Only a {@code GET}, {@code HEAD} or {@code OPTIONS} request is treated like this, any other request is sent as
+     * it would be by {@link #sendRequest}, so it is neither hedged nor retried once it has been written.
+     */
+    public void sendIdempotentRequest(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent) {
+        sendRequest(request, sslContext, authenticationConfiguration, null, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, false, isSafeMethod(request.getMethod()));
+    }
+
+    private void sendRequest(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean control, boolean idempotent) {
         if (sessionId != null) {
             request.getRequestHeaders().add(Headers.COOKIE, JSESSIONID + "=" + sessionId);
         }
         final ClassLoader tccl = getContextClassLoader();
-        connectionPool.getConnection(connection -> sendRequestInternal(connection, request, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, false, sslContext, tccl), failureHandler::handleFailure, false, sslContext);
+        final long requestTimeout = connectionPool.getRequestTimeout();
+        final HedgedRequest hedgedRequest = idempotent && hedgingPolicy != null ? new HedgedRequest() : null;
+        if (requestTimeout <= 0) {
+            if (hedgedRequest == null) {
+                acquireAndSend(request, sslContext, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, control, idempotent, tccl, null, null, null);
+            } else {
+                sendHedged(hedgedRequest, request, sslContext, authenticationConfiguration, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, tccl, null);
+            }
+            return;
+        }
+        final RequestDeadline deadline = new RequestDeadline(requestTimeout);
+        //whichever of the outcome and the timeout happens first is reported, anything after that is discarded
+        final HttpFailureHandler timedFailureHandler = failure -> {
+            if (deadline.complete()) {
+                failureHandler.handleFailure(failure);
+            }
+        };
+        final HttpResultHandler timedResultHandler;
+        final Runnable timedCompletedTask;
+        if (httpResultHandler == null) {
+            timedResultHandler = null;
+            timedCompletedTask = () -> {
+                if (deadline.complete() && completedTask != null) {
+                    completedTask.run();
+                }
+            };
+        } else {
+            timedResultHandler = (result, response, doneCallback) -> {
+                if (deadline.complete()) {
+                    httpResultHandler.handleResult(result, response, doneCallback);
+                } else {
+                    IoUtils.safeClose(doneCallback);
+                }
+            };
+            timedCompletedTask = completedTask;
+        }
+        deadline.start(TimerWheel.forThread(connectionPool.getWorker().getIoThread()), () -> {
+            if (hedgedRequest != null) {
+                hedgedRequest.cancel();
+            }
+            failureHandler.handleFailure(HttpClientMessages.MESSAGES.requestTimedOut(uri, deadline.getTimeout()));
+        });
+        if (hedgedRequest == null) {
+            acquireAndSend(request, sslContext, authenticationConfiguration, httpMarshaller, timedResultHandler, timedFailureHandler, expectedResponse, timedCompletedTask, allowNoContent, control, idempotent, tccl, deadline, null, null);
+        } else {
+            sendHedged(hedgedRequest, request, sslContext, authenticationConfiguration, timedResultHandler, timedFailureHandler, expectedResponse, timedCompletedTask, allowNoContent, tccl, deadline);
+        }
+    }
+
+    /**
+     * Sends the first attempt of a hedged request, and schedules the second one if we know the hedging delay.
+     */
+    private void sendHedged(HedgedRequest hedgedRequest, ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, ClassLoader tccl, RequestDeadline deadline) {
+        final long delay = hedgingPolicy.getDelayMillis();
+        if (delay >= 0) {
+            //the first attempt adds headers of its own, so the second one is sent from a copy taken now
+            final ClientRequest hedgeRequest = copyRequest(request);
+            hedgedRequest.start(TimerWheel.forThread(connectionPool.getWorker().getIoThread()), delay, () -> {
+                connectionPool.getMetrics().requestHedged(uri);
+                sendAttempt(hedgedRequest, hedgedRequest.hedge, hedgeRequest, sslContext, authenticationConfiguration, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, tccl, deadline, hedgedRequest.getPrimaryAddress());
+            });
+        }
+        sendAttempt(hedgedRequest, hedgedRequest.primary, request, sslContext, authenticationConfiguration, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, tccl, deadline, null);
+    }
+
+    private void sendAttempt(HedgedRequest hedgedRequest, HedgedRequest.Attempt attempt, ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, ClassLoader tccl, RequestDeadline deadline, InetAddress avoidAddress) {
+        //only the first attempt to complete is passed on, the other one has been cancelled by then
+        final HttpFailureHandler attemptFailureHandler = failure -> {
+            if (attempt.fail()) {
+                failureHandler.handleFailure(failure);
+            }
+        };
+        final HttpResultHandler attemptResultHandler;
+        final Runnable attemptCompletedTask;
+        if (httpResultHandler == null) {
+            attemptResultHandler = null;
+            attemptCompletedTask = () -> {
+                if (attempt.complete()) {
+                    hedgingPolicy.record(hedgedRequest.elapsed());
+                    if (completedTask != null) {
+                        completedTask.run();
+                    }
+                }
+            };
+        } else {
+            attemptResultHandler = (result, response, doneCallback) -> {
+                if (attempt.complete()) {
+                    hedgingPolicy.record(hedgedRequest.elapsed());
+                    httpResultHandler.handleResult(result, response, doneCallback);
+                } else {
+                    IoUtils.safeClose(doneCallback);
+                }
+            };
+            attemptCompletedTask = () -> {
+                if (attempt.isWinner() && completedTask != null) {
+                    completedTask.run();
+                }
+            };
+        }
+        acquireAndSend(request, sslContext, authenticationConfiguration, null, attemptResultHandler, attemptFailureHandler, expectedResponse, attemptCompletedTask, allowNoContent, false, true, tccl, deadline, attempt, avoidAddress);
+    }
+
+    private void acquireAndSend(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean control, boolean idempotent, ClassLoader tccl, RequestDeadline deadline, HedgedRequest.Attempt attempt, InetAddress avoidAddress) {
+        connectionPool.getRetryBudget().requestSent();
+        connectionPool.getConnection(connection -> {
+            if (attach(connection, request, deadline, attempt)) {
+                sendRequestInternal(connection, request, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, false, sslContext, tccl, deadline, attempt, idempotent);
+            }
+        }, failureHandler::handleFailure, control, sslContext, avoidAddress);
+    }
+
+    /**
+     * Records the connection a request is about to be sent on with its deadline and hedged attempt, so they can cancel
+     * it. If the request is already done the connection is released instead.
+     *
+     * @return {@code true} if the request should be sent on the connection
+     */
+    private static boolean attach(HttpConnectionPool.ConnectionHandle connection, ClientRequest request, RequestDeadline deadline, HedgedRequest.Attempt attempt) {
+        if ((attempt != null && !attempt.attach(connection)) || (deadline != null && !deadline.attach(connection))) {
+            release(connection, false, deadline, attempt);
+            return false;
+        }
+        if (deadline != null) {
+            request.getRequestHeaders().put(REQUEST_TIMEOUT, deadline.remainingMillis());
+        }
+        return true;
+    }
+
+    /**
+     * Releases the connection of a request, after detaching it from the deadline and hedged attempt so that it is not
+     * aborted once it has been given to another request.
+     */
+    private static void release(HttpConnectionPool.ConnectionHandle connection, boolean close, RequestDeadline deadline, HedgedRequest.Attempt attempt) {
+        if (deadline != null) {
+            deadline.detach(connection);
+        }
+        if (attempt != null) {
+            attempt.detach(connection);
+        }
+        connection.done(close);
     }
 
-    public void sendRequestInternal(final HttpConnectionPool.ConnectionHandle connection, ClientRequest request, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean retry, SSLContext sslContext, ClassLoader classLoader) {
+    private static ClientRequest copyRequest(ClientRequest request) {
+        ClientRequest copy = new ClientRequest()
+                .setMethod(request.getMethod())
+                .setPath(request.getPath())
+                .setProtocol(request.getProtocol());
+        for (HeaderValues values : request.getRequestHeaders()) {
+            copy.getRequestHeaders().addAll(values.getHeaderName(), values);
+        }
+        return copy;
+    }
+
+    public void sendRequestInternal(final HttpConnectionPool.ConnectionHandle connection, ClientRequest request, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler requestFailureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean retry, SSLContext sslContext, ClassLoader classLoader) {
+        sendRequestInternal(connection, request, authenticationConfiguration, httpMarshaller, httpResultHandler, requestFailureHandler, expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader, null, null, false);
+    }
+
+    /**
+     * @param deadline the deadline of the request, or {@code null} if it does not time out
+     * @param attempt the attempt of a hedged request this is, or {@code null} if the request is not hedged
+     * @param idempotent if the request can safely be processed by the server more than once
+     */
+    private void sendRequestInternal(final HttpConnectionPool.ConnectionHandle connection, ClientRequest request, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler requestFailureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean retry, SSLContext sslContext, ClassLoader classLoader, RequestDeadline deadline, HedgedRequest.Attempt attempt, boolean idempotent) {
+        final HttpClientMetrics metrics = connectionPool.getMetrics();
+        final HttpFailureHandler failureHandler;
+        if (retry || metrics == HttpClientMetrics.NOOP) {
+            //a retry already has the failure handler that reports the metrics
+            failureHandler = requestFailureHandler;
+        } else {
+            failureHandler = failure -> {
+                metrics.requestFailed(uri);
+                requestFailureHandler.handleFailure(failure);
+            };
+        }
+        final long requestStart = System.nanoTime();
+        final AtomicBoolean staleRetryDecided = new AtomicBoolean();
+        //set once the whole request has been handed to the connection, after which the server may have processed it
+        final AtomicBoolean requestWritten = new AtomicBoolean();
         try {
+            negotiateRequestEncoding(connection, request);
             final boolean authAdded = retry || connection.getAuthenticationContext().prepareRequest(connection.getUri(), request, authenticationConfiguration);
 
             if (!request.getRequestHeaders().contains(Headers.HOST)) {
@@ -182,32 +439,40 @@ public class HttpTargetContext extends AbstractAttachable {
                 AUTH_CONTEXT_CLIENT.getAuthenticationConfiguration(uri, initAuthenticationContext)
                 : authenticationConfiguration;
 
-            if (request.getRequestHeaders().contains(Headers.CONTENT_TYPE)) {
+            //small bodies are marshalled first, so they can be sent with a content length, and with adaptive compression
+            //the headers are only sent once the start of the body has decided whether it is compressed
+            final CompletableFuture<ClientExchange> bufferedExchange = httpMarshaller != null && (connectionPool.getMaxBufferedRequestSize() > 0 || connectionPool.getCompressionThreshold() > 0) ? new CompletableFuture<>() : null;
+            if (bufferedExchange == null && request.getRequestHeaders().contains(Headers.CONTENT_TYPE)) {
                 request.getRequestHeaders().put(Headers.TRANSFER_ENCODING, Headers.CHUNKED.toString());
             }
-            connection.getConnection().sendRequest(request, new ClientCallback<ClientExchange>() {
+            final ClientCallback<ClientExchange> exchangeCallback = new ClientCallback<ClientExchange>() {
                 @Override
                 public void completed(ClientExchange result) {
                     result.setResponseListener(new ClientCallback<ClientExchange>() {
                         @Override
                         public void completed(ClientExchange result) {
+                            metrics.responseReceived(uri, System.nanoTime() - requestStart, result.getResponse().getResponseCode());
                             connection.getConnection().getWorker().execute(() -> {
                                 ClientResponse response = result.getResponse();
                                 if (!authAdded || connection.getAuthenticationContext().isStale(result)) {
                                     handleSessionAffinity(request, response);
                                     if (connection.getAuthenticationContext().handleResponse(response)) {
                                         URI uri = connection.getUri();
-                                        connection.done(false);
+                                        //until the new connection is attached a timeout has nothing to abort
+                                        release(connection, false, deadline, attempt);
                                         final AtomicBoolean done = new AtomicBoolean();
                                         ChannelListener<StreamSourceChannel> listener = ChannelListeners.drainListener(Long.MAX_VALUE, channel -> {
                                             done.set(true);
                                             connectionPool.getConnection((connection) -> {
+                                                if (!attach(connection, request, deadline, attempt)) {
+                                                    return;
+                                                }
                                                 if (connection.getAuthenticationContext().prepareRequest(uri, request, finalAuthenticationConfiguration)) {
                                                     //retry the invocation
-                                                    sendRequestInternal(connection, request, finalAuthenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, true, finalSslContext, classLoader);
+                                                    sendRequestInternal(connection, request, finalAuthenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, true, finalSslContext, classLoader, deadline, attempt, idempotent);
                                                 } else {
                                                     failureHandler.handleFailure(HttpClientMessages.MESSAGES.authenticationFailed());
-                                                    connection.done(true);
+                                                    release(connection, true, deadline, attempt);
                                                 }
                                             }, failureHandler::handleFailure, false, finalSslContext);
 
@@ -249,36 +514,28 @@ public class HttpTargetContext extends AbstractAttachable {
                                         failureHandler.handleFailure(HttpClientMessages.MESSAGES.invalidResponseType(type));
                                     }
                                     //close the connection to be safe
-                                    connection.done(true);
+                                    release(connection, true, deadline, attempt);
                                     return;
                                 }
                                 try {
                                     handleSessionAffinity(request, response);
+                                    handleAcceptEncoding(connection, response);
 
                                     if (isException) {
                                         final MarshallingConfiguration marshallingConfiguration = createExceptionMarshallingConfig(classLoader);
                                         final Unmarshaller unmarshaller = MARSHALLER_FACTORY.createUnmarshaller(marshallingConfiguration);
-                                        try (WildflyClientInputStream inputStream = new WildflyClientInputStream(result.getConnection().getBufferPool(), result.getResponseChannel())) {
-                                            InputStream in = inputStream;
-                                            String encoding = response.getResponseHeaders().getFirst(Headers.CONTENT_ENCODING);
-                                            if (encoding != null) {
-                                                String lowerEncoding = encoding.toLowerCase(Locale.ENGLISH);
-                                                if (Headers.GZIP.toString().equals(lowerEncoding)) {
-                                                    in = new GZIPInputStream(in);
-                                                } else if (!lowerEncoding.equals(Headers.IDENTITY.toString())) {
-                                                    throw HttpClientMessages.MESSAGES.invalidContentEncoding(encoding);
-                                                }
-                                            }
+                                        try (InputStream inputStream = createResponseStream(result)) {
+                                            InputStream in = decode(inputStream, response);
                                             unmarshaller.start(new InputStreamByteInput(in));
                                             Throwable exception = (Throwable) unmarshaller.readObject();
                                             Map<String, Object> attachments = readAttachments(unmarshaller);
                                             int read = in.read();
                                             if (read != -1) {
                                                 HttpClientMessages.MESSAGES.debugf("Unexpected data when reading exception from %s", response);
-                                                connection.done(true);
+                                                release(connection, true, deadline, attempt);
                                             } else {
-                                                IoUtils.safeClose(inputStream);
-                                                connection.done(false);
+                                                IoUtils.safeClose(in);
+                                                release(connection, false, deadline, attempt);
                                             }
                                             failureHandler.handleFailure(exception);
                                         }
@@ -286,41 +543,26 @@ public class HttpTargetContext extends AbstractAttachable {
                                         //unknown error
                                         failureHandler.handleFailure(HttpClientMessages.MESSAGES.invalidResponseCode(response.getResponseCode(), response));
                                         //close the connection to be safe
-                                        connection.done(true);
+                                        release(connection, true, deadline, attempt);
 
                                     } else {
                                         if (httpResultHandler != null) {
-                                            final InputStream in = new WildflyClientInputStream(result.getConnection().getBufferPool(), result.getResponseChannel());
-                                            InputStream inputStream = in;
-                                            Closeable doneCallback = () -> {
-                                                IoUtils.safeClose(in);
-                                                if (completedTask != null) {
-                                                    completedTask.run();
-                                                }
-                                                connection.done(false);
-                                            };
+                                            final InputStream in = createResponseStream(result);
                                             if (response.getResponseCode() == StatusCodes.NO_CONTENT) {
                                                 IoUtils.safeClose(in);
-                                                httpResultHandler.handleResult(null, response, doneCallback);
+                                                httpResultHandler.handleResult(null, response, doneCallback(in, completedTask, connection, deadline, attempt));
                                             } else {
-                                                String encoding = response.getResponseHeaders().getFirst(Headers.CONTENT_ENCODING);
-                                                if (encoding != null) {
-                                                    String lowerEncoding = encoding.toLowerCase(Locale.ENGLISH);
-                                                    if (Headers.GZIP.toString().equals(lowerEncoding)) {
-                                                        inputStream = new GZIPInputStream(inputStream);
-                                                    } else if (!lowerEncoding.equals(Headers.IDENTITY.toString())) {
-                                                        throw HttpClientMessages.MESSAGES.invalidContentEncoding(encoding);
-                                                    }
-                                                }
-                                                httpResultHandler.handleResult(inputStream, response, doneCallback);
+                                                InputStream inputStream = decode(in, response);
+                                                //closing the decoding stream as well returns its inflater to the pool
+                                                httpResultHandler.handleResult(inputStream, response, doneCallback(inputStream, completedTask, connection, deadline, attempt));
                                             }
                                         } else {
-                                            final InputStream in = new WildflyClientInputStream(result.getConnection().getBufferPool(), result.getResponseChannel());
+                                            final InputStream in = createResponseStream(result);
                                             IoUtils.safeClose(in);
                                             if (completedTask != null) {
                                                 completedTask.run();
                                             }
-                                            connection.done(false);
+                                            release(connection, false, deadline, attempt);
                                         }
                                     }
 
@@ -328,7 +570,7 @@ public class HttpTargetContext extends AbstractAttachable {
                                     try {
                                         failureHandler.handleFailure(e);
                                     } finally {
-                                        connection.done(true);
+                                        release(connection, true, deadline, attempt);
                                     }
                                 }
                             });
@@ -336,15 +578,25 @@ public class HttpTargetContext extends AbstractAttachable {
 
                         @Override
                         public void failed(IOException e) {
+                            if (retryOnNewConnection(connection, e, staleRetryDecided, requestWritten.get(), request, authenticationConfiguration, httpMarshaller, httpResultHandler, requestFailureHandler, expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader, deadline, attempt, idempotent)) {
+                                return;
+                            }
                             try {
                                 failureHandler.handleFailure(e);
                             } finally {
-                                connection.done(true);
+                                release(connection, true, deadline, attempt);
                             }
                         }
                     });
 
-                    if (httpMarshaller != null) {
+                    if (httpMarshaller == null) {
+                        requestWritten.set(true);
+                    }
+                    if (bufferedExchange != null) {
+                        //the request may still be being set up by the code that called us, so only hand it over to
+                        //the thread writing the body once that has returned
+                        result.getConnection().getIoThread().execute(() -> bufferedExchange.complete(result));
+                    } else if (httpMarshaller != null) {
                         //marshalling is blocking, we need to delegate, otherwise we may need to buffer arbitrarily large requests
                         connection.getConnection().getWorker().execute(() -> {
                             try (OutputStream outputStream = new WildflyClientOutputStream(result.getRequestChannel(), result.getConnection().getBufferPool())) {
@@ -352,12 +604,16 @@ public class HttpTargetContext extends AbstractAttachable {
                                 // marshall the locator and method params
                                 // start the marshaller
                                 httpMarshaller.marshall(outputStream);
-
+                                outputStream.close();
+                                requestWritten.set(true);
                             } catch (Exception e) {
+                                if (retryOnNewConnection(connection, e, staleRetryDecided, requestWritten.get(), request, authenticationConfiguration, httpMarshaller, httpResultHandler, requestFailureHandler, expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader, deadline, attempt, idempotent)) {
+                                    return;
+                                }
                                 try {
                                     failureHandler.handleFailure(e);
                                 } finally {
-                                    connection.done(true);
+                                    release(connection, true, deadline, attempt);
                                 }
                             }
                         });
@@ -366,10 +622,60 @@ public class HttpTargetContext extends AbstractAttachable {
 
                 @Override
                 public void failed(IOException e) {
+                    if (bufferedExchange != null) {
+                        //reported by the thread that is sending the body
+                        bufferedExchange.completeExceptionally(e);
+                        return;
+                    }
+                    if (retryOnNewConnection(connection, e, staleRetryDecided, requestWritten.get(), request, authenticationConfiguration, httpMarshaller, httpResultHandler, requestFailureHandler, expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader, deadline, attempt, idempotent)) {
+                        return;
+                    }
+                    try {
+                        failureHandler.handleFailure(e);
+                    } finally {
+                        release(connection, true, deadline, attempt);
+                    }
+                }
+            };
+            if (bufferedExchange == null) {
+                connection.getConnection().sendRequest(request, exchangeCallback);
+                return;
+            }
+            connection.getConnection().getWorker().execute(() -> {
+                BufferedRequestOutputStream outputStream = new BufferedRequestOutputStream(connection.getConnection().getBufferPool(), connectionPool.getMaxBufferedRequestSize(), contentLength -> {
+                    if (contentLength < 0) {
+                        request.getRequestHeaders().remove(Headers.CONTENT_LENGTH);
+                        request.getRequestHeaders().put(Headers.TRANSFER_ENCODING, Headers.CHUNKED.toString());
+                    } else {
+                        request.getRequestHeaders().remove(Headers.TRANSFER_ENCODING);
+                        request.getRequestHeaders().put(Headers.CONTENT_LENGTH, contentLength);
+                    }
+                    connection.getConnection().getIoThread().execute(() -> connection.getConnection().sendRequest(request, exchangeCallback));
+                    ClientExchange exchange = awaitExchange(bufferedExchange);
+                    return new WildflyClientOutputStream(exchange.getRequestChannel(), exchange.getConnection().getBufferPool());
+                });
+                try {
+                    httpMarshaller.marshall(outputStream);
+                    outputStream.close();
+                    requestWritten.set(true);
+                } catch (Exception e) {
+                    outputStream.discard();
+                    if (!outputStream.isStarted()) {
+                        //nothing has been sent, so the connection can still be used
+                        try {
+                            failureHandler.handleFailure(e);
+                        } finally {
+                            release(connection, false, deadline, attempt);
+                        }
+                        return;
+                    }
+                    if (retryOnNewConnection(connection, e, staleRetryDecided, requestWritten.get(), request, authenticationConfiguration, httpMarshaller, httpResultHandler, requestFailureHandler, expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader, deadline, attempt, idempotent)) {
+                        return;
+                    }
                     try {
                         failureHandler.handleFailure(e);
                     } finally {
-                        connection.done(true);
+                        release(connection, true, deadline, attempt);
                     }
                 }
             });
@@ -377,11 +683,77 @@ public class HttpTargetContext extends AbstractAttachable {
             try {
                 failureHandler.handleFailure(e);
             } finally {
-                connection.done(true);
+                release(connection, true, deadline, attempt);
+            }
+        }
+    }
+
+    private static Closeable doneCallback(InputStream in, Runnable completedTask, HttpConnectionPool.ConnectionHandle connection, RequestDeadline deadline, HedgedRequest.Attempt attempt) {
+        return () -> {
+            IoUtils.safeClose(in);
+            if (completedTask != null) {
+                completedTask.run();
             }
+            release(connection, false, deadline, attempt);
+        };
+    }
+
+    private static ClientExchange awaitExchange(CompletableFuture<ClientExchange> exchange) throws IOException {
+        try {
+            return exchange.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
         }
     }
 
+    /**
+     * Retries a request that failed before any of the response arrived on a connection that had been idle in the pool,
+     * as the server or a load balancer has most likely closed the connection while it was idle. The retry is sent on a
+     * newly opened connection, so a request is retried at most once, and only if the {@link RetryBudget} allows it.
+     * A request that has timed out, or a hedged attempt that has been cancelled, is never retried, as its connection
+     * was closed on purpose and the caller has already been given the outcome. Once the whole request has been written
+     * the server may already have processed it, so it is then only retried if it is idempotent.
+     *
+     * @param decided set by the first failure that is reported for the request, which decides whether to retry
+     * @return {@code true} if the failure has been dealt with, either by retrying or because another report of the
+     * same failure has already dealt with it
+     */
+    private boolean retryOnNewConnection(HttpConnectionPool.ConnectionHandle connection, Throwable failure, AtomicBoolean decided, boolean requestWritten, ClientRequest request, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean retry, SSLContext sslContext, ClassLoader classLoader, RequestDeadline deadline, HedgedRequest.Attempt attempt, boolean idempotent) {
+        if (!(failure instanceof IOException) || !connection.isReused()) {
+            return false;
+        }
+        if (!decided.compareAndSet(false, true)) {
+            //the request channel and the response listener can both report the same broken connection
+            return true;
+        }
+        if ((deadline != null && !deadline.isRunning()) || (attempt != null && attempt.isDone())) {
+            return false;
+        }
+        if (requestWritten && !idempotent && !isSafeMethod(request.getMethod())) {
+            return false;
+        }
+        if (!connectionPool.getRetryBudget().tryRetry()) {
+            return false;
+        }
+        HttpClientMessages.MESSAGES.debugf(failure, "Retrying request to %s on a new connection", uri);
+        connectionPool.getMetrics().requestRetried(uri);
+        release(connection, true, deadline, attempt);
+        connectionPool.getNewConnection(newConnection -> {
+            if (attach(newConnection, request, deadline, attempt)) {
+                sendRequestInternal(newConnection, request, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader, deadline, attempt, idempotent);
+            }
+        }, failureHandler::handleFailure, sslContext);
+        return true;
+    }
+
+    private static boolean isSafeMethod(HttpString method) {
+        return Methods.GET.equals(method) || Methods.HEAD.equals(method) || Methods.OPTIONS.equals(method);
+    }
+
     private void handleSessionAffinity(ClientRequest request, ClientResponse response) {
         //handle session affinity
         HeaderValues cookies = response.getResponseHeaders().get(Headers.SET_COOKIE);
@@ -403,6 +775,59 @@ public class HttpTargetContext extends AbstractAttachable {
         }
     }
 
+    private void handleAcceptEncoding(HttpConnectionPool.ConnectionHandle connection, ClientResponse response) {
+        //a server can list the codings it accepts for requests in the Accept-Encoding header of its responses, see RFC 7694
+        //a load balancer may send the connection to a server with a different version, so the last response decides
+        String acceptEncoding = response.getResponseHeaders().getFirst(Headers.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            connection.setRequestEncodings(Collections.emptySet());
+            return;
+        }
+        AcceptEncoding last = lastAcceptEncoding;
+        if (last == null || !last.getHeader().equals(acceptEncoding)) {
+            last = lastAcceptEncoding = AcceptEncoding.parse(acceptEncoding);
+        }
+        connection.setRequestEncodings(last.getCodings());
+    }
+
+    /**
+     * Falls back to gzip if the request body is to be sent in a preset dictionary coding that the server on the other
+     * end of the connection has not said it accepts. This happens before the body is written, so the marshaller
+     * has to pick the coding from the {@code Content-Encoding} header of the request.
+     */
+    private static void negotiateRequestEncoding(HttpConnectionPool.ConnectionHandle connection, ClientRequest request) {
+        String encoding = request.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING);
+        if (encoding != null && PresetDictionaryCoding.forName(encoding) != null && !connection.getRequestEncodings().contains(encoding.toLowerCase(Locale.ENGLISH))) {
+            request.getRequestHeaders().put(Headers.CONTENT_ENCODING, Headers.GZIP.toString());
+        }
+    }
+
+    private InputStream createResponseStream(ClientExchange exchange) {
+        int readAheadBuffers = connectionPool.getReadAheadBuffers();
+        if (readAheadBuffers > 0) {
+            return new ReadAheadClientInputStream(exchange.getConnection().getBufferPool(), exchange.getResponseChannel(), readAheadBuffers);
+        }
+        return new WildflyClientInputStream(exchange.getConnection().getBufferPool(), exchange.getResponseChannel());
+    }
+
+    private static InputStream decode(InputStream in, ClientResponse response) throws IOException {
+        String encoding = response.getResponseHeaders().getFirst(Headers.CONTENT_ENCODING);
+        if (encoding == null) {
+            return in;
+        }
+        String lowerEncoding = encoding.toLowerCase(Locale.ENGLISH);
+        if (Headers.GZIP.toString().equals(lowerEncoding)) {
+            return GzipStreams.decompress(in);
+        } else if (lowerEncoding.equals(Headers.IDENTITY.toString())) {
+            return in;
+        }
+        PresetDictionaryCoding coding = PresetDictionaryCoding.forName(lowerEncoding);
+        if (coding == null) {
+            throw HttpClientMessages.MESSAGES.invalidContentEncoding(encoding);
+        }
+        return coding.decompress(in);
+    }
+
     /**
      * Exceptions don't use an object/class table, as they are common across protocols
      *
@@ -437,6 +862,30 @@ public class HttpTargetContext extends AbstractAttachable {
         return connectionPool;
     }
 
+    /**
+     * Wraps a request body so that it is gzipped if it is larger than the pool's compression threshold and looks
+     * compressible, the {@code Content-Encoding} header of the request is set to match. This must only be used from
+     * a {@link HttpMarshaller} when {@link HttpConnectionPool#getCompressionThreshold()} is greater than zero.
+     */
+    public OutputStream compressAdaptively(ClientRequest request, OutputStream output, int level) {
+        //a retried request may have been compressed the last time
+        request.getRequestHeaders().remove(Headers.CONTENT_ENCODING);
+        HttpClientMetrics metrics = connectionPool.getMetrics();
+        return new AdaptiveCompressionOutputStream(output, connectionPool.getCompressionThreshold(), level,
+                () -> request.getRequestHeaders().put(Headers.CONTENT_ENCODING, Headers.GZIP.toString()),
+                new AdaptiveCompressionOutputStream.Listener() {
+                    @Override
+                    public void compressed(long size, long compressedSize, long cpuTime) {
+                        metrics.requestCompressed(uri, size, compressedSize, cpuTime);
+                    }
+
+                    @Override
+                    public void notCompressed(long size) {
+                        metrics.requestNotCompressed(uri, size);
+                    }
+                });
+    }
+
     public String getSessionId() {
         return sessionId;
     }
@@ -483,6 +932,9 @@ public class HttpTargetContext extends AbstractAttachable {
         });
     }
 
+    /**
+     * The content codings listed in an {@code Accept-Encoding} header, without their parameters
+     */
     public interface HttpMarshaller {
         void marshall(OutputStream output) throws Exception;
     }
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics collected by {@link InMemoryHttpClientMetrics} for a single target.
+ */
+public final class HttpTargetMetrics implements HttpTargetMetricsMXBean {
+
+    private final URI target;
+    final LongAdder requestsQueued = new LongAdder();
+    final LongAdder connectionsAcquired = new LongAdder();
+    final LongAdder acquireFailures = new LongAdder();
+    final LongAdder requestsRejected = new LongAdder();
+    final LongAdder connectionsReleased = new LongAdder();
+    final LongAdder connectionsOpened = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder connectionsClosed = new LongAdder();
+    final LongAdder requestFailures = new LongAdder();
+    final LongAdder requestsHedged = new LongAdder();
+    final LongAdder requestsRetried = new LongAdder();
+    final LongAdder sslInstancesCreated = new LongAdder();
+    final LongAdder sslInstancesEvicted = new LongAdder();
+    volatile int concurrencyLimit = -1;
+    final CompressionStatistics requestCompression = new CompressionStatistics();
+    final LatencyHistogram connectTime = new LatencyHistogram();
+    final LatencyHistogram poolWaitTime = new LatencyHistogram();
+    final LatencyHistogram responseTime = new LatencyHistogram();
+
+    HttpTargetMetrics(URI target) {
+        this.target = target;
+    }
+
+    public URI getTargetUri() {
+        return target;
+    }
+
+    @Override
+    public String getTarget() {
+        return target.toString();
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return connectionsAcquired.sum() - connectionsReleased.sum();
+    }
+
+    @Override
+    public long getPendingRequests() {
+        return requestsQueued.sum() - connectionsAcquired.sum() - acquireFailures.sum();
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public long getConnectFailures() {
+        return connectFailures.sum();
+    }
+
+    @Override
+    public long getAcquireFailures() {
+        return acquireFailures.sum();
+    }
+
+    @Override
+    public long getRejectedRequests() {
+        return requestsRejected.sum();
+    }
+
+    @Override
+    public long getResponses() {
+        return responseTime.getCount();
+    }
+
+    @Override
+    public long getRequestFailures() {
+        return requestFailures.sum();
+    }
+
+    @Override
+    public long getRetriedRequests() {
+        return requestsRetried.sum();
+    }
+
+    @Override
+    public long getHedgedRequests() {
+        return requestsHedged.sum();
+    }
+
+    @Override
+    public long getSslInstancesCreated() {
+        return sslInstancesCreated.sum();
+    }
+
+    @Override
+    public long getSslInstancesEvicted() {
+        return sslInstancesEvicted.sum();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    @Override
+    public long getCompressedRequests() {
+        return requestCompression.getCompressed();
+    }
+
+    @Override
+    public long getUncompressedRequests() {
+        return requestCompression.getNotCompressed();
+    }
+
+    @Override
+    public double getRequestCompressionRatio() {
+        return requestCompression.getCompressionRatio();
+    }
+
+    @Override
+    public double getRequestCompressionTimeMillis() {
+        return requestCompression.getCpuTime() / 1000000.0;
+    }
+
+    @Override
+    public double getMeanConnectTimeMillis() {
+        return connectTime.getMeanMillis();
+    }
+
+    @Override
+    public double getMeanPoolWaitTimeMillis() {
+        return poolWaitTime.getMeanMillis();
+    }
+
+    @Override
+    public double getPoolWaitTime99thPercentileMillis() {
+        return poolWaitTime.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getMaxPoolWaitTimeMillis() {
+        return poolWaitTime.getMaxMillis();
+    }
+
+    @Override
+    public double getMeanResponseTimeMillis() {
+        return responseTime.getMeanMillis();
+    }
+
+    @Override
+    public double getResponseTime99thPercentileMillis() {
+        return responseTime.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getMaxResponseTimeMillis() {
+        return responseTime.getMaxMillis();
+    }
+}
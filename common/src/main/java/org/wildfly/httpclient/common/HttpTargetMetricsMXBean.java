@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+/**
+ * The management interface for the metrics of a single target, as registered by {@link JmxHttpClientMetrics}.
+ */
+public interface HttpTargetMetricsMXBean {
+
+    String getTarget();
+
+    long getOpenConnections();
+
+    long getActiveConnections();
+
+    long getPendingRequests();
+
+    long getConnectionsOpened();
+
+    long getConnectFailures();
+
+    long getAcquireFailures();
+
+    /**
+     * @return the number of requests the pool has shed because the pending queue was full or the maximum queue wait
+     * was exceeded
+     */
+    long getRejectedRequests();
+
+    long getResponses();
+
+    long getRequestFailures();
+
+    long getRetriedRequests();
+
+    long getHedgedRequests();
+
+    long getSslInstancesCreated();
+
+    long getSslInstancesEvicted();
+
+    /**
+     * @return the current adaptive concurrency limit, or -1 if the pool does not use one
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * @return the number of request bodies that were compressed because they passed the compression threshold
+     */
+    long getCompressedRequests();
+
+    /**
+     * @return the number of request bodies that were below the compression threshold or did not look compressible
+     */
+    long getUncompressedRequests();
+
+    /**
+     * @return the compressed size divided by the original size of all compressed request bodies
+     */
+    double getRequestCompressionRatio();
+
+    /**
+     * @return the total CPU time spent compressing request bodies
+     */
+    double getRequestCompressionTimeMillis();
+
+    double getMeanConnectTimeMillis();
+
+    double getMeanPoolWaitTimeMillis();
+
+    double getPoolWaitTime99thPercentileMillis();
+
+    double getMaxPoolWaitTimeMillis();
+
+    double getMeanResponseTimeMillis();
+
+    double getResponseTime99thPercentileMillis();
+
+    double getMaxResponseTimeMillis();
+}
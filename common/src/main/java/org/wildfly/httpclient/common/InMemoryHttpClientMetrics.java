@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link HttpClientMetrics} implementation that keeps counters and latency histograms in memory, for each target.
+ */
+public class InMemoryHttpClientMetrics implements HttpClientMetrics {
+
+    private final Map<URI, HttpTargetMetrics> targets = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the metrics for the given target, or {@code null} if no events have been reported for it.
+     */
+    public HttpTargetMetrics getTargetMetrics(URI target) {
+        return targets.get(target);
+    }
+
+    public Collection<HttpTargetMetrics> getTargetMetrics() {
+        return Collections.unmodifiableCollection(targets.values());
+    }
+
+    /**
+     * Called when the first event for a target is reported.
+     */
+    protected void targetAdded(HttpTargetMetrics metrics) {
+    }
+
+    private HttpTargetMetrics target(URI target) {
+        HttpTargetMetrics metrics = targets.get(target);
+        if (metrics == null) {
+            HttpTargetMetrics existing = targets.putIfAbsent(target, metrics = new HttpTargetMetrics(target));
+            if (existing != null) {
+                return existing;
+            }
+            targetAdded(metrics);
+        }
+        return metrics;
+    }
+
+    @Override
+    public void requestQueued(URI target) {
+        target(target).requestsQueued.increment();
+    }
+
+    @Override
+    public void connectionAcquired(URI target, long waitTime) {
+        HttpTargetMetrics metrics = target(target);
+        metrics.connectionsAcquired.increment();
+        metrics.poolWaitTime.record(waitTime);
+    }
+
+    @Override
+    public void acquireFailed(URI target) {
+        target(target).acquireFailures.increment();
+    }
+
+    @Override
+    public void requestRejected(URI target) {
+        target(target).requestsRejected.increment();
+    }
+
+    @Override
+    public void connectionReleased(URI target) {
+        target(target).connectionsReleased.increment();
+    }
+
+    @Override
+    public void connectionOpened(URI target, long connectTime) {
+        HttpTargetMetrics metrics = target(target);
+        metrics.connectionsOpened.increment();
+        metrics.connectTime.record(connectTime);
+    }
+
+    @Override
+    public void connectFailed(URI target) {
+        target(target).connectFailures.increment();
+    }
+
+    @Override
+    public void connectionClosed(URI target) {
+        target(target).connectionsClosed.increment();
+    }
+
+    @Override
+    public void sslInstanceCreated(URI target) {
+        target(target).sslInstancesCreated.increment();
+    }
+
+    @Override
+    public void sslInstanceEvicted(URI target) {
+        target(target).sslInstancesEvicted.increment();
+    }
+
+    @Override
+    public void concurrencyLimitChanged(URI target, int limit) {
+        target(target).concurrencyLimit = limit;
+    }
+
+    @Override
+    public void responseReceived(URI target, long responseTime, int statusCode) {
+        target(target).responseTime.record(responseTime);
+    }
+
+    @Override
+    public void requestRetried(URI target) {
+        target(target).requestsRetried.increment();
+    }
+
+    @Override
+    public void requestHedged(URI target) {
+        target(target).requestsHedged.increment();
+    }
+
+    @Override
+    public void requestFailed(URI target) {
+        target(target).requestFailures.increment();
+    }
+
+    @Override
+    public void requestCompressed(URI target, long size, long compressedSize, long cpuTime) {
+        target(target).requestCompression.compressed(size, compressedSize, cpuTime);
+    }
+
+    @Override
+    public void requestNotCompressed(URI target, long size) {
+        target(target).requestCompression.notCompressed(size);
+    }
+}
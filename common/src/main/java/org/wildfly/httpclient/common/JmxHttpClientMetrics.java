@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link InMemoryHttpClientMetrics} that registers the metrics of each target with the platform MBean server, under
+ * {@code org.wildfly.httpclient:type=HttpTarget,uri=<target>}.
+ */
+public class JmxHttpClientMetrics extends InMemoryHttpClientMetrics implements Closeable {
+
+    private final MBeanServer server;
+    private final Map<ObjectName, HttpTargetMetrics> registered = new ConcurrentHashMap<>();
+
+    public JmxHttpClientMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxHttpClientMetrics(MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    protected void targetAdded(HttpTargetMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName("org.wildfly.httpclient:type=HttpTarget,uri=" + ObjectName.quote(metrics.getTarget()));
+            server.registerMBean(metrics, name);
+            registered.put(name, metrics);
+        } catch (JMException e) {
+            HttpClientMessages.MESSAGES.debugf(e, "Failed to register metrics for %s", metrics.getTarget());
+        }
+    }
+
+    /**
+     * Unregisters all the MBeans registered by this instance.
+     */
+    @Override
+    public void close() {
+        for (ObjectName name : registered.keySet()) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                HttpClientMessages.MESSAGES.debugf(e, "Failed to unregister %s", name);
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+
+/**
+ * A small pool of River marshallers and unmarshallers for a single configuration, so that the class and instance
+ * tables they allocate are reused across requests instead of being rebuilt for every invocation.
+ * <p>
+ * River resets the caches of a marshaller or unmarshaller when {@code finish()} is called, so an instance may only
+ * be released back to the pool after {@code finish()} has returned normally. If anything fails part way through a
+ * stream the instance should simply be dropped. The configuration must not be modified once the pool is created.
+ */
+public final class MarshallerPool {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private final MarshallingConfiguration configuration;
+    private final AtomicReferenceArray<Marshaller> marshallers;
+    private final AtomicReferenceArray<Unmarshaller> unmarshallers;
+
+    public MarshallerPool(MarshallingConfiguration configuration) {
+        this(configuration, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size the maximum number of idle marshallers, and of idle unmarshallers, that are kept
+     */
+    public MarshallerPool(MarshallingConfiguration configuration, int size) {
+        this.configuration = configuration;
+        this.marshallers = new AtomicReferenceArray<>(size);
+        this.unmarshallers = new AtomicReferenceArray<>(size);
+    }
+
+    public MarshallingConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public Marshaller getMarshaller() throws IOException {
+        Marshaller marshaller = take(marshallers);
+        return marshaller != null ? marshaller : HttpTargetContext.MARSHALLER_FACTORY.createMarshaller(configuration);
+    }
+
+    public Unmarshaller getUnmarshaller() throws IOException {
+        Unmarshaller unmarshaller = take(unmarshallers);
+        return unmarshaller != null ? unmarshaller : HttpTargetContext.MARSHALLER_FACTORY.createUnmarshaller(configuration);
+    }
+
+    /**
+     * Returns a marshaller to the pool, this must only be called once {@code finish()} has completed.
+     */
+    public void release(Marshaller marshaller) {
+        put(marshallers, marshaller);
+    }
+
+    /**
+     * Returns an unmarshaller to the pool, this must only be called once {@code finish()} has completed.
+     */
+    public void release(Unmarshaller unmarshaller) {
+        put(unmarshallers, unmarshaller);
+    }
+
+    private static <T> T take(AtomicReferenceArray<T> slots) {
+        for (int i = 0; i < slots.length(); ++i) {
+            if (slots.get(i) != null) {
+                T value = slots.getAndSet(i, null);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static <T> void put(AtomicReferenceArray<T> slots, T value) {
+        for (int i = 0; i < slots.length(); ++i) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, value)) {
+                return;
+            }
+        }
+        //the pool is full, let this one be collected
+    }
+}
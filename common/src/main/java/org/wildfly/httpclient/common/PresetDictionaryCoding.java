@@ -0,0 +1,215 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A content coding that is raw deflate data compressed against a preset dictionary. Protocol payloads repeat the same
+ * class names and field names in every message, which a dictionary lets the compressor refer back to from the very
+ * first byte, so even small messages compress well.
+ * <p>
+ * Both sides have to use exactly the same dictionary, so the dictionary for a coding name must never change, a new
+ * dictionary needs a new name. The raw format is used because the inflaters Undertow uses on the server side do not
+ * handle the dictionary request of the zlib format. Codings are registered by the protocol that defines them, which
+ * lets the client decode responses in them.
+ */
+public final class PresetDictionaryCoding {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final Map<String, PresetDictionaryCoding> CODINGS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final byte[] dictionary;
+
+    private PresetDictionaryCoding(String name, byte[] dictionary) {
+        this.name = name;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Registers a coding. Registering a name again returns the coding that was registered first.
+     *
+     * @param name       the content coding name, this is case insensitive
+     * @param dictionary the dictionary, at most the last 32KB of it are used
+     */
+    public static PresetDictionaryCoding register(String name, byte[] dictionary) {
+        String lowerName = name.toLowerCase(Locale.ENGLISH);
+        return CODINGS.computeIfAbsent(lowerName, n -> new PresetDictionaryCoding(n, dictionary.clone()));
+    }
+
+    /**
+     * @return the coding registered for the given content coding name, or {@code null} if there is none
+     */
+    public static PresetDictionaryCoding forName(String name) {
+        return CODINGS.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a stream that compresses the data written to it. Closing it finishes the compressed data and closes
+     * {@code out}.
+     *
+     * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public OutputStream compress(OutputStream out, int level) {
+        Deflater deflater = GzipStreams.takeDeflater(level);
+        deflater.setDictionary(dictionary);
+        return new DictionaryOutputStream(out, deflater);
+    }
+
+    /**
+     * Creates a stream that reads the compressed data from {@code in}. Closing it closes {@code in}.
+     */
+    public InputStream decompress(InputStream in) {
+        Inflater inflater = GzipStreams.takeInflater();
+        inflater.setDictionary(dictionary);
+        return new DictionaryInputStream(in, inflater);
+    }
+
+    /**
+     * Creates a deflater for this coding, for use by pools that are not managed by this class. Once it has been
+     * reset it has to be passed to {@link #prepare(Deflater)} before it is used again.
+     */
+    public Deflater createDeflater(int level) {
+        return prepare(new Deflater(level, true));
+    }
+
+    /**
+     * Creates an inflater for this coding, for use by pools that are not managed by this class. Once it has been
+     * reset it has to be passed to {@link #prepare(Inflater)} before it is used again.
+     */
+    public Inflater createInflater() {
+        return prepare(new Inflater(true));
+    }
+
+    /**
+     * Sets the dictionary of a raw deflater that has been reset.
+     */
+    public Deflater prepare(Deflater deflater) {
+        deflater.setDictionary(dictionary);
+        return deflater;
+    }
+
+    /**
+     * Sets the dictionary of a raw inflater that has been reset.
+     */
+    public Inflater prepare(Inflater inflater) {
+        inflater.setDictionary(dictionary);
+        return inflater;
+    }
+
+    private static final class DictionaryOutputStream extends DeflaterOutputStream {
+
+        private final byte[] single = new byte[1];
+        private boolean closed;
+
+        DictionaryOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            //the deflater may already belong to another stream
+            if (closed) {
+                throw HttpClientMessages.MESSAGES.streamIsClosed();
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+            } finally {
+                try {
+                    out.close();
+                } finally {
+                    GzipStreams.release(def);
+                }
+            }
+        }
+    }
+
+    private static final class DictionaryInputStream extends InflaterInputStream {
+
+        private boolean eos;
+        private boolean released;
+
+        DictionaryInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eos) {
+                return -1;
+            }
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                eos = true;
+                releaseInflater();
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eos ? 0 : super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                releaseInflater();
+            }
+        }
+
+        private void releaseInflater() {
+            if (!released) {
+                released = true;
+                GzipStreams.release(inf);
+            }
+        }
+    }
+}
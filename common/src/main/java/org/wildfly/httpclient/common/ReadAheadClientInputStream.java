@@ -0,0 +1,256 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+
+/**
+ * A response stream that reads ahead of the caller, see {@link HttpClientOptions#READ_AHEAD_BUFFERS}.
+ * <p>
+ * The IO thread reads the response into pooled buffers and publishes them in a ring, until the ring is full or no
+ * more data is available. The caller consumes the ring in order. The ring has a single producer and a single
+ * consumer, so a slot is handed over by setting it, and handed back by clearing it, without any lock. The caller is
+ * only woken when it is actually waiting for data, and reads are only resumed when the IO thread had to stop because
+ * the ring was full, so neither side pays for a wake up per buffer while the other keeps up.
+ * <p>
+ * Like {@link WildflyClientInputStream} this must not be used from the IO thread, and closing it drains the rest of
+ * the response so the connection can be reused.
+ */
+class ReadAheadClientInputStream extends InputStream {
+
+    private final ByteBufferPool bufferPool;
+    private final StreamSourceChannel channel;
+    private final AtomicReferenceArray<PooledByteBuffer> ring;
+    /**
+     * Set by the IO thread when it stopped reading because the ring was full, cleared by whoever resumes reads
+     */
+    private final AtomicBoolean suspended = new AtomicBoolean();
+
+    /**
+     * The next slot to publish to, only used by the IO thread
+     */
+    private int tail;
+    /**
+     * The next slot to consume, and the buffer being consumed, only used by the reading thread
+     */
+    private int head;
+    private PooledByteBuffer current;
+    private boolean closed;
+
+    private volatile Thread waiter;
+    private volatile IOException ioException;
+    private volatile boolean minusOneRead;
+
+    private final ChannelListener<StreamSourceChannel> channelListener = new ChannelListener<StreamSourceChannel>() {
+        @Override
+        public void handleEvent(StreamSourceChannel streamSourceChannel) {
+            for (; ; ) {
+                final int index = tail;
+                if (ring.get(index) != null) {
+                    suspended.set(true);
+                    streamSourceChannel.suspendReads();
+                    //the reader may have taken the buffer before it could see the flag
+                    if (ring.get(index) == null && suspended.compareAndSet(true, false)) {
+                        streamSourceChannel.resumeReads();
+                        continue;
+                    }
+                    return;
+                }
+                final PooledByteBuffer pooled = bufferPool.allocate();
+                final ByteBuffer buffer = pooled.getBuffer();
+                int res;
+                try {
+                    do {
+                        res = streamSourceChannel.read(buffer);
+                    } while (res > 0 && buffer.hasRemaining());
+                } catch (IOException e) {
+                    pooled.close();
+                    ioException = e;
+                    streamSourceChannel.suspendReads();
+                    signal();
+                    return;
+                }
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    ring.set(index, pooled);
+                    tail = (index + 1) % ring.length();
+                    signal();
+                } else {
+                    pooled.close();
+                }
+                if (res == -1) {
+                    minusOneRead = true;
+                    streamSourceChannel.suspendReads();
+                    signal();
+                    return;
+                } else if (res == 0) {
+                    //reads stay resumed, we are called again when there is more data
+                    return;
+                }
+            }
+        }
+    };
+
+    ReadAheadClientInputStream(ByteBufferPool bufferPool, StreamSourceChannel channel, int buffers) {
+        this.bufferPool = bufferPool;
+        this.channel = channel;
+        this.ring = new AtomicReferenceArray<>(buffers);
+        channel.getReadSetter().set(channelListener);
+        channel.wakeupReads(); //should just be resume, see UNDERTOW-1192
+    }
+
+    @Override
+    public int read() throws IOException {
+        final PooledByteBuffer pooled = current();
+        if (pooled == null) {
+            return -1;
+        }
+        final int res = pooled.getBuffer().get() & 0xFF;
+        consumed(pooled);
+        return res;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len < 1) {
+            return 0;
+        }
+        final PooledByteBuffer pooled = current();
+        if (pooled == null) {
+            return -1;
+        }
+        final ByteBuffer buffer = pooled.getBuffer();
+        final int toRead = Math.min(buffer.remaining(), len);
+        buffer.get(b, off, toRead);
+        consumed(pooled);
+        return toRead;
+    }
+
+    @Override
+    public int available() throws IOException {
+        final PooledByteBuffer pooled = current;
+        return pooled == null ? 0 : pooled.getBuffer().remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IoUtils.safeClose(current);
+        current = null;
+        try {
+            PooledByteBuffer pooled;
+            while ((pooled = take()) != null) {
+                pooled.close();
+            }
+        } catch (InterruptedIOException e) {
+            IoUtils.safeClose(channel);
+            throw e;
+        } catch (IOException ignore) {
+            //the response could not be read to the end, so there is nothing left to drain
+        }
+    }
+
+    private PooledByteBuffer current() throws IOException {
+        if (Thread.currentThread() == channel.getIoThread()) {
+            throw HttpClientMessages.MESSAGES.blockingIoFromIOThread();
+        }
+        PooledByteBuffer pooled = current;
+        if (pooled == null) {
+            if (closed && !minusOneRead) {
+                throw HttpClientMessages.MESSAGES.streamIsClosed();
+            }
+            pooled = current = take();
+        }
+        return pooled;
+    }
+
+    private void consumed(PooledByteBuffer pooled) {
+        if (!pooled.getBuffer().hasRemaining()) {
+            pooled.close();
+            current = null;
+        }
+    }
+
+    /**
+     * Takes the next buffer from the ring, waiting for the IO thread to publish one if it is empty.
+     *
+     * @return the buffer, or {@code null} if the whole response has been read
+     */
+    private PooledByteBuffer take() throws IOException {
+        for (; ; ) {
+            final PooledByteBuffer pooled = ring.get(head);
+            if (pooled != null) {
+                ring.set(head, null);
+                head = (head + 1) % ring.length();
+                if (suspended.get() && suspended.compareAndSet(true, false)) {
+                    channel.wakeupReads();
+                }
+                return pooled;
+            }
+            final IOException e = ioException;
+            if (e != null) {
+                throw new IOException(e);
+            }
+            if (minusOneRead) {
+                //the last buffer is published before the end of the response is
+                if (ring.get(head) == null) {
+                    return null;
+                }
+                continue;
+            }
+            waiter = Thread.currentThread();
+            if (ring.get(head) == null && ioException == null && !minusOneRead) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private void signal() {
+        final Thread waiter = this.waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The deadline of a single request, covering the wait for a connection, connecting, sending the request and
+ * receiving the response headers. Exactly one of {@link #complete()} and the timeout task wins, so the caller
+ * is notified once whichever happens first.
+ */
+final class RequestDeadline {
+
+    private static final int RUNNING = 0;
+    private static final int COMPLETE = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final long timeout;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private volatile TimerWheel.Timeout timer;
+    private final AtomicReference<HttpConnectionPool.ConnectionHandle> connection = new AtomicReference<>();
+
+    RequestDeadline(long timeout) {
+        this.timeout = timeout;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    void start(TimerWheel timerWheel, Runnable onTimeout) {
+        timer = new TimerWheel.Timeout(() -> {
+            if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+                try {
+                    onTimeout.run();
+                } finally {
+                    HttpConnectionPool.ConnectionHandle connection = this.connection.get();
+                    if (connection != null) {
+                        connection.abort();
+                    }
+                }
+            }
+        });
+        timerWheel.schedule(timer, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the connection the request is sent on.
+     *
+     * @return {@code false} if the request has already timed out, in which case the connection should be released
+     */
+    boolean attach(HttpConnectionPool.ConnectionHandle connection) {
+        this.connection.set(connection);
+        return state.get() == RUNNING;
+    }
+
+    /**
+     * Forgets the connection the request was sent on, this must be called before the connection is released, as it
+     * may then be given to another request that a timeout must not abort.
+     */
+    void detach(HttpConnectionPool.ConnectionHandle connection) {
+        this.connection.compareAndSet(connection, null);
+    }
+
+    /**
+     * Marks the request as complete.
+     *
+     * @return {@code true} if the request completed before it timed out
+     */
+    boolean complete() {
+        if (!state.compareAndSet(RUNNING, COMPLETE)) {
+            return false;
+        }
+        TimerWheel.Timeout timer = this.timer;
+        if (timer != null) {
+            timer.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the request has neither completed nor timed out yet
+     */
+    boolean isRunning() {
+        return state.get() == RUNNING;
+    }
+
+    long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the time left in milliseconds, never less than zero
+     */
+    long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Honours the deadline a client sends with a request. The deadline is recorded as soon as the request arrives, and
+ * once the request has been dispatched to a worker thread it is only passed on if the client is still waiting for the
+ * response, otherwise it is ended with a {@code 503}.
+ */
+public class RequestDeadlineHandler implements HttpHandler {
+
+    private final HttpHandler next;
+
+    public RequestDeadlineHandler(HttpHandler next) {
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        HttpServerHelper.recordRequestDeadline(exchange);
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+        if (HttpServerHelper.endIfRequestExpired(exchange)) {
+            return;
+        }
+        next.handleRequest(exchange);
+    }
+}
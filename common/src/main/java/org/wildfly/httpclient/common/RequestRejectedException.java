@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the connection pool sheds a request instead of queueing it, either because too many requests are
+ * already waiting for a connection, or because the request has waited longer than the maximum queue wait. The request
+ * was never sent, so it is always safe to retry.
+ *
+ * @see HttpClientOptions#MAX_PENDING_REQUESTS
+ * @see HttpClientOptions#MAX_QUEUE_WAIT
+ */
+public class RequestRejectedException extends IOException {
+
+    private static final long serialVersionUID = -2815870573620931563L;
+
+    public RequestRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of automatic retries to a fraction of the requests sent, so that retries cannot multiply the load
+ * on a target that is already failing. Every request adds the ratio to the balance and every retry takes one from it.
+ * The balance starts with a small reserve, so that the stale connections found after an idle period can be retried
+ * before there has been any traffic to pay for them.
+ * <p>
+ * A single budget is shared by all the targets of a {@link WildflyHttpContext}.
+ */
+public final class RetryBudget {
+
+    public static final double DEFAULT_RATIO = 0.1;
+
+    /**
+     * The balance is kept in thousandths of a retry, so it can be updated atomically
+     */
+    private static final long RETRY_COST = 1000;
+    private static final long RESERVE = 10 * RETRY_COST;
+    private static final long MAX_BALANCE = 100 * RETRY_COST;
+
+    private final long deposit;
+    private final AtomicLong balance = new AtomicLong(RESERVE);
+
+    /**
+     * @param ratio the number of retries allowed per request sent, 0 disables automatic retries
+     */
+    public RetryBudget(double ratio) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.deposit = (long) (ratio * RETRY_COST);
+        if (deposit == 0) {
+            balance.set(0);
+        }
+    }
+
+    void requestSent() {
+        if (deposit == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current >= MAX_BALANCE) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(MAX_BALANCE, current + deposit)));
+    }
+
+    /**
+     * @return {@code true} if there is enough budget left for a retry, which has then been taken from the balance
+     */
+    boolean tryRetry() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < RETRY_COST) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - RETRY_COST));
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.net.ssl.SSLContext;
+
+import org.xnio.OptionMap;
+import org.xnio.Xnio;
+import io.undertow.protocols.ssl.UndertowXnioSsl;
+
+/**
+ * A bounded cache of the {@link UndertowXnioSsl} instance for each {@link SSLContext}. There is only ever one
+ * instance per context, and the least recently used instance is dropped once the cache is full.
+ * <p>
+ * TLS sessions are cached by the {@link SSLContext}, so keeping the same context in use for a target is what allows
+ * sessions to be resumed when reconnecting.
+ */
+final class SslInstanceCache {
+
+    private final Xnio xnio;
+    private final int maxSize;
+    private final HttpClientMetrics metrics;
+    private final URI target;
+    private final Map<SSLContext, UndertowXnioSsl> instances;
+
+    SslInstanceCache(Xnio xnio, int maxSize, HttpClientMetrics metrics, URI target) {
+        this.xnio = xnio;
+        this.maxSize = maxSize;
+        this.metrics = metrics;
+        this.target = target;
+        this.instances = new LinkedHashMap<SSLContext, UndertowXnioSsl>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SSLContext, UndertowXnioSsl> eldest) {
+                if (size() > SslInstanceCache.this.maxSize) {
+                    SslInstanceCache.this.metrics.sslInstanceEvicted(SslInstanceCache.this.target);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized UndertowXnioSsl get(SSLContext sslContext) {
+        UndertowXnioSsl ssl = instances.get(sslContext);
+        if (ssl == null) {
+            metrics.sslInstanceCreated(target);
+            instances.put(sslContext, ssl = new UndertowXnioSsl(xnio, OptionMap.EMPTY, sslContext));
+        }
+        return ssl;
+    }
+
+    synchronized int size() {
+        return instances.size();
+    }
+
+    synchronized void clear() {
+        instances.clear();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.xnio.XnioExecutor;
+import org.xnio.XnioIoThread;
+
+/**
+ * A hashed timer wheel that is ticked from a single IO thread. It is used for timeouts that are scheduled and
+ * cancelled far more often than they fire, such as connection idle timeouts and request deadlines, where going
+ * through the IO thread's own timer queue each time would create a lot of churn.
+ * <p>
+ * A {@link Timeout} can be rescheduled any number of times without allocating. Timeouts fire on the IO thread
+ * some time in the {@link #TICK_MILLIS} after they are due. The wheel does not tick at a fixed rate, instead the IO
+ * thread is woken when the earliest scheduled timeout is due, so a thread that only has long timeouts scheduled, such
+ * as the idle timeouts of its pooled connections, is hardly ever woken.
+ */
+final class TimerWheel {
+
+    static final long TICK_MILLIS = 50;
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+
+    private static final Map<XnioIoThread, TimerWheel> WHEELS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final WeakReference<XnioIoThread> thread;
+    private final Timeout[] buckets = new Timeout[WHEEL_SIZE];
+    private final long start = System.nanoTime();
+    private final Runnable tickTask = this::tick;
+    /**
+     * The last tick that has been processed
+     */
+    private long processedTick;
+    private int count;
+    /**
+     * The tick the tick task has been scheduled for, or {@link Long#MAX_VALUE} if it is not scheduled
+     */
+    private long nextTick = Long.MAX_VALUE;
+    private XnioExecutor.Key tickKey;
+
+    private TimerWheel(XnioIoThread thread) {
+        this.thread = new WeakReference<>(thread);
+    }
+
+    /**
+     * @return the wheel that is ticked from the given IO thread
+     */
+    static TimerWheel forThread(XnioIoThread thread) {
+        return WHEELS.computeIfAbsent(thread, TimerWheel::new);
+    }
+
+    /**
+     * Schedules the timeout to fire after the given delay. If it is already scheduled it is moved.
+     */
+    void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        long tick = (System.nanoTime() - start + unit.toNanos(delay) + TICK_NANOS - 1) / TICK_NANOS;
+        for (;;) {
+            timeout.cancel();
+            synchronized (this) {
+                if (timeout.wheel != null) {
+                    //it was scheduled again concurrently, the last one wins
+                    continue;
+                }
+                //anything that is already due goes in the next bucket to be processed
+                timeout.tick = Math.max(tick, processedTick + 1);
+                timeout.wheel = this;
+                int index = (int) (timeout.tick & MASK);
+                Timeout head = buckets[index];
+                timeout.prev = null;
+                timeout.next = head;
+                if (head != null) {
+                    head.prev = timeout;
+                }
+                buckets[index] = timeout;
+                count++;
+                if (timeout.tick < nextTick) {
+                    scheduleTick(timeout.tick);
+                }
+                break;
+            }
+        }
+    }
+
+    private void remove(Timeout timeout) {
+        synchronized (this) {
+            if (timeout.wheel != this) {
+                return;
+            }
+            if (timeout.prev == null) {
+                buckets[(int) (timeout.tick & MASK)] = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = timeout.next = null;
+            timeout.wheel = null;
+            count--;
+        }
+    }
+
+    /**
+     * Schedules the tick task to run at the given tick, replacing any earlier schedule. This must be called with the
+     * lock held.
+     */
+    private void scheduleTick(long tick) {
+        if (tickKey != null) {
+            tickKey.remove();
+            tickKey = null;
+        }
+        nextTick = tick;
+        XnioIoThread thread = this.thread.get();
+        if (thread != null) {
+            long delay = Math.max(0, start + tick * TICK_NANOS - System.nanoTime());
+            tickKey = thread.executeAfter(tickTask, TimeUnit.NANOSECONDS.toMillis(delay + 999_999), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the tick of the earliest scheduled timeout. This must be called with the lock held, after all timeouts
+     * up to {@link #processedTick} have been processed.
+     */
+    private long earliestTick() {
+        long earliest = Long.MAX_VALUE;
+        //a timeout due within the next rotation is in the bucket of its own tick, so the first one found is the earliest
+        for (long tick = processedTick + 1; tick <= processedTick + WHEEL_SIZE; ++tick) {
+            for (Timeout timeout = buckets[(int) (tick & MASK)]; timeout != null; timeout = timeout.next) {
+                if (timeout.tick == tick) {
+                    return tick;
+                }
+                earliest = Math.min(earliest, timeout.tick);
+            }
+        }
+        return earliest;
+    }
+
+    private void tick() {
+        Timeout expired = null;
+        synchronized (this) {
+            tickKey = null;
+            nextTick = Long.MAX_VALUE;
+            long currentTick = (System.nanoTime() - start) / TICK_NANOS;
+            long ticks = Math.min(currentTick - processedTick, WHEEL_SIZE);
+            for (long i = 1; i <= ticks; ++i) {
+                int index = (int) ((processedTick + i) & MASK);
+                Timeout timeout = buckets[index];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.tick <= currentTick) {
+                        remove(timeout);
+                        timeout.nextExpired = expired;
+                        expired = timeout;
+                    }
+                    timeout = next;
+                }
+            }
+            if (currentTick > processedTick) {
+                processedTick = currentTick;
+            }
+            if (count > 0) {
+                scheduleTick(earliestTick());
+            }
+        }
+        while (expired != null) {
+            Timeout next = expired.nextExpired;
+            expired.nextExpired = null;
+            try {
+                expired.task.run();
+            } catch (Throwable t) {
+                HttpClientMessages.MESSAGES.timerTaskFailed(t);
+            }
+            expired = next;
+        }
+    }
+
+    /**
+     * A task that can be scheduled on a wheel. Once it has fired or been cancelled it can be scheduled again.
+     */
+    static final class Timeout {
+
+        private final Runnable task;
+        private volatile TimerWheel wheel;
+        private Timeout prev;
+        private Timeout next;
+        private Timeout nextExpired;
+        private long tick;
+
+        Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Cancels the timeout if it has not fired yet. A timeout that is just about to fire may still run.
+         */
+        void cancel() {
+            TimerWheel wheel = this.wheel;
+            if (wheel != null) {
+                wheel.remove(this);
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 
 import org.jboss.marshalling.ByteOutput;
 import org.wildfly.common.Assert;
@@ -38,16 +39,35 @@ import io.undertow.connector.PooledByteBuffer;
 /**
  * Buffering output stream that wraps a channel.
  * <p>
- * This stream delays channel creation, so if a response will fit in the buffer it is not necessary to
- * set the content length header.
+ * Data is written straight into pooled buffers, as this is a {@link ByteOutput} a marshaller writes into them without
+ * going through another stream. The buffer being filled belongs to the writing thread and needs no locking. Full
+ * buffers are queued for the IO thread, which writes everything that is queued with a single gathering write, so
+ * the writing thread can carry on marshalling while the previous buffers are sent. It only blocks once
+ * {@link #MAX_QUEUED} buffers are waiting.
  *
  * @author Stuart Douglas
  */
 class WildflyClientOutputStream extends OutputStream implements ByteOutput {
 
+    /**
+     * The number of full buffers that can wait for the IO thread before the writing thread blocks
+     */
+    private static final int MAX_QUEUED = 3;
+
     private final Object lock = new Object();
 
+    /**
+     * The buffer that is being filled, only used by the writing thread
+     */
     private PooledByteBuffer pooledBuffer;
+    /**
+     * Buffers in read mode that are waiting to be written, guarded by the lock
+     */
+    private final ArrayDeque<PooledByteBuffer> queue = new ArrayDeque<>(MAX_QUEUED);
+    /**
+     * Only used by the IO thread
+     */
+    private final ByteBuffer[] writeBuffers = new ByteBuffer[MAX_QUEUED];
     private IOException ioException;
     private final StreamSinkChannel channel;
     private final ByteBufferPool bufferPool;
@@ -55,60 +75,52 @@ class WildflyClientOutputStream extends OutputStream implements ByteOutput {
 
     private static final int FLAG_CLOSED = 1;
     private static final int FLAG_WRITING = 1 << 1;
-    private static final int FLAG_DONE = 1 << 2;
 
     private final ChannelListener<StreamSinkChannel> channelListener = new ChannelListener<StreamSinkChannel>() {
         @Override
         public void handleEvent(StreamSinkChannel streamSinkChannel) {
             synchronized (lock) {
                 if(anyAreClear(state, FLAG_WRITING)) {
+                    streamSinkChannel.suspendWrites();
                     return;
                 }
                 try {
+                    //once the stream is closed everything that is left is in the queue
                     boolean closed = anyAreSet(state, FLAG_CLOSED);
-                    if (pooledBuffer != null) {
-                        pooledBuffer.getBuffer().flip();
-                    }
-                    if (closed && (pooledBuffer == null || !pooledBuffer.getBuffer().hasRemaining())) {
-                        if (pooledBuffer != null) {
-                            pooledBuffer.close();
-                            pooledBuffer = null;
+                    while (!queue.isEmpty()) {
+                        int count = 0;
+                        for (PooledByteBuffer buffer : queue) {
+                            writeBuffers[count++] = buffer.getBuffer();
                         }
-                        //if we are just flushing the data
-                        if (streamSinkChannel.flush()) {
-                            state |= FLAG_DONE;
-                            state &= ~FLAG_WRITING;
-                            lock.notifyAll();
-                            streamSinkChannel.shutdownWrites();
+                        long res;
+                        if (closed) {
+                            res = streamSinkChannel.writeFinal(writeBuffers, 0, count);
+                        } else {
+                            res = streamSinkChannel.write(writeBuffers, 0, count);
+                        }
+                        while (!queue.isEmpty() && !queue.peekFirst().getBuffer().hasRemaining()) {
+                            queue.pollFirst().close();
                         }
-                    } else {
-                        while (pooledBuffer.getBuffer().hasRemaining()) {
-                            int res;
-                            if (closed) {
-                                res = streamSinkChannel.writeFinal(pooledBuffer.getBuffer());
-                            } else {
-                                res = streamSinkChannel.write(pooledBuffer.getBuffer());
-                            }
-                            if (res == 0) {
-                                pooledBuffer.getBuffer().compact(); // WEJBHTTP-50 compact the buffer to be able to flip it when listener is invoked again
-                                return;
-                            }
+                        if (res == 0) {
+                            //writes stay resumed, so we are called again once the channel is writable
+                            return;
                         }
                         lock.notifyAll();
-                        streamSinkChannel.suspendWrites();
-                        state &= ~FLAG_WRITING;
-                        pooledBuffer.close();
-                        pooledBuffer = null;
-                        if (closed) {
-                            if (streamSinkChannel.flush()) {
-                                state |= FLAG_DONE;
-                            }
+                    }
+                    if (closed) {
+                        //shut down first, so anything that ends the body (such as the last chunk) is flushed too
+                        streamSinkChannel.shutdownWrites();
+                        if (!streamSinkChannel.flush()) {
+                            return;
                         }
                     }
+                    state &= ~FLAG_WRITING;
+                    lock.notifyAll();
+                    streamSinkChannel.suspendWrites();
                 } catch (IOException e) {
-                    if (pooledBuffer != null) {
-                        pooledBuffer.close();
-                        pooledBuffer = null;
+                    PooledByteBuffer buffer;
+                    while ((buffer = queue.poll()) != null) {
+                        buffer.close();
                     }
                     state &= ~FLAG_WRITING;
                     ioException = e;
@@ -127,7 +139,12 @@ class WildflyClientOutputStream extends OutputStream implements ByteOutput {
      * {@inheritDoc}
      */
     public void write(final int b) throws IOException {
-        write(new byte[]{(byte) b}, 0, 1);
+        checkWritable();
+        ByteBuffer buffer = buffer();
+        buffer.put((byte) b);
+        if (!buffer.hasRemaining()) {
+            submit();
+        }
     }
 
     /**
@@ -144,52 +161,101 @@ class WildflyClientOutputStream extends OutputStream implements ByteOutput {
         if (len < 1) {
             return;
         }
+        checkWritable();
+        int currentOff = off;
+        int currentLen = len;
+        while (currentLen > 0) {
+            ByteBuffer buffer = buffer();
+            int put = Math.min(currentLen, buffer.remaining());
+            buffer.put(b, currentOff, put);
+            currentOff += put;
+            currentLen -= put;
+            if (!buffer.hasRemaining()) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of a pooled buffer that is still in write mode, so the data runs up to its position. This
+     * stream takes ownership of the buffer, which is sent as it is rather than being copied.
+     */
+    void write(final PooledByteBuffer data) throws IOException {
+        boolean adopted = false;
+        try {
+            checkWritable();
+            if (pooledBuffer != null) {
+                if (pooledBuffer.getBuffer().position() == 0) {
+                    pooledBuffer.close();
+                    pooledBuffer = null;
+                } else {
+                    submit();
+                }
+            }
+            pooledBuffer = data;
+            adopted = true;
+            if (!data.getBuffer().hasRemaining()) {
+                submit();
+            }
+        } finally {
+            if (!adopted) {
+                data.close();
+            }
+        }
+    }
+
+    private void checkWritable() throws IOException {
         if (Thread.currentThread() == channel.getIoThread()) {
             throw HttpClientMessages.MESSAGES.blockingIoFromIOThread();
         }
         if (anyAreSet(state, FLAG_CLOSED)) {
             throw HttpClientMessages.MESSAGES.streamIsClosed();
         }
-        int currentOff = off;
-        int currentLen = len;
+    }
+
+    /**
+     * Hands the current buffer over to the IO thread.
+     */
+    private void submit() throws IOException {
+        PooledByteBuffer buffer = pooledBuffer;
+        pooledBuffer = null;
+        buffer.getBuffer().flip();
         synchronized (lock) {
-            for (; ; ) {
-                while (anyAreSet(state, FLAG_WRITING) && ioException == null) {
-                    try {
-                        lock.wait();
-                    } catch (InterruptedException e) {
-                        throw new InterruptedIOException(e.getMessage());
-                    }
-                }
-                if (ioException != null) {
-                    throw new IOException(ioException);
-                }
+            enqueue(buffer);
+        }
+    }
 
-                ByteBuffer buffer = buffer();
-                if (buffer.remaining() < currentLen) {
-                    int put = buffer.remaining();
-                    buffer.put(b, currentOff, buffer.remaining());
-                    currentOff += put;
-                    currentLen -= put;
-                    runWriteTask();
-                } else {
-                    buffer.put(b, currentOff, currentLen);
-                    if (buffer.remaining() == 0) {
-                        runWriteTask();
-                    }
-                    return;
+    private void enqueue(PooledByteBuffer buffer) throws IOException {
+        Assert.assertHoldsLock(lock);
+        boolean queued = false;
+        try {
+            while (queue.size() >= MAX_QUEUED && ioException == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(e.getMessage());
                 }
             }
-
-
+            if (ioException != null) {
+                throw new IOException(ioException);
+            }
+            queue.add(buffer);
+            queued = true;
+            resumeWrites();
+        } finally {
+            if (!queued) {
+                buffer.close();
+            }
         }
     }
 
-    private void runWriteTask() {
+    private void resumeWrites() {
         Assert.assertHoldsLock(lock);
-        state |= FLAG_WRITING;
-        channel.getWriteSetter().set(channelListener);
-        channel.wakeupWrites();
+        if (allAreClear(state, FLAG_WRITING)) {
+            state |= FLAG_WRITING;
+            channel.getWriteSetter().set(channelListener);
+            channel.wakeupWrites();
+        }
     }
 
     /**
@@ -202,26 +268,30 @@ class WildflyClientOutputStream extends OutputStream implements ByteOutput {
     }
 
     /**
-     * {@inheritDoc}
+     * Hands the rest of the body over to the IO thread, which ends the request once it has been written.
      */
     public void close() throws IOException {
+        PooledByteBuffer buffer = pooledBuffer;
+        pooledBuffer = null;
         synchronized (lock) {
-            if (ioException != null) {
-                throw new IOException(ioException);
-            }
-            if (anyAreSet(state, FLAG_CLOSED)) return;
-            state |= FLAG_CLOSED;
-            runWriteTask();
-            while (allAreClear(state, FLAG_DONE) && ioException != null) {
-                try {
-                    lock.wait();
-                } catch (InterruptedException e) {
-                    throw new InterruptedIOException(e.getMessage());
+            try {
+                if (ioException != null) {
+                    throw new IOException(ioException);
+                }
+                if (anyAreSet(state, FLAG_CLOSED)) return;
+                if (buffer != null && buffer.getBuffer().position() > 0) {
+                    buffer.getBuffer().flip();
+                    PooledByteBuffer last = buffer;
+                    buffer = null;
+                    enqueue(last);
+                }
+            } finally {
+                if (buffer != null) {
+                    buffer.close();
                 }
             }
-            if (ioException != null) {
-                throw new IOException(ioException);
-            }
+            state |= FLAG_CLOSED;
+            resumeWrites();
         }
     }
 
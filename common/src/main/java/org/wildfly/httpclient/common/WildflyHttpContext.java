@@ -30,6 +30,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.wildfly.common.context.ContextManager;
 import org.wildfly.common.context.Contextual;
+import org.xnio.IoUtils;
 import org.xnio.OptionMap;
 import org.xnio.XnioWorker;
 import io.undertow.UndertowOptions;
@@ -67,9 +68,9 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
     private final boolean eagerlyAcquireAffinity;
     private final XnioWorker worker;
     private final ByteBufferPool pool;
-    private final boolean enableHttp2;
+    private final OptionMap options;
 
-    WildflyHttpContext(ConfigSection[] targets, int maxConnections, int maxStreamsPerConnection, long idleTimeout, boolean eagerlyAcquireAffinity, XnioWorker worker, ByteBufferPool pool, boolean enableHttp2) {
+    WildflyHttpContext(ConfigSection[] targets, int maxConnections, int maxStreamsPerConnection, long idleTimeout, boolean eagerlyAcquireAffinity, XnioWorker worker, ByteBufferPool pool, OptionMap options) {
         this.targets = targets;
         this.maxConnections = maxConnections;
         this.maxStreamsPerConnection = maxStreamsPerConnection;
@@ -77,7 +78,7 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
         this.eagerlyAcquireAffinity = eagerlyAcquireAffinity;
         this.worker = worker;
         this.pool = pool;
-        this.enableHttp2 = enableHttp2;
+        this.options = options;
     }
 
     public static WildflyHttpContext getCurrent() {
@@ -93,6 +94,19 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
         return getConnectionPoolForURI(uri);
     }
 
+    /**
+     * Closes the connection pools of all targets. Requests that are in progress are allowed to finish, new requests
+     * will fail.
+     */
+    public void close() {
+        for (ConfigSection target : targets) {
+            IoUtils.safeClose(target.getHttpTargetContext().getConnectionPool());
+        }
+        for (HttpTargetContext context : uriConnectionPools.values()) {
+            IoUtils.safeClose(context.getConnectionPool());
+        }
+    }
+
     private HttpTargetContext getConnectionPoolForURI(URI uri) {
         HttpTargetContext context = uriConnectionPools.get(uri);
         if (context != null) {
@@ -111,7 +125,7 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             if (context != null) {
                 return context;
             }
-            HttpConnectionPool pool = new HttpConnectionPool(maxConnections, maxStreamsPerConnection, worker, this.pool, OptionMap.create(UndertowOptions.ENABLE_HTTP2, enableHttp2), new HostPool(uri), idleTimeout);
+            HttpConnectionPool pool = new HttpConnectionPool(maxConnections, maxStreamsPerConnection, worker, this.pool, options, new HostPool(uri, options), idleTimeout);
             uriConnectionPools.put(uri, context = new HttpTargetContext(pool, eagerlyAcquireAffinity, uri));
             context.init();
             return context;
@@ -144,6 +158,28 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
         private Boolean eagerlyAcquireSession;
         private final List<HttpConfigBuilder> targets = new ArrayList<>();
         private Boolean enableHttp2;
+        private Boolean enableMultiplexing;
+        private Boolean enableStriping;
+        private Boolean loadBalanceAddresses;
+        private Boolean adaptiveConcurrency;
+        private Boolean hedgeIdempotentRequests;
+        private int minIdleConnections;
+        private long dnsRefreshInterval;
+        private long requestTimeout;
+        private int retryBudgetPercent = -1;
+        private int maxPendingRequests;
+        private long maxQueueWait;
+        private int priorityOverdraft;
+        private int maxBufferedRequestSize = -1;
+        private int compressionLevel = -1;
+        private int compressionThreshold;
+        private int readAheadBuffers;
+        private int circuitBreakerThreshold;
+        private long circuitBreakerBackoff;
+        private long healthCheckInterval;
+        private String healthCheckPath;
+        private HttpClientMetrics metrics;
+        private Boolean prewarmOnInit;
 
         private BufferBuilder bufferConfig;
 
@@ -162,22 +198,138 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             long idleTimout = this.idleTimeout > 0 ? this.idleTimeout : 60000;
             int maxConnections = this.maxConnections > 0 ? this.maxConnections : 10;
             int maxStreamsPerConnection = this.maxStreamsPerConnection > 0 ? this.maxStreamsPerConnection : 10;
+            OptionMap.Builder defaultOptionsBuilder = OptionMap.builder()
+                    .set(UndertowOptions.ENABLE_HTTP2, this.enableHttp2 == null ? true : this.enableHttp2)
+                    .set(HttpClientOptions.MULTIPLEXING, this.enableMultiplexing == null ? false : this.enableMultiplexing)
+                    .set(HttpClientOptions.STRIPING, this.enableStriping == null ? false : this.enableStriping)
+                    .set(HttpClientOptions.LOAD_BALANCE_ADDRESSES, this.loadBalanceAddresses == null ? false : this.loadBalanceAddresses)
+                    .set(HttpClientOptions.ADAPTIVE_CONCURRENCY, this.adaptiveConcurrency == null ? false : this.adaptiveConcurrency)
+                    .set(HttpClientOptions.HEDGE_IDEMPOTENT_REQUESTS, this.hedgeIdempotentRequests == null ? false : this.hedgeIdempotentRequests)
+                    .set(HttpClientOptions.PREWARM_ON_INIT, this.prewarmOnInit == null ? false : this.prewarmOnInit);
+            if (this.minIdleConnections > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.MIN_IDLE_CONNECTIONS, this.minIdleConnections);
+            }
+            if (this.dnsRefreshInterval > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.DNS_REFRESH_INTERVAL, this.dnsRefreshInterval);
+            }
+            if (this.requestTimeout > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.REQUEST_TIMEOUT, this.requestTimeout);
+            }
+            if (this.maxPendingRequests > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.MAX_PENDING_REQUESTS, this.maxPendingRequests);
+            }
+            if (this.maxQueueWait > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.MAX_QUEUE_WAIT, this.maxQueueWait);
+            }
+            if (this.priorityOverdraft > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.PRIORITY_OVERDRAFT, this.priorityOverdraft);
+            }
+            if (this.maxBufferedRequestSize >= 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.MAX_BUFFERED_REQUEST_SIZE, this.maxBufferedRequestSize);
+            }
+            if (this.compressionLevel >= 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.COMPRESSION_LEVEL, this.compressionLevel);
+            }
+            if (this.compressionThreshold > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.COMPRESSION_THRESHOLD, this.compressionThreshold);
+            }
+            if (this.readAheadBuffers > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.READ_AHEAD_BUFFERS, this.readAheadBuffers);
+            }
+            if (this.circuitBreakerThreshold > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.CIRCUIT_BREAKER_THRESHOLD, this.circuitBreakerThreshold);
+            }
+            if (this.circuitBreakerBackoff > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.CIRCUIT_BREAKER_BACKOFF, this.circuitBreakerBackoff);
+            }
+            if (this.healthCheckInterval > 0) {
+                defaultOptionsBuilder.set(HttpClientOptions.HEALTH_CHECK_INTERVAL, this.healthCheckInterval);
+            }
+            if (this.healthCheckPath != null) {
+                defaultOptionsBuilder.set(HttpClientOptions.HEALTH_CHECK_PATH, this.healthCheckPath);
+            }
+            if (this.metrics != null) {
+                defaultOptionsBuilder.set(HttpClientOptions.METRICS, this.metrics);
+            }
+            //one budget for all targets, so retries are limited across the whole client
+            defaultOptionsBuilder.set(HttpClientOptions.RETRY_BUDGET, new RetryBudget(this.retryBudgetPercent < 0 ? RetryBudget.DEFAULT_RATIO : this.retryBudgetPercent / 100.0));
+            OptionMap defaultOptions = defaultOptionsBuilder.getMap();
 
             for (int i = 0; i < this.targets.size(); ++i) {
                 HttpConfigBuilder sb = this.targets.get(i);
-                HostPool hp = new HostPool(sb.getUri());
                 boolean eager = this.eagerlyAcquireSession == null ? false : this.eagerlyAcquireSession;
                 if (sb.getEagerlyAcquireSession() != null && sb.getEagerlyAcquireSession()) {
                     eager = true;
                 }
-                boolean http2 = this.enableHttp2 == null ? true : this.enableHttp2;
+                OptionMap.Builder options = OptionMap.builder().addAll(defaultOptions);
                 if(sb.getEnableHttp2() != null) {
-                    http2 = sb.getEnableHttp2();
+                    options.set(UndertowOptions.ENABLE_HTTP2, sb.getEnableHttp2());
+                }
+                if(sb.getEnableMultiplexing() != null) {
+                    options.set(HttpClientOptions.MULTIPLEXING, sb.getEnableMultiplexing());
+                }
+                if(sb.getEnableStriping() != null) {
+                    options.set(HttpClientOptions.STRIPING, sb.getEnableStriping());
+                }
+                if(sb.getLoadBalanceAddresses() != null) {
+                    options.set(HttpClientOptions.LOAD_BALANCE_ADDRESSES, sb.getLoadBalanceAddresses());
+                }
+                if(sb.getAdaptiveConcurrency() != null) {
+                    options.set(HttpClientOptions.ADAPTIVE_CONCURRENCY, sb.getAdaptiveConcurrency());
+                }
+                if(sb.getHedgeIdempotentRequests() != null) {
+                    options.set(HttpClientOptions.HEDGE_IDEMPOTENT_REQUESTS, sb.getHedgeIdempotentRequests());
                 }
-                ConfigSection connection = new ConfigSection(new HttpTargetContext(new HttpConnectionPool(sb.getMaxConnections() > 0 ? sb.getMaxConnections() : maxConnections, sb.getMaxStreamsPerConnection() > 0 ? sb.getMaxStreamsPerConnection() : maxStreamsPerConnection, worker, pool, OptionMap.create(UndertowOptions.ENABLE_HTTP2, http2), hp, sb.getIdleTimeout() > 0 ? sb.getIdleTimeout() : idleTimout), eager, sb.getUri()), sb.getUri());
+                if(sb.getMinIdleConnections() > 0) {
+                    options.set(HttpClientOptions.MIN_IDLE_CONNECTIONS, sb.getMinIdleConnections());
+                }
+                if(sb.getDnsRefreshInterval() > 0) {
+                    options.set(HttpClientOptions.DNS_REFRESH_INTERVAL, sb.getDnsRefreshInterval());
+                }
+                if(sb.getRequestTimeout() > 0) {
+                    options.set(HttpClientOptions.REQUEST_TIMEOUT, sb.getRequestTimeout());
+                }
+                if(sb.getMaxPendingRequests() > 0) {
+                    options.set(HttpClientOptions.MAX_PENDING_REQUESTS, sb.getMaxPendingRequests());
+                }
+                if(sb.getMaxQueueWait() > 0) {
+                    options.set(HttpClientOptions.MAX_QUEUE_WAIT, sb.getMaxQueueWait());
+                }
+                if(sb.getPriorityOverdraft() > 0) {
+                    options.set(HttpClientOptions.PRIORITY_OVERDRAFT, sb.getPriorityOverdraft());
+                }
+                if(sb.getMaxBufferedRequestSize() >= 0) {
+                    options.set(HttpClientOptions.MAX_BUFFERED_REQUEST_SIZE, sb.getMaxBufferedRequestSize());
+                }
+                if(sb.getCompressionLevel() >= 0) {
+                    options.set(HttpClientOptions.COMPRESSION_LEVEL, sb.getCompressionLevel());
+                }
+                if(sb.getCompressionThreshold() > 0) {
+                    options.set(HttpClientOptions.COMPRESSION_THRESHOLD, sb.getCompressionThreshold());
+                }
+                if(sb.getReadAheadBuffers() > 0) {
+                    options.set(HttpClientOptions.READ_AHEAD_BUFFERS, sb.getReadAheadBuffers());
+                }
+                if(sb.getCircuitBreakerThreshold() > 0) {
+                    options.set(HttpClientOptions.CIRCUIT_BREAKER_THRESHOLD, sb.getCircuitBreakerThreshold());
+                }
+                if(sb.getCircuitBreakerBackoff() > 0) {
+                    options.set(HttpClientOptions.CIRCUIT_BREAKER_BACKOFF, sb.getCircuitBreakerBackoff());
+                }
+                if(sb.getHealthCheckInterval() > 0) {
+                    options.set(HttpClientOptions.HEALTH_CHECK_INTERVAL, sb.getHealthCheckInterval());
+                }
+                if(sb.getHealthCheckPath() != null) {
+                    options.set(HttpClientOptions.HEALTH_CHECK_PATH, sb.getHealthCheckPath());
+                }
+                if(sb.getPrewarmOnInit() != null) {
+                    options.set(HttpClientOptions.PREWARM_ON_INIT, sb.getPrewarmOnInit());
+                }
+                HostPool hp = new HostPool(sb.getUri(), options.getMap());
+                ConfigSection connection = new ConfigSection(new HttpTargetContext(new HttpConnectionPool(sb.getMaxConnections() > 0 ? sb.getMaxConnections() : maxConnections, sb.getMaxStreamsPerConnection() > 0 ? sb.getMaxStreamsPerConnection() : maxStreamsPerConnection, worker, pool, options.getMap(), hp, sb.getIdleTimeout() > 0 ? sb.getIdleTimeout() : idleTimout), eager, sb.getUri()), sb.getUri());
                 connections[i] = connection;
             }
-            return new WildflyHttpContext(connections, maxConnections, maxStreamsPerConnection, idleTimeout, eagerlyAcquireSession == null ? false : eagerlyAcquireSession, worker, pool, enableHttp2 == null ? true : enableHttp2);
+            return new WildflyHttpContext(connections, maxConnections, maxStreamsPerConnection, idleTimeout, eagerlyAcquireSession == null ? false : eagerlyAcquireSession, worker, pool, defaultOptions);
         }
 
         void setDefaultBindAddress(InetSocketAddress defaultBindAddress) {
@@ -248,6 +400,185 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             return enableHttp2;
         }
 
+        public void setEnableMultiplexing(Boolean enableMultiplexing) {
+            this.enableMultiplexing = enableMultiplexing;
+        }
+
+        public Boolean getEnableMultiplexing() {
+            return enableMultiplexing;
+        }
+
+        public void setEnableStriping(Boolean enableStriping) {
+            this.enableStriping = enableStriping;
+        }
+
+        public Boolean getEnableStriping() {
+            return enableStriping;
+        }
+
+        public void setLoadBalanceAddresses(Boolean loadBalanceAddresses) {
+            this.loadBalanceAddresses = loadBalanceAddresses;
+        }
+
+        public Boolean getLoadBalanceAddresses() {
+            return loadBalanceAddresses;
+        }
+
+        public void setAdaptiveConcurrency(Boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+        }
+
+        public Boolean getAdaptiveConcurrency() {
+            return adaptiveConcurrency;
+        }
+
+        public void setHedgeIdempotentRequests(Boolean hedgeIdempotentRequests) {
+            this.hedgeIdempotentRequests = hedgeIdempotentRequests;
+        }
+
+        public Boolean getHedgeIdempotentRequests() {
+            return hedgeIdempotentRequests;
+        }
+
+        public void setMinIdleConnections(int minIdleConnections) {
+            this.minIdleConnections = minIdleConnections;
+        }
+
+        public int getMinIdleConnections() {
+            return minIdleConnections;
+        }
+
+        public void setDnsRefreshInterval(long dnsRefreshInterval) {
+            this.dnsRefreshInterval = dnsRefreshInterval;
+        }
+
+        public long getDnsRefreshInterval() {
+            return dnsRefreshInterval;
+        }
+
+        public void setRequestTimeout(long requestTimeout) {
+            this.requestTimeout = requestTimeout;
+        }
+
+        public long getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public void setRetryBudgetPercent(int retryBudgetPercent) {
+            this.retryBudgetPercent = retryBudgetPercent;
+        }
+
+        public int getRetryBudgetPercent() {
+            return retryBudgetPercent;
+        }
+
+        public void setMaxPendingRequests(int maxPendingRequests) {
+            this.maxPendingRequests = maxPendingRequests;
+        }
+
+        public int getMaxPendingRequests() {
+            return maxPendingRequests;
+        }
+
+        public void setMaxQueueWait(long maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+
+        public long getMaxQueueWait() {
+            return maxQueueWait;
+        }
+
+        public void setPriorityOverdraft(int priorityOverdraft) {
+            this.priorityOverdraft = priorityOverdraft;
+        }
+
+        public int getPriorityOverdraft() {
+            return priorityOverdraft;
+        }
+
+        public void setMaxBufferedRequestSize(int maxBufferedRequestSize) {
+            this.maxBufferedRequestSize = maxBufferedRequestSize;
+        }
+
+        public int getMaxBufferedRequestSize() {
+            return maxBufferedRequestSize;
+        }
+
+        public void setCompressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+        }
+
+        public int getCompressionLevel() {
+            return compressionLevel;
+        }
+
+        public void setCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+        }
+
+        public int getCompressionThreshold() {
+            return compressionThreshold;
+        }
+
+        public void setReadAheadBuffers(int readAheadBuffers) {
+            this.readAheadBuffers = readAheadBuffers;
+        }
+
+        public int getReadAheadBuffers() {
+            return readAheadBuffers;
+        }
+
+        public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+            this.circuitBreakerThreshold = circuitBreakerThreshold;
+        }
+
+        public int getCircuitBreakerThreshold() {
+            return circuitBreakerThreshold;
+        }
+
+        public void setCircuitBreakerBackoff(long circuitBreakerBackoff) {
+            this.circuitBreakerBackoff = circuitBreakerBackoff;
+        }
+
+        public long getCircuitBreakerBackoff() {
+            return circuitBreakerBackoff;
+        }
+
+        public void setHealthCheckInterval(long healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+        }
+
+        public long getHealthCheckInterval() {
+            return healthCheckInterval;
+        }
+
+        public void setHealthCheckPath(String healthCheckPath) {
+            this.healthCheckPath = healthCheckPath;
+        }
+
+        public String getHealthCheckPath() {
+            return healthCheckPath;
+        }
+
+        /**
+         * Sets the metrics implementation that all connection pools report to.
+         */
+        public void setMetrics(HttpClientMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public HttpClientMetrics getMetrics() {
+            return metrics;
+        }
+
+        public void setPrewarmOnInit(Boolean prewarmOnInit) {
+            this.prewarmOnInit = prewarmOnInit;
+        }
+
+        public Boolean getPrewarmOnInit() {
+            return prewarmOnInit;
+        }
+
         class HttpConfigBuilder {
             final URI uri;
             private InetSocketAddress bindAddress;
@@ -256,6 +587,26 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             private int maxStreamsPerConnection;
             private Boolean eagerlyAcquireSession;
             private Boolean enableHttp2;
+            private Boolean enableMultiplexing;
+            private Boolean enableStriping;
+            private Boolean loadBalanceAddresses;
+            private Boolean adaptiveConcurrency;
+            private Boolean hedgeIdempotentRequests;
+            private int minIdleConnections;
+            private long dnsRefreshInterval;
+            private long requestTimeout;
+            private int maxPendingRequests;
+            private long maxQueueWait;
+            private int priorityOverdraft;
+            private int maxBufferedRequestSize = -1;
+            private int compressionLevel = -1;
+            private int compressionThreshold;
+            private int readAheadBuffers;
+            private int circuitBreakerThreshold;
+            private long circuitBreakerBackoff;
+            private long healthCheckInterval;
+            private String healthCheckPath;
+            private Boolean prewarmOnInit;
 
             HttpConfigBuilder(URI uri) {
                 this.uri = uri;
@@ -312,6 +663,166 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             public Boolean getEnableHttp2() {
                 return enableHttp2;
             }
+
+            public void setEnableMultiplexing(Boolean enableMultiplexing) {
+                this.enableMultiplexing = enableMultiplexing;
+            }
+
+            public Boolean getEnableMultiplexing() {
+                return enableMultiplexing;
+            }
+
+            public void setEnableStriping(Boolean enableStriping) {
+                this.enableStriping = enableStriping;
+            }
+
+            public Boolean getEnableStriping() {
+                return enableStriping;
+            }
+
+            public void setLoadBalanceAddresses(Boolean loadBalanceAddresses) {
+                this.loadBalanceAddresses = loadBalanceAddresses;
+            }
+
+            public Boolean getLoadBalanceAddresses() {
+                return loadBalanceAddresses;
+            }
+
+            public void setAdaptiveConcurrency(Boolean adaptiveConcurrency) {
+                this.adaptiveConcurrency = adaptiveConcurrency;
+            }
+
+            public Boolean getAdaptiveConcurrency() {
+                return adaptiveConcurrency;
+            }
+
+            public void setHedgeIdempotentRequests(Boolean hedgeIdempotentRequests) {
+                this.hedgeIdempotentRequests = hedgeIdempotentRequests;
+            }
+
+            public Boolean getHedgeIdempotentRequests() {
+                return hedgeIdempotentRequests;
+            }
+
+            public void setMinIdleConnections(int minIdleConnections) {
+                this.minIdleConnections = minIdleConnections;
+            }
+
+            public int getMinIdleConnections() {
+                return minIdleConnections;
+            }
+
+            public void setDnsRefreshInterval(long dnsRefreshInterval) {
+                this.dnsRefreshInterval = dnsRefreshInterval;
+            }
+
+            public long getDnsRefreshInterval() {
+                return dnsRefreshInterval;
+            }
+
+            public void setRequestTimeout(long requestTimeout) {
+                this.requestTimeout = requestTimeout;
+            }
+
+            public long getRequestTimeout() {
+                return requestTimeout;
+            }
+
+            public void setMaxPendingRequests(int maxPendingRequests) {
+                this.maxPendingRequests = maxPendingRequests;
+            }
+
+            public int getMaxPendingRequests() {
+                return maxPendingRequests;
+            }
+
+            public void setMaxQueueWait(long maxQueueWait) {
+                this.maxQueueWait = maxQueueWait;
+            }
+
+            public long getMaxQueueWait() {
+                return maxQueueWait;
+            }
+
+            public void setPriorityOverdraft(int priorityOverdraft) {
+                this.priorityOverdraft = priorityOverdraft;
+            }
+
+            public int getPriorityOverdraft() {
+                return priorityOverdraft;
+            }
+
+            public void setMaxBufferedRequestSize(int maxBufferedRequestSize) {
+                this.maxBufferedRequestSize = maxBufferedRequestSize;
+            }
+
+            public int getMaxBufferedRequestSize() {
+                return maxBufferedRequestSize;
+            }
+
+            public void setCompressionLevel(int compressionLevel) {
+                this.compressionLevel = compressionLevel;
+            }
+
+            public int getCompressionLevel() {
+                return compressionLevel;
+            }
+
+            public void setCompressionThreshold(int compressionThreshold) {
+                this.compressionThreshold = compressionThreshold;
+            }
+
+            public int getCompressionThreshold() {
+                return compressionThreshold;
+            }
+
+            public void setReadAheadBuffers(int readAheadBuffers) {
+                this.readAheadBuffers = readAheadBuffers;
+            }
+
+            public int getReadAheadBuffers() {
+                return readAheadBuffers;
+            }
+
+            public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+                this.circuitBreakerThreshold = circuitBreakerThreshold;
+            }
+
+            public int getCircuitBreakerThreshold() {
+                return circuitBreakerThreshold;
+            }
+
+            public void setCircuitBreakerBackoff(long circuitBreakerBackoff) {
+                this.circuitBreakerBackoff = circuitBreakerBackoff;
+            }
+
+            public long getCircuitBreakerBackoff() {
+                return circuitBreakerBackoff;
+            }
+
+            public void setHealthCheckInterval(long healthCheckInterval) {
+                this.healthCheckInterval = healthCheckInterval;
+            }
+
+            public long getHealthCheckInterval() {
+                return healthCheckInterval;
+            }
+
+            public void setHealthCheckPath(String healthCheckPath) {
+                this.healthCheckPath = healthCheckPath;
+            }
+
+            public String getHealthCheckPath() {
+                return healthCheckPath;
+            }
+
+            public void setPrewarmOnInit(Boolean prewarmOnInit) {
+                this.prewarmOnInit = prewarmOnInit;
+            }
+
+            public Boolean getPrewarmOnInit() {
+                return prewarmOnInit;
+            }
         }
     }
 
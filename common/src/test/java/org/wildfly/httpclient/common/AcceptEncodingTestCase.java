@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AcceptEncodingTestCase {
+
+    @Test
+    public void testCodingsAreMatchedExactly() {
+        Assert.assertTrue(AcceptEncoding.parse("gzip").accepts("gzip"));
+        Assert.assertTrue(AcceptEncoding.parse("deflate, GZIP;q=0.5").accepts("gzip"));
+        Assert.assertTrue(AcceptEncoding.parse(" x-wf-ejb-deflate-v1 , gzip ").accepts("GZIP"));
+        Assert.assertFalse(AcceptEncoding.parse("x-gzip-foo").accepts("gzip"));
+        Assert.assertFalse(AcceptEncoding.parse("deflate").accepts("gzip"));
+        Assert.assertFalse(AcceptEncoding.parse("").accepts("gzip"));
+    }
+
+    @Test
+    public void testZeroQualityIsRefused() {
+        Assert.assertFalse(AcceptEncoding.parse("gzip;q=0").accepts("gzip"));
+        Assert.assertFalse(AcceptEncoding.parse("gzip; Q=0.000").accepts("gzip"));
+        Assert.assertFalse(AcceptEncoding.parse("*, gzip;q=0").accepts("gzip"));
+        Assert.assertTrue(AcceptEncoding.parse("*, gzip;q=0").accepts("deflate"));
+        Assert.assertTrue(AcceptEncoding.parse("gzip;q=0.001").accepts("gzip"));
+        Assert.assertFalse(AcceptEncoding.parse("gzip;q=0, deflate").getCodings().contains("gzip"));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveCompressionTestCase {
+
+    private static final int THRESHOLD = 1024;
+
+    @Test
+    public void testSmallBodyNotCompressed() throws IOException {
+        byte[] data = text(THRESHOLD);
+        CompressionStatistics statistics = new CompressionStatistics();
+        AtomicBoolean compressed = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AdaptiveCompressionOutputStream stream = new AdaptiveCompressionOutputStream(out, THRESHOLD, Deflater.DEFAULT_COMPRESSION, () -> compressed.set(true), statistics)) {
+            //written a byte at a time, so the held back head has to grow
+            for (byte b : data) {
+                stream.write(b);
+            }
+            Assert.assertEquals(0, out.size());
+        }
+        Assert.assertFalse(compressed.get());
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertEquals(0, statistics.getCompressed());
+        Assert.assertEquals(1, statistics.getNotCompressed());
+    }
+
+    @Test
+    public void testLargeBodyCompressed() throws IOException {
+        byte[] data = text(THRESHOLD * 50);
+        CompressionStatistics statistics = new CompressionStatistics();
+        AtomicBoolean compressed = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AdaptiveCompressionOutputStream stream = new AdaptiveCompressionOutputStream(out, THRESHOLD, Deflater.DEFAULT_COMPRESSION, () -> {
+            Assert.assertEquals("nothing may be written before the callback", 0, out.size());
+            compressed.set(true);
+        }, statistics)) {
+            stream.write(data, 0, 100);
+            stream.write(data, 100, data.length - 100);
+        }
+        Assert.assertTrue(compressed.get());
+        Assert.assertArrayEquals(data, readFully(GzipStreams.decompress(new ByteArrayInputStream(out.toByteArray()))));
+        Assert.assertEquals(1, statistics.getCompressed());
+        Assert.assertEquals(0, statistics.getNotCompressed());
+        Assert.assertEquals(data.length, statistics.getUncompressedBytes());
+        Assert.assertEquals(out.size(), statistics.getCompressedBytes());
+        Assert.assertTrue(statistics.getCompressionRatio() < 0.5);
+    }
+
+    @Test
+    public void testRandomBodyNotCompressed() throws IOException {
+        byte[] data = new byte[THRESHOLD * 50];
+        new Random(42).nextBytes(data);
+        CompressionStatistics statistics = new CompressionStatistics();
+        AtomicBoolean compressed = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AdaptiveCompressionOutputStream stream = new AdaptiveCompressionOutputStream(out, THRESHOLD, Deflater.DEFAULT_COMPRESSION, () -> compressed.set(true), statistics)) {
+            stream.write(data);
+        }
+        Assert.assertFalse(compressed.get());
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertEquals(1, statistics.getNotCompressed());
+        Assert.assertEquals(1.0, statistics.getCompressionRatio(), 0);
+    }
+
+    @Test
+    public void testEntropyEstimate() {
+        byte[] random = new byte[8192];
+        new Random(42).nextBytes(random);
+        byte[] text = text(8192);
+        Assert.assertFalse(AdaptiveCompressionOutputStream.isCompressible(random, random.length, new byte[0], 0, 0));
+        Assert.assertTrue(AdaptiveCompressionOutputStream.isCompressible(text, 10, random, 0, 0));
+        //only the sample at the start of the body is looked at
+        Assert.assertTrue(AdaptiveCompressionOutputStream.isCompressible(text, 4096, random, 0, random.length));
+        Assert.assertFalse(AdaptiveCompressionOutputStream.isCompressible(text, 0, random, 0, random.length));
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < size; ++i) {
+            sb.append("org.wildfly.httpclient.Invocation#").append(i).append(';');
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int r;
+        while ((r = in.read(buf)) > 0) {
+            out.write(buf, 0, r);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
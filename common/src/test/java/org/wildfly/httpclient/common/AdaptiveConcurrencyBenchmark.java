@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.OptionMap;
+import org.xnio.channels.Channels;
+import io.undertow.client.ClientCallback;
+import io.undertow.client.ClientExchange;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+
+/**
+ * Compares the static connection limit with the adaptive one against a backend that slows down once it has more
+ * than a few requests in progress. This is not run as part of the normal build, run it with
+ * {@code mvn test -pl common -Dtest=AdaptiveConcurrencyBenchmark}.
+ */
+@RunWith(HTTPTestServer.class)
+public class AdaptiveConcurrencyBenchmark {
+
+    private static final String PATH = "/adaptive-concurrency-benchmark";
+    private static final int MAX_CONNECTIONS = 40;
+    private static final int CLIENTS = 60;
+    /**
+     * The number of requests the backend can handle at once before it starts to degrade
+     */
+    private static final int BACKEND_CAPACITY = 8;
+    private static final long BASE_LATENCY_MILLIS = 5;
+    private static final long DURATION_MILLIS = Long.getLong("benchmark.duration", 10000);
+
+    @Test
+    public void compareLimits() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        HTTPTestServer.registerPathHandler(PATH, new BlockingHandler(exchange -> {
+            int current = active.incrementAndGet();
+            try {
+                //every request over the capacity adds contention for all of them
+                long latency = BASE_LATENCY_MILLIS * Math.max(1, current * current / (BACKEND_CAPACITY * BACKEND_CAPACITY));
+                Thread.sleep(latency);
+            } finally {
+                active.decrementAndGet();
+            }
+        }));
+        run("static", OptionMap.EMPTY);
+        run("adaptive", OptionMap.create(HttpClientOptions.ADAPTIVE_CONCURRENCY, true));
+    }
+
+    private void run(String name, OptionMap options) throws Exception {
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap poolOptions = OptionMap.builder().addAll(options).set(HttpClientOptions.METRICS, metrics).getMap();
+        HttpConnectionPool pool = new HttpConnectionPool(MAX_CONNECTIONS, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), poolOptions, new HostPool(uri), -1);
+        try {
+            //warm up, so connections and the limit have settled before we measure
+            measure(pool, DURATION_MILLIS / 5);
+            Result result = measure(pool, DURATION_MILLIS);
+            HttpTargetMetrics target = metrics.getTargetMetrics(uri);
+            System.out.printf("%-8s throughput %8.1f req/s, latency p50 %6.1fms p99 %6.1fms max %6.1fms, errors %d, final limit %d%n",
+                    name, result.index.get() * 1000.0 / DURATION_MILLIS, result.percentile(0.5), result.percentile(0.99), result.percentile(1.0),
+                    result.errors.get(), target.getConcurrencyLimit());
+        } finally {
+            pool.close();
+        }
+    }
+
+    private Result measure(HttpConnectionPool pool, long duration) throws InterruptedException {
+        Result result = new Result();
+        Semaphore clients = new Semaphore(CLIENTS);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+        while (System.nanoTime() < end) {
+            clients.acquire();
+            long start = System.nanoTime();
+            invoke(pool, () -> {
+                result.record(System.nanoTime() - start);
+                clients.release();
+            }, () -> {
+                result.errors.incrementAndGet();
+                clients.release();
+            });
+        }
+        clients.acquire(CLIENTS);
+        result.finish();
+        return result;
+    }
+
+    private void invoke(HttpConnectionPool pool, Runnable success, Runnable failure) {
+        pool.getConnection(connectionHandle -> {
+            ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath(PATH);
+            request.getRequestHeaders().add(Headers.HOST, HTTPTestServer.getHostAddress());
+            connectionHandle.getConnection().sendRequest(request, new ClientCallback<ClientExchange>() {
+                @Override
+                public void completed(ClientExchange result) {
+                    result.setResponseListener(new ClientCallback<ClientExchange>() {
+                        @Override
+                        public void completed(ClientExchange result) {
+                            try {
+                                Channels.drain(result.getResponseChannel(), Long.MAX_VALUE);
+                                connectionHandle.done(false);
+                                success.run();
+                            } catch (IOException e) {
+                                connectionHandle.done(true);
+                                failure.run();
+                            }
+                        }
+
+                        @Override
+                        public void failed(IOException e) {
+                            connectionHandle.done(true);
+                            failure.run();
+                        }
+                    });
+                }
+
+                @Override
+                public void failed(IOException e) {
+                    connectionHandle.done(true);
+                    failure.run();
+                }
+            });
+        }, error -> failure.run(), false, null);
+    }
+
+    private static final class Result {
+
+        private final long[] latencies = new long[1_000_000];
+        private final AtomicLong index = new AtomicLong();
+        private final AtomicInteger errors = new AtomicInteger();
+        private int count;
+
+        void record(long latency) {
+            long i = index.getAndIncrement();
+            if (i < latencies.length) {
+                latencies[(int) i] = latency;
+            }
+        }
+
+        void finish() {
+            count = (int) Math.min(index.get(), latencies.length);
+            Arrays.sort(latencies, 0, count);
+        }
+
+        double percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            int i = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+            return latencies[Math.max(0, i)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class BufferedRequestTestCase {
+
+    private static final String PATH = "/buffered-request";
+    private static final String ADAPTIVE_PATH = "/adaptive-request";
+
+    @Test
+    public void testSmallBodiesAreSentWithContentLength() throws Exception {
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        int bufferSize = HTTPTestServer.getBufferPool().getBufferSize();
+        OptionMap options = OptionMap.builder()
+                .set(HttpClientOptions.METRICS, metrics)
+                .set(HttpClientOptions.MAX_BUFFERED_REQUEST_SIZE, bufferSize)
+                .getMap();
+        HttpConnectionPool pool = createPool(options, uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            Assert.assertEquals("length 100 " + checksum(100), send(context, 100));
+            Assert.assertEquals("length " + bufferSize + " " + checksum(bufferSize), send(context, bufferSize));
+            //anything larger than a pooled buffer is streamed
+            Assert.assertEquals("chunked " + checksum(bufferSize + 1), send(context, bufferSize + 1));
+            Assert.assertEquals("chunked " + checksum(bufferSize * 3), send(context, bufferSize * 3));
+
+            //if marshalling fails before anything is sent the connection is kept
+            CompletableFuture<String> result = new CompletableFuture<>();
+            context.sendRequest(createRequest(), null, AuthenticationConfiguration.empty(), output -> {
+                output.write(1);
+                throw new IOException("marshalling failed");
+            }, (input, response, closeable) -> result.complete("unexpected response"), result::completeExceptionally, null, null);
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (Exception expected) {
+                Assert.assertEquals("marshalling failed", expected.getCause().getMessage());
+            }
+            Assert.assertEquals("length 10 " + checksum(10), send(context, 10));
+            Assert.assertEquals(1, metrics.getTargetMetrics(uri).getConnectionsOpened());
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testBufferingDisabledByDefault() throws Exception {
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = createPool(OptionMap.EMPTY, uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            Assert.assertEquals("chunked " + checksum(100), send(context, 100));
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testAdaptiveCompressionWithoutBuffering() throws Exception {
+        HTTPTestServer.registerPathHandler(ADAPTIVE_PATH, new BlockingHandler(exchange -> {
+            String contentEncoding = exchange.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING);
+            InputStream in = exchange.getInputStream();
+            if (contentEncoding != null) {
+                in = new GZIPInputStream(in);
+            }
+            int size = 0;
+            try {
+                while (in.read() != -1) {
+                    ++size;
+                }
+            } finally {
+                in.close();
+            }
+            exchange.getResponseSender().send(contentEncoding + " " + size);
+        }));
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.create(HttpClientOptions.COMPRESSION_THRESHOLD, 512);
+        HttpConnectionPool pool = createPool(options, uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            //the request is only sent once the size of the body has decided whether it is compressed
+            Assert.assertEquals("null 100", sendAdaptively(context, 100));
+            Assert.assertEquals("gzip 10000", sendAdaptively(context, 10000));
+            Assert.assertEquals("null 100", sendAdaptively(context, 100));
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    private HttpConnectionPool createPool(OptionMap options, URI uri) {
+        HTTPTestServer.registerPathHandler(PATH, new BlockingHandler(exchange -> {
+            String contentLength = exchange.getRequestHeaders().getFirst(Headers.CONTENT_LENGTH);
+            String transferEncoding = exchange.getRequestHeaders().getFirst(Headers.TRANSFER_ENCODING);
+            long sum = 0;
+            try (InputStream in = exchange.getInputStream()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    sum = sum * 31 + b;
+                }
+            }
+            String framing = contentLength != null ? "length " + contentLength : transferEncoding;
+            exchange.getResponseSender().send(framing + " " + sum);
+        }));
+        return new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+    }
+
+    private static ClientRequest createRequest() {
+        ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(PATH);
+        request.getRequestHeaders().put(Headers.CONTENT_TYPE, "application/octet-stream");
+        return request;
+    }
+
+    private static String send(HttpTargetContext context, int size) throws Exception {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        context.sendRequest(createRequest(), null, AuthenticationConfiguration.empty(), output -> {
+            //a mix of single bytes and arrays, as marshallers write both
+            byte[] data = body(size);
+            int half = size / 2;
+            for (int i = 0; i < half; ++i) {
+                output.write(data[i]);
+            }
+            output.write(Arrays.copyOfRange(data, half, size));
+        }, (input, response, closeable) -> {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                result.complete(new String(out.toByteArray(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            } finally {
+                IoUtils.safeClose(closeable);
+            }
+        }, result::completeExceptionally, null, null);
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    private static String sendAdaptively(HttpTargetContext context, int size) throws Exception {
+        ClientRequest request = createRequest().setPath(ADAPTIVE_PATH);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        context.sendRequest(request, null, AuthenticationConfiguration.empty(), output -> {
+            try (OutputStream data = context.compressAdaptively(request, output, Deflater.DEFAULT_COMPRESSION)) {
+                for (int i = 0; i < size; ++i) {
+                    data.write('a' + i % 4);
+                }
+            }
+        }, (input, response, closeable) -> {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                result.complete(new String(out.toByteArray(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            } finally {
+                IoUtils.safeClose(closeable);
+            }
+        }, result::completeExceptionally, null, null);
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    private static byte[] body(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static long checksum(int size) {
+        long sum = 0;
+        for (byte b : body(size)) {
+            sum = sum * 31 + (b & 0xFF);
+        }
+        return sum;
+    }
+}
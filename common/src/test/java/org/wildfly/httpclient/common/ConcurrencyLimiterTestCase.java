@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrencyLimiterTestCase {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testLimitAdaptsToLatencyAndErrors() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20);
+        Assert.assertEquals(20, limiter.getLimit());
+        fill(limiter);
+        Assert.assertFalse(limiter.tryAcquire());
+
+        //a steady round trip time keeps the limit at the maximum
+        for (int i = 0; i < 100; ++i) {
+            limiter.onSample(RTT, false);
+        }
+        Assert.assertEquals(20, limiter.getLimit());
+
+        //requests start queueing, so the limit comes down
+        for (int i = 0; i < 50; ++i) {
+            limiter.onSample(RTT * 5, false);
+        }
+        int reduced = limiter.getLimit();
+        Assert.assertTrue("Limit was " + reduced, reduced < 10);
+
+        //once the backend recovers the limit grows back to the maximum
+        fill(limiter);
+        for (int i = 0; i < 200; ++i) {
+            limiter.onSample(RTT, false);
+        }
+        Assert.assertEquals(20, limiter.getLimit());
+
+        //failures cut the limit
+        for (int i = 0; i < 10; ++i) {
+            limiter.onSample(RTT, true);
+        }
+        Assert.assertTrue(limiter.getLimit() < 20);
+        Assert.assertTrue(limiter.getLimit() >= 1);
+    }
+
+    @Test
+    public void testIdlePoolDoesNotGrowOrShrink() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20);
+        Assert.assertTrue(limiter.tryAcquire());
+        for (int i = 0; i < 100; ++i) {
+            limiter.onSample(RTT * (i % 2 == 0 ? 1 : 10), false);
+        }
+        //only one request in flight, so the samples say nothing about the limit
+        Assert.assertEquals(20, limiter.getLimit());
+        limiter.release();
+    }
+
+    private static void fill(ConcurrencyLimiter limiter) {
+        while (limiter.tryAcquire()) {
+        }
+    }
+}
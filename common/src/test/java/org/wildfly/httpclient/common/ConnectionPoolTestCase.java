@@ -19,14 +19,18 @@
 package org.wildfly.httpclient.common;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
@@ -41,6 +45,7 @@ import io.undertow.server.ServerConnection;
 import io.undertow.server.handlers.BlockingHandler;
 import io.undertow.util.Headers;
 import io.undertow.util.Methods;
+import io.undertow.util.NetworkUtils;
 
 /**
  * @author Stuart Douglas
@@ -53,6 +58,9 @@ public class ConnectionPoolTestCase {
     static final int CONNECTION_IDLE_TIMEOUT = 1000;
     static String MAX_CONNECTIONS_PATH = "/max-connections-test";
     static String IDLE_TIMEOUT_PATH = "/idle-timeout-path";
+    static String HEALTH_CHECK_PATH = "/health-check-path";
+    static String SLOW_PATH = "/slow-path";
+    static String PRIORITY_PATH = "/priority-path";
 
     private static final List<ServerConnection> connections = new CopyOnWriteArrayList<>();
 
@@ -87,8 +95,477 @@ public class ConnectionPoolTestCase {
 
     }
 
+    @Test
+    public void testMinIdleConnections() throws Exception {
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> {
+            connections.add(exchange.getConnection());
+        }));
+        connections.clear();
+        //the server closes connections after 1s without a request, so we use a shorter idle timeout here
+        int idleTimeout = 300;
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.builder()
+                .set(HttpClientOptions.MIN_IDLE_CONNECTIONS, 1)
+                .set(HttpClientOptions.PREWARM_ON_INIT, true)
+                .set(HttpClientOptions.METRICS, metrics)
+                .getMap();
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri), idleTimeout);
+        pool.prewarm(null);
+        //wait for the pre-warmed connection, otherwise the first request opens a second one
+        long end = System.currentTimeMillis() + 5000;
+        while ((metrics.getTargetMetrics(uri) == null || metrics.getTargetMetrics(uri).getConnectionsOpened() == 0) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        final AtomicReference<Throwable> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Thread.sleep(idleTimeout * 2);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        checkFailed(failed);
+
+        Assert.assertEquals(2, connections.size());
+        Assert.assertEquals(connections.get(0), connections.get(1));
+        connections.clear();
+    }
+
+    @Test
+    public void testMinIdleConnectionsWithBusyConnections() throws Exception {
+        int idleTimeout = 200;
+        OptionMap options = OptionMap.create(HttpClientOptions.MIN_IDLE_CONNECTIONS, 1);
+        HttpConnectionPool pool = new HttpConnectionPool(2, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), idleTimeout);
+        try {
+            HttpConnectionPool.ConnectionHandle busy = MultiplexingTestCase.acquire(pool).get(10, TimeUnit.SECONDS);
+            HttpConnectionPool.ConnectionHandle idle = MultiplexingTestCase.acquire(pool).get(10, TimeUnit.SECONDS);
+            Assert.assertNotSame(busy.getConnection(), idle.getConnection());
+            idle.done(false);
+
+            //the busy connection does not count towards the floor, so the idle one is kept
+            Thread.sleep(idleTimeout * 2 + 100);
+            Assert.assertTrue(idle.getConnection().isOpen());
+            Assert.assertEquals(2, pool.getOpenConnections());
+            busy.done(false);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testStripedMinIdleConnections() throws Exception {
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> {
+        }));
+        int idleTimeout = 300;
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.builder()
+                .set(HttpClientOptions.STRIPING, true)
+                .set(HttpClientOptions.MIN_IDLE_CONNECTIONS, 2)
+                .set(HttpClientOptions.PREWARM_ON_INIT, true)
+                .set(HttpClientOptions.METRICS, metrics)
+                .getMap();
+        //two connections give two stripes, each of which keeps one of the idle connections open
+        HttpConnectionPool pool = new HttpConnectionPool(2, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri), idleTimeout);
+        try {
+            pool.prewarm(null);
+            long end = System.currentTimeMillis() + 5000;
+            while ((metrics.getTargetMetrics(uri) == null || metrics.getTargetMetrics(uri).getConnectionsOpened() < 2) && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(2, pool.getOpenConnections());
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(2);
+            doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+            doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            checkFailed(failed);
+
+            //the idle connections are not reaped below the floor
+            Thread.sleep(idleTimeout * 2);
+            Assert.assertEquals(2, pool.getOpenConnections());
+            Assert.assertEquals(2, metrics.getTargetMetrics(uri).getConnectionsOpened());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testDnsRefresh() throws Exception {
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> {
+            connections.add(exchange.getConnection());
+        }));
+        connections.clear();
+        OptionMap options = OptionMap.create(HttpClientOptions.DNS_REFRESH_INTERVAL, 50L);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL()), options), CONNECTION_IDLE_TIMEOUT);
+        final AtomicReference<Throwable> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Thread.sleep(300);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        checkFailed(failed);
+
+        //the address has not changed, so the refresh must not drain the connection
+        Assert.assertEquals(2, connections.size());
+        Assert.assertEquals(connections.get(0), connections.get(1));
+        connections.clear();
+        pool.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> {
+            connections.add(exchange.getConnection());
+        }));
+        connections.clear();
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), CONNECTION_IDLE_TIMEOUT * 10);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        checkFailed(failed);
+        Assert.assertEquals(1, connections.size());
+
+        pool.close();
+        //the idle connection is closed straight away rather than when the idle timeout expires
+        long end = System.currentTimeMillis() + 5000;
+        while (connections.get(0).isOpen() && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(connections.get(0).isOpen());
+        connections.clear();
+
+        latch = new CountDownLatch(1);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(String.valueOf(failed.get()), failed.get().getMessage().contains("WFHTTP000016"));
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        //nothing is listening on this port
+        URI uri = new URI("http://" + NetworkUtils.formatPossibleIpv6Address(HTTPTestServer.getHostAddress()) + ":" + (HTTPTestServer.getHostPort() + 10));
+        OptionMap options = OptionMap.create(HttpClientOptions.CIRCUIT_BREAKER_THRESHOLD, 1, HttpClientOptions.CIRCUIT_BREAKER_BACKOFF, 60000L);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), CONNECTION_IDLE_TIMEOUT);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertNotNull(failed.get());
+
+        //the breaker is now open, so the next request must fail without attempting to connect
+        failed.set(null);
+        latch = new CountDownLatch(1);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(String.valueOf(failed.get()), failed.get().getMessage().contains("WFHTTP000015"));
+    }
+
+    @Test
+    public void testHealthCheck() throws Exception {
+        AtomicInteger status = new AtomicInteger(503);
+        CountDownLatch checked = new CountDownLatch(2);
+        HTTPTestServer.registerPathHandler(HEALTH_CHECK_PATH, (exchange -> {
+            exchange.setStatusCode(status.get());
+            checked.countDown();
+        }));
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> {
+        }));
+        OptionMap options = OptionMap.create(HttpClientOptions.HEALTH_CHECK_INTERVAL, 100L, HttpClientOptions.HEALTH_CHECK_PATH, HEALTH_CHECK_PATH);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL()), options), CONNECTION_IDLE_TIMEOUT);
+        Assert.assertTrue(checked.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100); //give the client time to process the last check
+
+        //the only address is unhealthy, so the health check is ignored rather than failing every request
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        checkFailed(failed);
+
+        //once the address passes a check it is used again
+        status.set(200);
+        Thread.sleep(500);
+        failed.set(null);
+        latch = new CountDownLatch(1);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        checkFailed(failed);
+        pool.close();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> {
+        }));
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.create(HttpClientOptions.METRICS, metrics), new HostPool(uri), CONNECTION_IDLE_TIMEOUT);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        checkFailed(failed);
+
+        HttpTargetMetrics target = metrics.getTargetMetrics(uri);
+        Assert.assertEquals(1, target.getConnectionsOpened());
+        Assert.assertEquals(1, target.getOpenConnections());
+        Assert.assertEquals(0, target.getActiveConnections());
+        Assert.assertEquals(0, target.getPendingRequests());
+        Assert.assertEquals(0, target.getAcquireFailures());
+        Assert.assertTrue(target.getMeanConnectTimeMillis() > 0);
+
+        pool.close();
+        long end = System.currentTimeMillis() + 5000;
+        while (target.getOpenConnections() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(0, target.getOpenConnections());
+    }
+
+    @Test
+    public void testPriorityOverdraft() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HTTPTestServer.registerPathHandler(SLOW_PATH, new BlockingHandler(exchange -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        }));
+        HTTPTestServer.registerPathHandler(PRIORITY_PATH, (exchange -> {
+        }));
+        OptionMap options = OptionMap.create(HttpClientOptions.PRIORITY_OVERDRAFT, 1);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), CONNECTION_IDLE_TIMEOUT);
+        try {
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            CountDownLatch slowLatch = new CountDownLatch(2);
+            doInvocation(SLOW_PATH, pool, slowLatch, failed);
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            doInvocation(SLOW_PATH, pool, slowLatch, failed);
+
+            //the pool is full, but control traffic gets an extra connection
+            CountDownLatch priorityLatch = new CountDownLatch(1);
+            doInvocation(PRIORITY_PATH, pool, priorityLatch, failed, true);
+            Assert.assertTrue(priorityLatch.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, slowLatch.getCount());
+            release.countDown();
+            Assert.assertTrue(slowLatch.await(10, TimeUnit.SECONDS));
+            checkFailed(failed);
+        } finally {
+            release.countDown();
+            pool.close();
+            connections.clear();
+        }
+    }
+
+    @Test
+    public void testPriorityQueue() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        HTTPTestServer.registerPathHandler(SLOW_PATH, new BlockingHandler(exchange -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        }));
+        HTTPTestServer.registerPathHandler(IDLE_TIMEOUT_PATH, (exchange -> order.add(IDLE_TIMEOUT_PATH)));
+        HTTPTestServer.registerPathHandler(PRIORITY_PATH, (exchange -> order.add(PRIORITY_PATH)));
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), CONNECTION_IDLE_TIMEOUT);
+        try {
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(3);
+            doInvocation(SLOW_PATH, pool, latch, failed);
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            doInvocation(IDLE_TIMEOUT_PATH, pool, latch, failed);
+            //there is no overdraft by default, so control traffic has to wait for a connection, but goes ahead of other requests
+            doInvocation(PRIORITY_PATH, pool, latch, failed, true);
+            release.countDown();
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            checkFailed(failed);
+            Assert.assertEquals(Arrays.asList(PRIORITY_PATH, IDLE_TIMEOUT_PATH), order);
+        } finally {
+            release.countDown();
+            pool.close();
+            connections.clear();
+        }
+    }
+
+    @Test
+    public void testAbortAfterDone() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), CONNECTION_IDLE_TIMEOUT);
+        try {
+            HttpConnectionPool.ConnectionHandle first = MultiplexingTestCase.acquire(pool).get(10, TimeUnit.SECONDS);
+            first.done(false);
+            HttpConnectionPool.ConnectionHandle second = MultiplexingTestCase.acquire(pool).get(10, TimeUnit.SECONDS);
+            Assert.assertSame(first.getConnection(), second.getConnection());
+            //the first handle has been released, so it must not close the connection that now belongs to another request
+            first.abort();
+            Assert.assertTrue(second.getConnection().isOpen());
+            second.done(false);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testPendingQueueLimits() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HTTPTestServer.registerPathHandler(SLOW_PATH, new BlockingHandler(exchange -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        }));
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.builder()
+                .set(HttpClientOptions.MAX_PENDING_REQUESTS, 1)
+                .set(HttpClientOptions.MAX_QUEUE_WAIT, 300L)
+                .set(HttpClientOptions.METRICS, metrics)
+                .getMap();
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri), CONNECTION_IDLE_TIMEOUT);
+        try {
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            CountDownLatch slowLatch = new CountDownLatch(1);
+            doInvocation(SLOW_PATH, pool, slowLatch, failed);
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            //this one waits for the connection
+            AtomicReference<Throwable> queuedFailed = new AtomicReference<>();
+            CountDownLatch queuedLatch = new CountDownLatch(1);
+            long start = System.nanoTime();
+            doInvocation(SLOW_PATH, pool, queuedLatch, queuedFailed);
+
+            //the queue is full, so this one is rejected straight away
+            AtomicReference<Throwable> rejectedFailed = new AtomicReference<>();
+            CountDownLatch rejectedLatch = new CountDownLatch(1);
+            doInvocation(SLOW_PATH, pool, rejectedLatch, rejectedFailed);
+            Assert.assertEquals(0, rejectedLatch.getCount());
+            Assert.assertTrue(rejectedFailed.get() instanceof RequestRejectedException);
+
+            //the queued request gives up once it has waited for the maximum queue wait
+            Assert.assertTrue(queuedLatch.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(queuedFailed.get() instanceof RequestRejectedException);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+            Assert.assertEquals(1, slowLatch.getCount());
+
+            HttpTargetMetrics targetMetrics = metrics.getTargetMetrics(uri);
+            Assert.assertEquals(2, targetMetrics.getRejectedRequests());
+            Assert.assertEquals(0, targetMetrics.getPendingRequests());
+
+            release.countDown();
+            Assert.assertTrue(slowLatch.await(10, TimeUnit.SECONDS));
+            CountDownLatch latch = new CountDownLatch(1);
+            doInvocation(SLOW_PATH, pool, latch, failed);
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            checkFailed(failed);
+        } finally {
+            release.countDown();
+            pool.close();
+            connections.clear();
+        }
+    }
+
+    @Test
+    public void testStripedPendingQueueLimit() throws Exception {
+        Semaphore entered = new Semaphore(0);
+        CountDownLatch release = new CountDownLatch(1);
+        HTTPTestServer.registerPathHandler(SLOW_PATH, new BlockingHandler(exchange -> {
+            entered.release();
+            release.await(10, TimeUnit.SECONDS);
+        }));
+        OptionMap options = OptionMap.create(HttpClientOptions.STRIPING, true, HttpClientOptions.MAX_PENDING_REQUESTS, 1);
+        HttpConnectionPool pool = new HttpConnectionPool(2, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), CONNECTION_IDLE_TIMEOUT);
+        try {
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(3);
+            //a request is pending until its connection is open, so we wait for each one to get to the server
+            doInvocation(SLOW_PATH, pool, latch, failed);
+            Assert.assertTrue(entered.tryAcquire(10, TimeUnit.SECONDS));
+            doInvocation(SLOW_PATH, pool, latch, failed);
+            Assert.assertTrue(entered.tryAcquire(10, TimeUnit.SECONDS));
+
+            //queued from another thread, which may be counted on a different stripe
+            Thread thread = new Thread(() -> doInvocation(SLOW_PATH, pool, latch, failed));
+            thread.start();
+            thread.join();
+            Assert.assertEquals(1, pool.getPendingRequests());
+
+            //the limit applies to the pool as a whole, not to each stripe
+            AtomicReference<Throwable> rejectedFailed = new AtomicReference<>();
+            CountDownLatch rejectedLatch = new CountDownLatch(1);
+            doInvocation(SLOW_PATH, pool, rejectedLatch, rejectedFailed);
+            Assert.assertEquals(0, rejectedLatch.getCount());
+            Assert.assertTrue(rejectedFailed.get() instanceof RequestRejectedException);
+
+            release.countDown();
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            checkFailed(failed);
+            Assert.assertEquals(0, pool.getPendingRequests());
+        } finally {
+            release.countDown();
+            pool.close();
+        }
+    }
+
     @Test
     public void testMaxConnections() throws Exception {
+        runMaxConnectionsTest(OptionMap.EMPTY);
+    }
+
+    @Test
+    public void testStripedMaxConnections() throws Exception {
+        runMaxConnectionsTest(OptionMap.create(HttpClientOptions.STRIPING, true));
+    }
+
+    @Test
+    public void testLoadBalancedMaxConnections() throws Exception {
+        runMaxConnectionsTest(OptionMap.create(HttpClientOptions.LOAD_BALANCE_ADDRESSES, true));
+    }
+
+    @Test
+    public void testLoadBalancingAvoidsFailingAddress() throws Exception {
+        HTTPTestServer.registerPathHandler(MAX_CONNECTIONS_PATH, new BlockingHandler(exchange -> Thread.sleep(50)));
+        //nothing is listening on the second address, so every connection to it is refused
+        InetAddress[] addresses = {InetAddress.getByName(HTTPTestServer.getHostAddress()), InetAddress.getByName("127.0.0.2")};
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.create(HttpClientOptions.LOAD_BALANCE_ADDRESSES, true, HttpClientOptions.METRICS, metrics);
+        HostPool hostPool = new HostPool(uri, options) {
+            @Override
+            InetAddress[] lookup() {
+                return addresses;
+            }
+        };
+        //report one refused connection to the second address, as the first connect to it would
+        for (int i = 0; i < 100; ++i) {
+            HostPool.AddressResult result = hostPool.getAddress();
+            if (result.getAddress().equals(addresses[1])) {
+                result.failed();
+                break;
+            }
+        }
+        HttpConnectionPool pool = new HttpConnectionPool(MAX_CONNECTION_COUNT, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, hostPool, -1);
+        try {
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            List<CountDownLatch> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; ++i) {
+                CountDownLatch latch = new CountDownLatch(1);
+                results.add(latch);
+                doInvocation(MAX_CONNECTIONS_PATH, pool, latch, failed);
+            }
+            for (CountDownLatch i : results) {
+                Assert.assertTrue(i.await(10, TimeUnit.SECONDS));
+            }
+            checkFailed(failed);
+            //every connection must have gone to the working address
+            Assert.assertEquals(0, metrics.getTargetMetrics(uri).getConnectFailures());
+            Assert.assertEquals(MAX_CONNECTION_COUNT, metrics.getTargetMetrics(uri).getConnectionsOpened());
+        } finally {
+            pool.close();
+        }
+    }
+
+    private void runMaxConnectionsTest(OptionMap options) throws Exception {
+        maxActiveRequests = 0;
         HTTPTestServer.registerPathHandler(MAX_CONNECTIONS_PATH, new BlockingHandler(exchange -> {
             synchronized (ConnectionPoolTestCase.class) {
                 currentRequests++;
@@ -101,7 +578,7 @@ public class ConnectionPoolTestCase {
                 currentRequests--;
             }
         }));
-        HttpConnectionPool pool = new HttpConnectionPool(MAX_CONNECTION_COUNT, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL())), -1);
+        HttpConnectionPool pool = new HttpConnectionPool(MAX_CONNECTION_COUNT, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(new URI(HTTPTestServer.getDefaultRootServerURL()), options), -1);
         ExecutorService executor = Executors.newFixedThreadPool(THREADS);
         List<CountDownLatch> results = new ArrayList<>();
         final AtomicReference<Throwable> failed = new AtomicReference<>();
@@ -123,6 +600,10 @@ public class ConnectionPoolTestCase {
     }
 
     private void doInvocation(String path, HttpConnectionPool pool, CountDownLatch latch, AtomicReference<Throwable> failed) {
+        doInvocation(path, pool, latch, failed, false);
+    }
+
+    private void doInvocation(String path, HttpConnectionPool pool, CountDownLatch latch, AtomicReference<Throwable> failed, boolean control) {
 
         pool.getConnection((connectionHandle) -> {
             ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath(path);
@@ -163,7 +644,7 @@ public class ConnectionPoolTestCase {
         }, (error) -> {
             failed.set(error);
             latch.countDown();
-        }, false, null);
+        }, control, null);
     }
 
     private void checkFailed(AtomicReference<Throwable> failed) {
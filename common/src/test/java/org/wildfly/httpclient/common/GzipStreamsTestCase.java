@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GzipStreamsTestCase {
+
+    @Test
+    public void testRoundTripWithJdkStreams() throws IOException {
+        byte[] data = data();
+        for (int i = 0; i < 3; ++i) {
+            //repeated, so later iterations run on pooled zlib state
+            Assert.assertArrayEquals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(compress(data, Deflater.DEFAULT_COMPRESSION)))));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(data);
+            }
+            Assert.assertArrayEquals(data, readFully(GzipStreams.decompress(new ByteArrayInputStream(out.toByteArray()))));
+        }
+        Assert.assertArrayEquals(new byte[0], readFully(GzipStreams.decompress(new ByteArrayInputStream(compress(new byte[0], 1)))));
+    }
+
+    @Test
+    public void testCompressionLevel() throws IOException {
+        byte[] data = data();
+        byte[] stored = compress(data, Deflater.NO_COMPRESSION);
+        byte[] best = compress(data, Deflater.BEST_COMPRESSION);
+        Assert.assertTrue(stored.length > data.length);
+        Assert.assertTrue(best.length < data.length / 10);
+        Assert.assertArrayEquals(data, readFully(GzipStreams.decompress(new ByteArrayInputStream(stored))));
+        Assert.assertArrayEquals(data, readFully(GzipStreams.decompress(new ByteArrayInputStream(best))));
+    }
+
+    @Test
+    public void testHeaderWithOptionalFields() throws IOException {
+        byte[] data = data();
+        byte[] compressed = compress(data, Deflater.DEFAULT_COMPRESSION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //FEXTRA and FNAME, as written by the gzip command line tool
+        out.write(new byte[]{(byte) 0x1f, (byte) 0x8b, 8, 4 | 8, 0, 0, 0, 0, 0, 3, 2, 0, 'a', 'b'});
+        out.write("name.txt\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(compressed, 10, compressed.length - 10);
+        Assert.assertArrayEquals(data, readFully(GzipStreams.decompress(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    public void testCorruptData() throws IOException {
+        try {
+            GzipStreams.decompress(new ByteArrayInputStream("not gzip".getBytes(StandardCharsets.US_ASCII)));
+            Assert.fail();
+        } catch (ZipException expected) {
+        }
+        byte[] compressed = compress(data(), Deflater.DEFAULT_COMPRESSION);
+        //flip a bit in the crc
+        compressed[compressed.length - 8] ^= 1;
+        try {
+            readFully(GzipStreams.decompress(new ByteArrayInputStream(compressed)));
+            Assert.fail();
+        } catch (ZipException expected) {
+        }
+    }
+
+    @Test
+    public void testReadAfterCorruptTrailer() throws IOException {
+        byte[] data = data();
+        byte[] compressed = compress(data, Deflater.DEFAULT_COMPRESSION);
+        compressed[compressed.length - 8] ^= 1;
+        InputStream corrupt = GzipStreams.decompress(new ByteArrayInputStream(compressed));
+        try {
+            byte[] buffer = new byte[1000];
+            try {
+                while (corrupt.read(buffer) != -1) {
+                }
+                Assert.fail();
+            } catch (ZipException expected) {
+            }
+            //another stream may now be using a pooled inflater, which the failed stream must not touch
+            InputStream other = GzipStreams.decompress(new ByteArrayInputStream(compress(data, Deflater.DEFAULT_COMPRESSION)));
+            byte[] start = new byte[100];
+            Assert.assertEquals(start.length, other.read(start));
+            try {
+                corrupt.read(buffer);
+                Assert.fail();
+            } catch (ZipException expected) {
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(start);
+            out.write(readFully(other));
+            Assert.assertArrayEquals(data, out.toByteArray());
+        } finally {
+            corrupt.close();
+        }
+    }
+
+    private static byte[] compress(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = GzipStreams.compress(out, level)) {
+            //single bytes as well as arrays
+            for (int i = 0; i < Math.min(100, data.length); ++i) {
+                gzip.write(data[i]);
+            }
+            if (data.length > 100) {
+                gzip.write(data, 100, data.length - 100);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1000];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] data() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            sb.append("org.wildfly.httpclient.ejb.Invocation").append(i % 7);
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
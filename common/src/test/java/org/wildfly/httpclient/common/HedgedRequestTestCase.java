@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class HedgedRequestTestCase {
+
+    private static final String PATH = "/hedged";
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        AtomicBoolean stall = new AtomicBoolean();
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        HTTPTestServer.registerPathHandler(PATH, new BlockingHandler(exchange -> {
+            received.incrementAndGet();
+            if (stall.compareAndSet(true, false)) {
+                stalled.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            exchange.getResponseSender().send("ok");
+        }));
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.builder()
+                .set(HttpClientOptions.HEDGE_IDEMPOTENT_REQUESTS, true)
+                .set(HttpClientOptions.METRICS, metrics)
+                .getMap();
+        HttpConnectionPool pool = new HttpConnectionPool(4, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            //build up the response times the hedging delay is based on
+            for (int i = 0; i < 30; ++i) {
+                Assert.assertNull(send(context, new AtomicInteger()));
+            }
+            long hedged = metrics.getTargetMetrics(uri).getHedgedRequests();
+
+            //the first attempt stalls, so the second one provides the response
+            stall.set(true);
+            received.set(0);
+            AtomicInteger results = new AtomicInteger();
+            long start = System.nanoTime();
+            Assert.assertNull(send(context, results));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assert.assertTrue(stalled.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue("Took " + elapsed + "ms", elapsed < 5000);
+            Assert.assertEquals(2, received.get());
+            Assert.assertEquals(hedged + 1, metrics.getTargetMetrics(uri).getHedgedRequests());
+
+            //the stalled attempt was cancelled, so its response is never passed on
+            release.countDown();
+            Thread.sleep(200);
+            Assert.assertEquals(1, results.get());
+        } finally {
+            release.countDown();
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    private Throwable send(HttpTargetContext context, AtomicInteger results) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        context.sendIdempotentRequest(new ClientRequest().setMethod(Methods.GET).setPath(PATH), null, AuthenticationConfiguration.empty(),
+                (result, response, doneCallback) -> {
+                    results.incrementAndGet();
+                    IoUtils.safeClose(doneCallback);
+                    latch.countDown();
+                }, throwable -> {
+                    failure.set(throwable);
+                    latch.countDown();
+                }, null, null);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return failure.get();
+    }
+}
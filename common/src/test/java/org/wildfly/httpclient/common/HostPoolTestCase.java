@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.OptionMap;
+
+/**
+ * Tests the address selection of {@link HostPool} with several addresses, by reporting made up latencies and
+ * failures for them rather than connecting to anything.
+ */
+public class HostPoolTestCase {
+
+    private static final int SELECTIONS = 300;
+
+    @Test
+    public void testLoadBalancingAvoidsSlowAddress() throws Exception {
+        InetAddress slow = InetAddress.getByName("127.0.0.1");
+        HostPool hostPool = createHostPool(slow, InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.3"));
+        Map<InetAddress, Integer> selected = new HashMap<>();
+        for (int i = 0; i < SELECTIONS; ++i) {
+            HostPool.AddressResult result = hostPool.getAddress();
+            InetAddress address = result.getAddress();
+            selected.merge(address, 1, Integer::sum);
+            result.connectionOpened(TimeUnit.MILLISECONDS.toNanos(1));
+            result.requestCompleted(TimeUnit.MILLISECONDS.toNanos(address.equals(slow) ? 200 : 2));
+            result.connectionClosed();
+        }
+        //once the slow address has been measured it loses every comparison with a fast one
+        Assert.assertTrue(selected.toString(), selected.getOrDefault(slow, 0) <= 2);
+        for (Map.Entry<InetAddress, Integer> entry : selected.entrySet()) {
+            if (!entry.getKey().equals(slow)) {
+                Assert.assertTrue(selected.toString(), entry.getValue() > SELECTIONS / 4);
+            }
+        }
+    }
+
+    @Test
+    public void testLoadBalancingAvoidsFailingAddress() throws Exception {
+        InetAddress failing = InetAddress.getByName("127.0.0.1");
+        HostPool hostPool = createHostPool(failing, InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.3"));
+        Map<InetAddress, Integer> selected = new HashMap<>();
+        for (int i = 0; i < SELECTIONS; ++i) {
+            HostPool.AddressResult result = hostPool.getAddress();
+            InetAddress address = result.getAddress();
+            selected.merge(address, 1, Integer::sum);
+            if (address.equals(failing)) {
+                result.failed();
+            } else {
+                result.connectionOpened(TimeUnit.MILLISECONDS.toNanos(1));
+                result.requestCompleted(TimeUnit.MILLISECONDS.toNanos(5));
+                result.connectionClosed();
+            }
+        }
+        Assert.assertTrue(selected.toString(), selected.getOrDefault(failing, 0) <= 2);
+    }
+
+    @Test
+    public void testLoadBalancingSpreadsOpenConnections() throws Exception {
+        InetAddress first = InetAddress.getByName("127.0.0.1");
+        InetAddress second = InetAddress.getByName("127.0.0.2");
+        HostPool hostPool = createHostPool(first, second);
+        Map<InetAddress, Integer> open = new HashMap<>();
+        //the same latency for both, so the number of open connections decides
+        for (int i = 0; i < 20; ++i) {
+            HostPool.AddressResult result = hostPool.getAddress();
+            open.merge(result.getAddress(), 1, Integer::sum);
+            result.connectionOpened(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        Assert.assertEquals(open.toString(), 10, (int) open.get(first));
+        Assert.assertEquals(open.toString(), 10, (int) open.get(second));
+    }
+
+    @Test
+    public void testAbandonedProbeIsReleased() throws Exception {
+        OptionMap options = OptionMap.create(HttpClientOptions.CIRCUIT_BREAKER_THRESHOLD, 1, HttpClientOptions.CIRCUIT_BREAKER_BACKOFF, 1L);
+        HostPool hostPool = createHostPool(options, InetAddress.getByName("127.0.0.1"));
+        HostPool.AddressResult result = hostPool.getAddress();
+        result.getAddress();
+        result.failed();
+        Thread.sleep(10);
+
+        //the backoff has passed, so the next caller gets the probe and everyone else has to wait for it
+        HostPool.AddressResult probe = hostPool.getAddress();
+        probe.getAddress();
+        try {
+            hostPool.getAddress().getAddress();
+            Assert.fail("expected the address to be unavailable while it is being probed");
+        } catch (UnknownHostException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("WFHTTP000015"));
+            Assert.assertTrue(e.getCause() instanceof ConnectException);
+        }
+
+        //the probe never connected, so it must not keep the address out of use
+        probe.abandoned();
+        hostPool.getAddress().getAddress();
+    }
+
+    @Test
+    public void testUnhealthyAddresses() throws Exception {
+        InetAddress first = InetAddress.getByName("127.0.0.1");
+        InetAddress second = InetAddress.getByName("127.0.0.2");
+        HostPool hostPool = createHostPool(OptionMap.EMPTY, first, second);
+        hostPool.getAddress().getAddress();
+        List<HostPool.AddressResult> resolved = hostPool.getResolvedAddresses();
+        for (HostPool.AddressResult result : resolved) {
+            if (result.getAddress().equals(first)) {
+                result.healthCheckFailed();
+            }
+        }
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals(second, hostPool.getAddress().getAddress());
+        }
+
+        //once every address is unhealthy they are all used again
+        for (HostPool.AddressResult result : resolved) {
+            result.healthCheckFailed();
+        }
+        Set<InetAddress> selected = new HashSet<>();
+        for (int i = 0; i < 10; ++i) {
+            HostPool.AddressResult result = hostPool.getAddress();
+            selected.add(result.getAddress());
+            result.failed();
+        }
+        Assert.assertEquals(2, selected.size());
+    }
+
+    static HostPool createHostPool(InetAddress... addresses) throws Exception {
+        return createHostPool(OptionMap.create(HttpClientOptions.LOAD_BALANCE_ADDRESSES, true), addresses);
+    }
+
+    static HostPool createHostPool(OptionMap options, InetAddress... addresses) throws Exception {
+        return new HostPool(new URI("http://test.invalid:8080"), options) {
+            @Override
+            InetAddress[] lookup() {
+                return addresses;
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.marshalling.InputStreamByteInput;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.Marshalling;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+import org.junit.Test;
+
+/**
+ * Compares creating a new marshaller and unmarshaller for every invocation with taking them from a
+ * {@link MarshallerPool}, reporting the time and the bytes allocated per round trip. This is not run as part of the
+ * normal build, run it with {@code mvn test -pl common -Dtest=MarshallerPoolBenchmark}.
+ */
+public class MarshallerPoolBenchmark {
+
+    private static final int WARMUP = Integer.getInteger("benchmark.warmup", 50_000);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 200_000);
+
+    @Test
+    public void compareFreshAndPooled() throws Exception {
+        MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setVersion(2);
+        MarshallerPool pool = new MarshallerPool(configuration);
+        Object[] parameters = {"a parameter", 42, new HashMap<>(Collections.singletonMap("key", "value"))};
+        Map<String, Object> attachments = Collections.singletonMap("jboss.source.address", "127.0.0.1");
+
+        Invocation fresh = () -> roundTrip(HttpTargetContext.MARSHALLER_FACTORY.createMarshaller(configuration),
+                HttpTargetContext.MARSHALLER_FACTORY.createUnmarshaller(configuration), null, parameters, attachments);
+        Invocation pooled = () -> roundTrip(pool.getMarshaller(), pool.getUnmarshaller(), pool, parameters, attachments);
+        for (int i = 0; i < 2; ++i) {
+            run("fresh", fresh);
+            run("pooled", pooled);
+        }
+    }
+
+    private static void run(String name, Invocation invocation) throws Exception {
+        for (int i = 0; i < WARMUP; ++i) {
+            invocation.invoke();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            invocation.invoke();
+        }
+        long time = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("%-7s %8.1f ns/op %10d bytes/op%n", name, (double) time / ITERATIONS, allocated / ITERATIONS);
+    }
+
+    private static void roundTrip(Marshaller marshaller, Unmarshaller unmarshaller, MarshallerPool pool, Object[] parameters, Map<String, Object> attachments) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        marshaller.start(Marshalling.createByteOutput(out));
+        for (Object parameter : parameters) {
+            marshaller.writeObject(parameter);
+        }
+        marshaller.writeByte(attachments.size());
+        for (Map.Entry<String, Object> entry : attachments.entrySet()) {
+            marshaller.writeObject(entry.getKey());
+            marshaller.writeObject(entry.getValue());
+        }
+        marshaller.finish();
+
+        unmarshaller.start(new InputStreamByteInput(new ByteArrayInputStream(out.toByteArray())));
+        for (int i = 0; i < parameters.length; ++i) {
+            unmarshaller.readObject();
+        }
+        int count = unmarshaller.readByte();
+        for (int i = 0; i < count; ++i) {
+            unmarshaller.readObject();
+            unmarshaller.readObject();
+        }
+        unmarshaller.finish();
+        if (pool != null) {
+            pool.release(marshaller);
+            pool.release(unmarshaller);
+        }
+    }
+
+    private interface Invocation {
+        void invoke() throws Exception;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.marshalling.InputStreamByteInput;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.Marshalling;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.Unmarshaller;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MarshallerPoolTestCase {
+
+    @Test
+    public void testInstancesAreReusedAcrossStreams() throws Exception {
+        MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setVersion(2);
+        MarshallerPool pool = new MarshallerPool(configuration, 1);
+
+        Marshaller marshaller = pool.getMarshaller();
+        Unmarshaller unmarshaller = pool.getUnmarshaller();
+        pool.release(marshaller);
+        pool.release(unmarshaller);
+        for (int i = 0; i < 3; ++i) {
+            //the same list twice, so the second one is written as a back reference into the instance cache
+            List<String> value = new ArrayList<>(Arrays.asList("a", "b", Integer.toString(i)));
+            byte[] data = write(pool, value);
+            List<?> read = read(pool, data);
+            Assert.assertEquals(value, read);
+        }
+        Assert.assertSame(marshaller, pool.getMarshaller());
+        Assert.assertSame(unmarshaller, pool.getUnmarshaller());
+
+        //once the pool is empty new instances are created, and once it is full released ones are dropped
+        Marshaller other = pool.getMarshaller();
+        Assert.assertNotSame(marshaller, other);
+        pool.release(marshaller);
+        pool.release(other);
+        Assert.assertSame(marshaller, pool.getMarshaller());
+    }
+
+    private static byte[] write(MarshallerPool pool, Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Marshaller marshaller = pool.getMarshaller();
+        marshaller.start(Marshalling.createByteOutput(out));
+        marshaller.writeObject(value);
+        marshaller.writeObject(value);
+        marshaller.finish();
+        pool.release(marshaller);
+        return out.toByteArray();
+    }
+
+    private static List<?> read(MarshallerPool pool, byte[] data) throws Exception {
+        Unmarshaller unmarshaller = pool.getUnmarshaller();
+        unmarshaller.start(new InputStreamByteInput(new ByteArrayInputStream(data)));
+        List<?> first = (List<?>) unmarshaller.readObject();
+        Assert.assertSame(first, unmarshaller.readObject());
+        unmarshaller.finish();
+        pool.release(unmarshaller);
+        return first;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.server.handlers.PathHandler;
+import io.undertow.util.Methods;
+import io.undertow.util.NetworkUtils;
+
+/**
+ * Tests HTTP/2 multiplexing against a server that uses prior knowledge h2c, so every connection is multiplexed.
+ */
+@RunWith(HTTPTestServer.class)
+public class MultiplexingTestCase {
+
+    private static final int MAX_STREAMS = 3;
+    private static final String PATH = "/multiplexed";
+    private static final String HANG_PATH = "/multiplexed-hang";
+
+    private static final PathHandler PATH_HANDLER = new PathHandler();
+    private static Undertow server;
+
+    @BeforeClass
+    public static void startServer() {
+        server = Undertow.builder()
+                .addHttpListener(getPort(), HTTPTestServer.getHostAddress())
+                .setServerOption(UndertowOptions.ENABLE_HTTP2, true)
+                .setHandler(new BlockingHandler(PATH_HANDLER))
+                .build();
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+    }
+
+    static int getPort() {
+        return HTTPTestServer.getHostPort() + 2;
+    }
+
+    static URI getUri() throws Exception {
+        return new URI("h2c-prior://" + NetworkUtils.formatPossibleIpv6Address(HTTPTestServer.getHostAddress()) + ":" + getPort());
+    }
+
+    static void registerPathHandler(String path, HttpHandler handler) {
+        PATH_HANDLER.addPrefixPath(path, handler);
+    }
+
+    static HttpConnectionPool createPool(OptionMap extraOptions) throws Exception {
+        OptionMap options = OptionMap.builder()
+                .addAll(extraOptions)
+                .set(HttpClientOptions.MULTIPLEXING, true)
+                .getMap();
+        return new HttpConnectionPool(1, MAX_STREAMS, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(getUri(), options), -1);
+    }
+
+    @Test
+    public void testConcurrentRequestsShareConnection() throws Exception {
+        //every request waits until all of them have arrived, which can only happen if they run at the same time
+        CountDownLatch arrived = new CountDownLatch(MAX_STREAMS);
+        //each stream has its own server connection object, so the client port tells us which connection was used
+        Set<InetSocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+        registerPathHandler(PATH, exchange -> {
+            clientAddresses.add(exchange.getSourceAddress());
+            arrived.countDown();
+            arrived.await(10, TimeUnit.SECONDS);
+            exchange.getResponseSender().send("ok");
+        });
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        HttpConnectionPool pool = createPool(OptionMap.create(HttpClientOptions.METRICS, metrics));
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, getUri());
+            List<CompletableFuture<Void>> results = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < MAX_STREAMS; ++i) {
+                results.add(send(context, PATH));
+            }
+            for (CompletableFuture<Void> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals(0, arrived.getCount());
+            Assert.assertEquals(1, clientAddresses.size());
+            Assert.assertEquals(1, metrics.getTargetMetrics(getUri()).getConnectionsOpened());
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testStreamSlotsAreReleased() throws Exception {
+        HttpConnectionPool pool = createPool(OptionMap.EMPTY);
+        try {
+            List<HttpConnectionPool.ConnectionHandle> handles = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < MAX_STREAMS; ++i) {
+                handles.add(acquire(pool).get(10, TimeUnit.SECONDS));
+            }
+            for (HttpConnectionPool.ConnectionHandle handle : handles) {
+                Assert.assertTrue(handle.getConnection().isMultiplexingSupported());
+                Assert.assertSame(handles.get(0).getConnection(), handle.getConnection());
+            }
+
+            //every stream of the only connection is in use, so the next request has to wait for one to be released
+            CompletableFuture<HttpConnectionPool.ConnectionHandle> waiting = acquire(pool);
+            Thread.sleep(200);
+            Assert.assertFalse(waiting.isDone());
+            handles.get(1).done(false);
+            HttpConnectionPool.ConnectionHandle next = waiting.get(10, TimeUnit.SECONDS);
+            Assert.assertSame(handles.get(0).getConnection(), next.getConnection());
+
+            //releasing a handle twice must not free a second slot
+            handles.get(1).done(false);
+            waiting = acquire(pool);
+            Thread.sleep(200);
+            Assert.assertFalse(waiting.isDone());
+            next.done(false);
+            waiting.get(10, TimeUnit.SECONDS).done(false);
+            handles.get(0).done(false);
+            handles.get(2).done(false);
+
+            //once every stream is done the connection is idle, and is reused rather than a new one opened
+            next = acquire(pool).get(10, TimeUnit.SECONDS);
+            Assert.assertSame(handles.get(0).getConnection(), next.getConnection());
+            next.done(false);
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testUnplaceableRequestDoesNotBlockQueue() throws Exception {
+        HttpConnectionPool pool = createPool(OptionMap.EMPTY);
+        try {
+            HttpConnectionPool.ConnectionHandle first = acquire(pool).get(10, TimeUnit.SECONDS);
+            //the only connection slot is taken, so a request that needs a new connection has to wait
+            CompletableFuture<HttpConnectionPool.ConnectionHandle> newConnection = new CompletableFuture<>();
+            pool.getNewConnection(newConnection::complete, newConnection::completeExceptionally, null);
+            Thread.sleep(200);
+            Assert.assertFalse(newConnection.isDone());
+            //but the requests behind it can still use the free streams of the connection that is in use
+            HttpConnectionPool.ConnectionHandle second = acquire(pool).get(10, TimeUnit.SECONDS);
+            HttpConnectionPool.ConnectionHandle third = acquire(pool).get(10, TimeUnit.SECONDS);
+            Assert.assertSame(first.getConnection(), second.getConnection());
+            Assert.assertSame(first.getConnection(), third.getConnection());
+            Assert.assertFalse(newConnection.isDone());
+            first.done(false);
+            second.done(false);
+            third.done(false);
+            HttpConnectionPool.ConnectionHandle next = newConnection.get(10, TimeUnit.SECONDS);
+            Assert.assertNotSame(first.getConnection(), next.getConnection());
+            next.done(false);
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testTimedOutStreamsKeepTheirSlots() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        registerPathHandler(HANG_PATH, exchange -> release.await(10, TimeUnit.SECONDS));
+        registerPathHandler(PATH, exchange -> exchange.getResponseSender().send("ok"));
+        HttpConnectionPool pool = createPool(OptionMap.create(HttpClientOptions.REQUEST_TIMEOUT, 300L));
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, getUri());
+            //fill every stream of the only connection with requests the server never answers in time
+            List<CompletableFuture<Void>> results = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < MAX_STREAMS; ++i) {
+                results.add(send(context, HANG_PATH));
+            }
+            for (CompletableFuture<Void> result : results) {
+                assertTimedOut(result);
+            }
+            //the timed out streams are still open on the server, so they keep their slots until it responds
+            assertTimedOut(send(context, PATH));
+            release.countDown();
+            send(context, PATH).get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testTimedOutLastStreamClosesConnection() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        registerPathHandler(HANG_PATH, exchange -> release.await(10, TimeUnit.SECONDS));
+        registerPathHandler(PATH, exchange -> exchange.getResponseSender().send("ok"));
+        HttpConnectionPool pool = createPool(OptionMap.create(HttpClientOptions.REQUEST_TIMEOUT, 300L));
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, getUri());
+            assertTimedOut(send(context, HANG_PATH));
+            //nothing else used the connection, so it was closed, which cancels the stream and frees the slot
+            send(context, PATH).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, release.getCount());
+        } finally {
+            release.countDown();
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    private static void assertTimedOut(CompletableFuture<Void> result) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            Assert.fail("expected the request to time out");
+        } catch (ExecutionException expected) {
+        }
+    }
+
+    static CompletableFuture<HttpConnectionPool.ConnectionHandle> acquire(HttpConnectionPool pool) {
+        CompletableFuture<HttpConnectionPool.ConnectionHandle> result = new CompletableFuture<>();
+        pool.getConnection(result::complete, result::completeExceptionally, false, null);
+        return result;
+    }
+
+    static CompletableFuture<Void> send(HttpTargetContext context, String path) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        context.sendRequest(new ClientRequest().setMethod(Methods.GET).setPath(path), null, AuthenticationConfiguration.empty(), null,
+                (input, response, closeable) -> {
+                    IoUtils.safeClose(closeable);
+                    result.complete(null);
+                }, result::completeExceptionally, null, null);
+        return result;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class PresetDictionaryCodingTestCase {
+
+    private static final String PATH = "/preset-dictionary";
+    private static final byte[] DICTIONARY = "java.lang.Throwable detailMessage stackTrace org.wildfly.httpclient.Invocation"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final PresetDictionaryCoding CODING = PresetDictionaryCoding.register("x-test-deflate", DICTIONARY);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = "org.wildfly.httpclient.Invocation failed with java.lang.Throwable, see detailMessage"
+                .getBytes(StandardCharsets.US_ASCII);
+        for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+            //repeated, so later iterations run on pooled zlib state that had a different dictionary or none
+            for (int i = 0; i < 2; ++i) {
+                byte[] compressed = compress(CODING, data, level);
+                Assert.assertArrayEquals(data, readFully(CODING.decompress(new ByteArrayInputStream(compressed))));
+                Assert.assertArrayEquals(data, readFully(GzipStreams.decompress(new ByteArrayInputStream(gzip(data, level)))));
+            }
+        }
+        Assert.assertArrayEquals(new byte[0], readFully(CODING.decompress(new ByteArrayInputStream(compress(CODING, new byte[0], 1)))));
+    }
+
+    @Test
+    public void testCompatibleWithPlainZlib() throws Exception {
+        byte[] data = "java.lang.Throwable: detailMessage".getBytes(StandardCharsets.US_ASCII);
+        byte[] compressed = compress(CODING, data, Deflater.DEFAULT_COMPRESSION);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(compressed);
+            byte[] result = new byte[data.length];
+            Assert.assertEquals(data.length, inflater.inflate(result));
+            Assert.assertTrue(inflater.finished());
+            Assert.assertArrayEquals(data, result);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Test
+    public void testDictionaryHelpsSmallPayloads() throws IOException {
+        byte[] data = "java.lang.Throwable detailMessage stackTrace".getBytes(StandardCharsets.US_ASCII);
+        byte[] withDictionary = compress(CODING, data, Deflater.DEFAULT_COMPRESSION);
+        byte[] gzip = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        Assert.assertTrue(withDictionary.length < data.length / 4);
+        Assert.assertTrue(withDictionary.length < gzip.length);
+    }
+
+    @Test
+    public void testLookup() {
+        Assert.assertSame(CODING, PresetDictionaryCoding.forName("X-Test-Deflate"));
+        Assert.assertSame(CODING, PresetDictionaryCoding.register("x-test-deflate", new byte[1]));
+        Assert.assertNull(PresetDictionaryCoding.forName("x-unknown"));
+    }
+
+    @Test
+    public void testNegotiation() throws Exception {
+        byte[] message = "org.wildfly.httpclient.Invocation".getBytes(StandardCharsets.US_ASCII);
+        List<String> requestEncodings = new CopyOnWriteArrayList<>();
+        AtomicBoolean advertise = new AtomicBoolean(true);
+        HTTPTestServer.registerPathHandler(PATH, new BlockingHandler(exchange -> {
+            String encoding = exchange.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING);
+            requestEncodings.add(encoding);
+            InputStream in = exchange.getInputStream();
+            if (CODING.getName().equals(encoding)) {
+                in = CODING.decompress(in);
+            } else if (Headers.GZIP.toString().equals(encoding)) {
+                in = GzipStreams.decompress(in);
+            }
+            Assert.assertArrayEquals(message, readFully(in));
+            if (advertise.get()) {
+                exchange.getResponseHeaders().put(Headers.ACCEPT_ENCODING, "gzip;q=0.5, X-Test-Deflate");
+            }
+            exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, CODING.getName());
+            try (OutputStream out = CODING.compress(exchange.getOutputStream(), Deflater.DEFAULT_COMPRESSION)) {
+                out.write(message);
+            }
+        }));
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(uri), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            //nothing is known about the server on a new connection, so the request falls back to gzip
+            Assert.assertArrayEquals(message, send(context, message));
+            Assert.assertArrayEquals(message, send(context, message));
+
+            //a server without the coding behind the same connection, e.g. after a load balancer switched over
+            advertise.set(false);
+            Assert.assertArrayEquals(message, send(context, message));
+            Assert.assertArrayEquals(message, send(context, message));
+            Assert.assertEquals(Arrays.asList(Headers.GZIP.toString(), CODING.getName(), CODING.getName(), Headers.GZIP.toString()), requestEncodings);
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    /**
+     * Sends the message in the preset dictionary coding if the connection allows it, picking the coding from the
+     * request header once the request has a connection like the EJB client does.
+     */
+    private static byte[] send(HttpTargetContext context, byte[] message) throws Exception {
+        ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(PATH);
+        request.getRequestHeaders().put(Headers.CONTENT_TYPE, "application/octet-stream");
+        request.getRequestHeaders().put(Headers.CONTENT_ENCODING, CODING.getName());
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        context.sendRequest(request, null, AuthenticationConfiguration.empty(), output -> {
+            PresetDictionaryCoding coding = PresetDictionaryCoding.forName(request.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING));
+            try (OutputStream out = coding != null ? coding.compress(output, Deflater.DEFAULT_COMPRESSION) : GzipStreams.compress(output, Deflater.DEFAULT_COMPRESSION)) {
+                out.write(message);
+            }
+        }, (input, response, closeable) -> {
+            try {
+                result.complete(readFully(input));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            } finally {
+                IoUtils.safeClose(closeable);
+            }
+        }, result::completeExceptionally, null, null);
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    private static byte[] compress(PresetDictionaryCoding coding, byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = coding.compress(out, level)) {
+            compressed.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = GzipStreams.compress(out, level)) {
+            compressed.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int r;
+        while ((r = in.read(buf)) != -1) {
+            out.write(buf, 0, r);
+        }
+        return out.toByteArray();
+    }
+}
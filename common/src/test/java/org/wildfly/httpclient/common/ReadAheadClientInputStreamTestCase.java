@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class ReadAheadClientInputStreamTestCase {
+
+    private static final String PATH = "/read-ahead";
+    private static final int SIZE = 2 * 1024 * 1024;
+
+    @Test
+    public void testLargeBody() throws Exception {
+        registerHandler();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.create(HttpClientOptions.READ_AHEAD_BUFFERS, 4);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            //a fast reader that waits for the IO thread, and a slow one that it has to wait for
+            Assert.assertEquals(SIZE + " " + checksum(SIZE), read(context, false, SIZE));
+            Assert.assertEquals(SIZE + " " + checksum(SIZE), read(context, true, SIZE));
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws Exception {
+        registerHandler();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.create(HttpClientOptions.READ_AHEAD_BUFFERS, 2);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            //closing drains the rest of the response, so the single connection can be used again
+            Assert.assertEquals(1000 + " " + checksum(1000), read(context, false, 1000));
+            Assert.assertEquals(SIZE + " " + checksum(SIZE), read(context, false, SIZE));
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    private static void registerHandler() {
+        HTTPTestServer.registerPathHandler(PATH, new BlockingHandler(exchange -> {
+            byte[] chunk = new byte[10_000];
+            int written = 0;
+            try (OutputStream out = exchange.getOutputStream()) {
+                while (written < SIZE) {
+                    int len = Math.min(SIZE - written, chunk.length);
+                    for (int i = 0; i < len; ++i) {
+                        chunk[i] = (byte) value(written + i);
+                    }
+                    out.write(chunk, 0, len);
+                    written += len;
+                }
+            }
+        }));
+    }
+
+    private static String read(HttpTargetContext context, boolean slow, int limit) throws Exception {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath(PATH);
+        context.sendRequest(request, null, AuthenticationConfiguration.empty(), null, (input, response, closeable) -> {
+            try (InputStream in = input) {
+                //single bytes and arrays, as unmarshallers read both
+                byte[] buffer = new byte[5000];
+                long sum = 0;
+                int count = 0;
+                while (count < limit) {
+                    if (count % 3 == 0) {
+                        int b = in.read();
+                        if (b == -1) {
+                            break;
+                        }
+                        sum = sum * 31 + b;
+                        ++count;
+                    } else {
+                        int read = in.read(buffer, 0, Math.min(buffer.length, limit - count));
+                        if (read == -1) {
+                            break;
+                        }
+                        for (int i = 0; i < read; ++i) {
+                            sum = sum * 31 + (buffer[i] & 0xFF);
+                        }
+                        count += read;
+                    }
+                    if (slow && count % (128 * 1024) < 5000) {
+                        //falls behind, so the ring fills up and the IO thread has to stop reading
+                        Thread.sleep(10);
+                    }
+                }
+                if (count == SIZE) {
+                    Assert.assertEquals(-1, in.read());
+                }
+                result.complete(count + " " + sum);
+            } catch (IOException | InterruptedException | AssertionError e) {
+                result.completeExceptionally(e);
+            } finally {
+                IoUtils.safeClose(closeable);
+            }
+        }, result::completeExceptionally, null, null);
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    private static int value(int index) {
+        return (index * 7 + index / 1000) & 0xFF;
+    }
+
+    private static long checksum(int size) {
+        long sum = 0;
+        for (int i = 0; i < size; ++i) {
+            sum = sum * 31 + value(i);
+        }
+        return sum;
+    }
+}
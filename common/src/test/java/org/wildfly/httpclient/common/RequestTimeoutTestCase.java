@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class RequestTimeoutTestCase {
+
+    private static final String SLOW_PATH = "/slow";
+    private static final String FAST_PATH = "/fast";
+    private static final String EXPIRED_PATH = "/expired";
+    private static final long REQUEST_TIMEOUT = 500;
+
+    @Test
+    public void testRequestTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> sentTimeout = new AtomicReference<>();
+        HTTPTestServer.registerPathHandler(SLOW_PATH, new BlockingHandler(exchange -> {
+            sentTimeout.set(exchange.getRequestHeaders().getFirst(HttpTargetContext.REQUEST_TIMEOUT));
+            release.await(10, TimeUnit.SECONDS);
+        }));
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.create(HttpClientOptions.REQUEST_TIMEOUT, REQUEST_TIMEOUT);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            long start = System.nanoTime();
+            context.sendRequest(new ClientRequest().setMethod(Methods.GET).setPath(SLOW_PATH), null, AuthenticationConfiguration.empty(), null,
+                    (result, response, doneCallback) -> {
+                        IoUtils.safeClose(doneCallback);
+                        latch.countDown();
+                    }, throwable -> {
+                        failure.set(throwable);
+                        latch.countDown();
+                    }, null, null);
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            release.countDown();
+            Assert.assertTrue(failure.get() instanceof SocketTimeoutException);
+            Assert.assertTrue(failure.get().getMessage().contains("WFHTTP000017"));
+            Assert.assertTrue("Timed out after " + elapsed + "ms", elapsed >= REQUEST_TIMEOUT && elapsed < REQUEST_TIMEOUT * 4);
+            Assert.assertNotNull(sentTimeout.get());
+            long remaining = Long.parseLong(sentTimeout.get());
+            Assert.assertTrue(remaining > 0 && remaining <= REQUEST_TIMEOUT);
+
+            //the timed out connection was closed, so the next request gets a new one
+            HTTPTestServer.registerPathHandler(FAST_PATH, exchange -> exchange.getResponseSender().send("ok"));
+            AtomicReference<Throwable> secondFailure = new AtomicReference<>();
+            CountDownLatch secondLatch = new CountDownLatch(1);
+            context.sendRequest(new ClientRequest().setMethod(Methods.GET).setPath(FAST_PATH), null, AuthenticationConfiguration.empty(), null,
+                    (result, response, doneCallback) -> {
+                        IoUtils.safeClose(doneCallback);
+                        secondLatch.countDown();
+                    }, throwable -> {
+                        secondFailure.set(throwable);
+                        secondLatch.countDown();
+                    }, null, null);
+            Assert.assertTrue(secondLatch.await(5, TimeUnit.SECONDS));
+            Assert.assertNull(secondFailure.get());
+        } finally {
+            release.countDown();
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testExpiredRequestIsNotRun() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        HTTPTestServer.registerPathHandler(EXPIRED_PATH, new RequestDeadlineHandler(new BlockingHandler(exchange -> runs.incrementAndGet())));
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(uri), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            //the client has no time left by the time the request arrives
+            ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath(EXPIRED_PATH);
+            request.getRequestHeaders().put(HttpTargetContext.REQUEST_TIMEOUT, 0);
+            context.sendRequest(request, null, AuthenticationConfiguration.empty(), null,
+                    (result, response, doneCallback) -> {
+                        IoUtils.safeClose(doneCallback);
+                        latch.countDown();
+                    }, throwable -> {
+                        failure.set(throwable);
+                        latch.countDown();
+                    }, null, null);
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Assert.assertNotNull(failure.get());
+            Assert.assertEquals(0, runs.get());
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+import javax.net.ssl.SSLContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.Xnio;
+
+public class SslInstanceCacheTestCase {
+
+    @Test
+    public void testBoundedCache() throws Exception {
+        URI uri = new URI("https://localhost:8443");
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        SslInstanceCache cache = new SslInstanceCache(Xnio.getInstance(), 2, metrics, uri);
+        SSLContext first = newContext();
+        SSLContext second = newContext();
+
+        Assert.assertSame(cache.get(first), cache.get(first));
+        cache.get(second);
+        //first is now the least recently used
+        cache.get(newContext());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3, metrics.getTargetMetrics(uri).getSslInstancesCreated());
+        Assert.assertEquals(1, metrics.getTargetMetrics(uri).getSslInstancesEvicted());
+
+        cache.get(second);
+        Assert.assertEquals(3, metrics.getTargetMetrics(uri).getSslInstancesCreated());
+        cache.get(first);
+        Assert.assertEquals(4, metrics.getTargetMetrics(uri).getSslInstancesCreated());
+    }
+
+    private static SSLContext newContext() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+        return context;
+    }
+}
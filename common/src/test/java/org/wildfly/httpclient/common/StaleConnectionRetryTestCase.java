@@ -0,0 +1,190 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class StaleConnectionRetryTestCase {
+
+    private static final String PATH = "/stale-connection";
+    private static final String SLOW_PATH = "/stale-connection-slow";
+
+    private final AtomicBoolean dropNext = new AtomicBoolean();
+
+    @Test
+    public void testStaleConnectionIsRetried() throws Exception {
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = createPool(OptionMap.create(HttpClientOptions.METRICS, metrics), uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            Assert.assertNull(send(context));
+
+            //the server closes the pooled connection when it is reused, so the request is sent again on a new one
+            dropNext.set(true);
+            Assert.assertNull(send(context));
+            Assert.assertFalse(dropNext.get());
+            HttpTargetMetrics targetMetrics = metrics.getTargetMetrics(uri);
+            Assert.assertEquals(1, targetMetrics.getRetriedRequests());
+            Assert.assertEquals(2, targetMetrics.getConnectionsOpened());
+            Assert.assertEquals(0, targetMetrics.getRequestFailures());
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = createPool(OptionMap.create(HttpClientOptions.RETRY_BUDGET, new RetryBudget(0)), uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            Assert.assertNull(send(context));
+
+            //there is no budget for retries, so the failure is reported
+            dropNext.set(true);
+            Assert.assertTrue(send(context) instanceof IOException);
+            Assert.assertNull(send(context));
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testWrittenPostIsNotRetried() throws Exception {
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        HttpConnectionPool pool = createPool(OptionMap.create(HttpClientOptions.METRICS, metrics), uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            Assert.assertNull(send(context));
+
+            //the server has received the whole request before it drops the connection, so it may have processed it
+            dropNext.set(true);
+            Assert.assertTrue(send(context, Methods.POST, false) instanceof IOException);
+            Assert.assertEquals(0, metrics.getTargetMetrics(uri).getRetriedRequests());
+
+            //a POST may have side effects on the server, so it is not treated as idempotent even if the caller asks
+            Assert.assertNull(send(context));
+            dropNext.set(true);
+            Assert.assertTrue(send(context, Methods.POST, true) instanceof IOException);
+            Assert.assertEquals(0, metrics.getTargetMetrics(uri).getRetriedRequests());
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestIsNotRetried() throws Exception {
+        AtomicInteger received = new AtomicInteger();
+        HTTPTestServer.registerPathHandler(SLOW_PATH, new BlockingHandler(exchange -> {
+            received.incrementAndGet();
+            Thread.sleep(2000);
+        }));
+        InMemoryHttpClientMetrics metrics = new InMemoryHttpClientMetrics();
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.builder()
+                .set(HttpClientOptions.METRICS, metrics)
+                .set(HttpClientOptions.REQUEST_TIMEOUT, 1000L)
+                .getMap();
+        HttpConnectionPool pool = createPool(options, uri);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            Assert.assertNull(send(context));
+
+            //the timeout closes the reused connection, which must not be mistaken for a stale connection
+            Assert.assertTrue(send(context, SLOW_PATH) instanceof SocketTimeoutException);
+            Thread.sleep(2000);
+            Assert.assertEquals(1, received.get());
+            Assert.assertEquals(0, metrics.getTargetMetrics(uri).getRetriedRequests());
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    private HttpConnectionPool createPool(OptionMap options, URI uri) {
+        HTTPTestServer.registerPathHandler(PATH, exchange -> {
+            if (dropNext.compareAndSet(true, false)) {
+                IoUtils.safeClose(exchange.getConnection());
+                return;
+            }
+            exchange.getResponseSender().send("ok");
+        });
+        return new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+    }
+
+    private Throwable send(HttpTargetContext context) throws InterruptedException {
+        return send(context, PATH);
+    }
+
+    private Throwable send(HttpTargetContext context, String path) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        context.sendRequest(new ClientRequest().setMethod(Methods.GET).setPath(path), null, AuthenticationConfiguration.empty(), null,
+                (result, response, doneCallback) -> {
+                    IoUtils.safeClose(doneCallback);
+                    latch.countDown();
+                }, throwable -> {
+                    failure.set(throwable);
+                    latch.countDown();
+                }, null, null);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return failure.get();
+    }
+
+    private Throwable send(HttpTargetContext context, HttpString method, boolean idempotent) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        ClientRequest request = new ClientRequest().setMethod(method).setPath(PATH);
+        HttpTargetContext.HttpResultHandler resultHandler = (result, response, doneCallback) -> {
+            IoUtils.safeClose(doneCallback);
+            latch.countDown();
+        };
+        HttpTargetContext.HttpFailureHandler failureHandler = throwable -> {
+            failure.set(throwable);
+            latch.countDown();
+        };
+        if (idempotent) {
+            context.sendIdempotentRequest(request, null, AuthenticationConfiguration.empty(), resultHandler, failureHandler, null, null, false);
+        } else {
+            context.sendRequest(request, null, AuthenticationConfiguration.empty(), null, resultHandler, failureHandler, null, null);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return failure.get();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.OptionMap;
+
+/**
+ * Measures how many connections a pool can hand out and take back per second when many threads use it at once,
+ * with and without striping. No requests are sent, so this only measures the pool's own bookkeeping. This is not run
+ * as part of the normal build, run it with {@code mvn test -pl common -Dtest=StripedPoolBenchmark}.
+ */
+@RunWith(HTTPTestServer.class)
+public class StripedPoolBenchmark {
+
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 32);
+    private static final long DURATION_MILLIS = Long.getLong("benchmark.duration", 5000);
+
+    @Test
+    public void compareStriping() throws Exception {
+        run("single", OptionMap.EMPTY);
+        run("striped", OptionMap.create(HttpClientOptions.STRIPING, true));
+        //again, so neither result includes the JIT warming up
+        run("single", OptionMap.EMPTY);
+        run("striped", OptionMap.create(HttpClientOptions.STRIPING, true));
+    }
+
+    private void run(String name, OptionMap options) throws Exception {
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        //a connection for every thread, so threads only ever wait for the pool itself
+        OptionMap poolOptions = OptionMap.builder().addAll(options).set(HttpClientOptions.MAX_PENDING_REQUESTS, THREADS * 2).getMap();
+        HttpConnectionPool pool = new HttpConnectionPool(THREADS, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), poolOptions, new HostPool(uri), -1);
+        try {
+            LongAdder operations = new LongAdder();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(THREADS);
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+            for (int i = 0; i < THREADS; ++i) {
+                new Thread(() -> {
+                    try {
+                        while (System.nanoTime() < end) {
+                            CompletableFuture<HttpConnectionPool.ConnectionHandle> connection = new CompletableFuture<>();
+                            pool.getConnection(connection::complete, connection::completeExceptionally, false, null);
+                            connection.get(10, TimeUnit.SECONDS).done(false);
+                            operations.increment();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }).start();
+            }
+            done.await();
+            if (failure.get() != null) {
+                throw new RuntimeException(failure.get());
+            }
+            System.out.printf("%-8s %10.0f acquire/release per second with %d threads%n", name, operations.sum() * 1000.0 / DURATION_MILLIS, THREADS);
+        } finally {
+            pool.close();
+        }
+    }
+}
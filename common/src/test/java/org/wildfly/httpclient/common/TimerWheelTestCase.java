@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(HTTPTestServer.class)
+public class TimerWheelTestCase {
+
+    @Test
+    public void testScheduleRescheduleAndCancel() throws Exception {
+        TimerWheel wheel = TimerWheel.forThread(HTTPTestServer.getWorker().getIoThread(0));
+        Assert.assertSame(wheel, TimerWheel.forThread(HTTPTestServer.getWorker().getIoThread(0)));
+
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout timeout = new TimerWheel.Timeout(() -> {
+            runs.incrementAndGet();
+            fired.countDown();
+        });
+        long start = System.nanoTime();
+        wheel.schedule(timeout, 100, TimeUnit.MILLISECONDS);
+        //moving it replaces the earlier schedule
+        wheel.schedule(timeout, 300, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Fired after " + elapsed + "ms", elapsed >= 300);
+        Thread.sleep(200);
+        Assert.assertEquals(1, runs.get());
+
+        AtomicInteger cancelled = new AtomicInteger();
+        TimerWheel.Timeout cancelledTimeout = new TimerWheel.Timeout(cancelled::incrementAndGet);
+        wheel.schedule(cancelledTimeout, 100, TimeUnit.MILLISECONDS);
+        cancelledTimeout.cancel();
+        //a timeout that is already due fires on the next tick
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(new TimerWheel.Timeout(later::countDown), 0, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(later.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        Assert.assertEquals(0, cancelled.get());
+    }
+
+    @Test
+    public void testEarlierTimeoutIsNotDelayedByLaterOne() throws Exception {
+        TimerWheel wheel = TimerWheel.forThread(HTTPTestServer.getWorker().getIoThread(1));
+        //the wheel only wakes up for the earliest timeout, so one scheduled in front of it has to move the wake up
+        TimerWheel.Timeout later = new TimerWheel.Timeout(() -> {
+        });
+        wheel.schedule(later, 10, TimeUnit.SECONDS);
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(new TimerWheel.Timeout(fired::countDown), 100, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("Fired after " + elapsed + "ms", elapsed >= 100 && elapsed < 2000);
+        later.cancel();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import io.undertow.client.ClientRequest;
+import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+
+@RunWith(HTTPTestServer.class)
+public class WildflyClientOutputStreamTestCase {
+
+    private static final String PATH = "/client-output-stream";
+    private static final int SIZE = 2 * 1024 * 1024;
+
+    @Test
+    public void testLargeBodyWithSlowReader() throws Exception {
+        HTTPTestServer.registerPathHandler(PATH, new BlockingHandler(exchange -> {
+            long sum = 0;
+            long count = 0;
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    for (int i = 0; i < read; ++i) {
+                        sum = sum * 31 + (buffer[i] & 0xFF);
+                    }
+                    count += read;
+                    if (count % (128 * 1024) < read) {
+                        //falls behind, so the client has to wait for queued buffers to be written
+                        Thread.sleep(10);
+                    }
+                }
+            }
+            exchange.getResponseSender().send(count + " " + sum);
+        }));
+        URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        OptionMap options = OptionMap.create(HttpClientOptions.MAX_BUFFERED_REQUEST_SIZE, 0);
+        HttpConnectionPool pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), options, new HostPool(uri, options), -1);
+        try {
+            HttpTargetContext context = new HttpTargetContext(pool, false, uri);
+            for (int i = 0; i < 2; ++i) {
+                CompletableFuture<String> result = new CompletableFuture<>();
+                ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(PATH);
+                request.getRequestHeaders().put(Headers.CONTENT_TYPE, "application/octet-stream");
+                context.sendRequest(request, null, AuthenticationConfiguration.empty(), output -> {
+                    //single bytes, small arrays and arrays larger than a pooled buffer, as marshallers write all of them
+                    byte[] chunk = new byte[100_000];
+                    int written = 0;
+                    while (written < SIZE) {
+                        if (written % 3 == 0) {
+                            output.write(value(written++));
+                        } else {
+                            int len = Math.min(SIZE - written, written % 2 == 0 ? 17 : chunk.length);
+                            for (int j = 0; j < len; ++j) {
+                                chunk[j] = (byte) value(written + j);
+                            }
+                            output.write(chunk, 0, len);
+                            written += len;
+                        }
+                    }
+                }, (input, response, closeable) -> {
+                    try {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[1024];
+                        int read;
+                        while ((read = input.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                        result.complete(new String(out.toByteArray(), StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        result.completeExceptionally(e);
+                    } finally {
+                        IoUtils.safeClose(closeable);
+                    }
+                }, result::completeExceptionally, null, null);
+                Assert.assertEquals(SIZE + " " + checksum(), result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            IoUtils.safeClose(pool);
+        }
+    }
+
+    private static int value(int index) {
+        return (index * 7 + index / 1000) & 0xFF;
+    }
+
+    private static long checksum() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; ++i) {
+            sum = sum * 31 + value(i);
+        }
+        return sum;
+    }
+}
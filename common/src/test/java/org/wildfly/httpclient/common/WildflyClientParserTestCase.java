@@ -40,6 +40,8 @@ public class WildflyClientParserTestCase {
         Assert.assertEquals(1, builder.getMaxConnections());
         Assert.assertEquals(1, builder.getMaxStreamsPerConnection());
         Assert.assertEquals(false, builder.getEagerlyAcquireSession());
+        Assert.assertNull(builder.getEnableMultiplexing());
+        Assert.assertEquals(0, builder.getPriorityOverdraft());
 
 
         Assert.assertEquals(1, builder.getTargets().size());
@@ -49,6 +51,8 @@ public class WildflyClientParserTestCase {
         Assert.assertEquals(20, context.getMaxConnections());
         Assert.assertEquals(20, context.getMaxStreamsPerConnection());
         Assert.assertEquals(true, context.getEagerlyAcquireSession());
+        Assert.assertEquals(true, context.getEnableMultiplexing());
+        Assert.assertEquals(2, context.getPriorityOverdraft());
 
         Assert.assertEquals(new URI("http://localhost:8080"), context.getUri());
 
@@ -22,11 +22,18 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.jboss.ejb.server.Association;
 import org.jboss.ejb.server.CancelHandle;
+import org.wildfly.httpclient.common.CompressionStatistics;
+import org.wildfly.httpclient.common.PresetDictionaryCoding;
 import org.wildfly.transaction.client.LocalTransactionContext;
+import io.undertow.conduits.DeflatingStreamSinkConduit;
 import io.undertow.conduits.GzipStreamSourceConduit;
+import io.undertow.conduits.InflatingStreamSourceConduit;
+import io.undertow.predicate.Predicate;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.AllowedMethodsHandler;
 import io.undertow.server.handlers.PathHandler;
@@ -36,6 +43,8 @@ import io.undertow.server.handlers.encoding.GzipEncodingProvider;
 import io.undertow.server.handlers.encoding.RequestEncodingHandler;
 import io.undertow.util.Headers;
 import io.undertow.util.Methods;
+import io.undertow.util.ObjectPool;
+import io.undertow.util.SimpleObjectPool;
 
 /**
  * @author Stuart Douglas
@@ -44,12 +53,28 @@ public class EjbHttpService {
 
     static final String JSESSIONID = "JSESSIONID";
 
+    /**
+     * The deflate level used for compressed responses
+     */
+    static final int COMPRESSION_LEVEL = Integer.getInteger("org.wildfly.httpclient.ejb.compression-level", Deflater.DEFAULT_COMPRESSION);
+    /**
+     * If this is set invocation results are only compressed if they are larger than this many bytes and look
+     * compressible, otherwise they are compressed whenever the client accepts it
+     */
+    private static final int COMPRESSION_THRESHOLD = Integer.getInteger("org.wildfly.httpclient.ejb.compression-threshold", 0);
+    private static final String REQUEST_ENCODINGS = HttpProtocolV1Dictionary.ENCODING + ", " + Headers.GZIP;
+    /**
+     * The number of idle deflaters, and of idle inflaters, that are kept for reuse
+     */
+    private static final int ZLIB_POOL_SIZE = 32;
+
     private final Association association;
     private final ExecutorService executorService;
     private final LocalTransactionContext localTransactionContext;
     private final Function<String, Boolean> classResolverFilter;
 
     private final Map<InvocationIdentifier, CancelHandle> cancellationFlags = new ConcurrentHashMap<>();
+    private final CompressionStatistics responseCompression = new CompressionStatistics();
 
     public EjbHttpService(Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext) {
         this(association, executorService, localTransactionContext, null);
@@ -65,14 +90,46 @@ public class EjbHttpService {
 
     public HttpHandler createHttpHandler() {
         PathHandler pathHandler = new PathHandler();
-        pathHandler.addPrefixPath("/v1/invoke", new AllowedMethodsHandler(new HttpInvocationHandler(association, executorService, localTransactionContext, cancellationFlags, classResolverFilter), Methods.POST))
+        pathHandler.addPrefixPath("/v1/invoke", new AllowedMethodsHandler(new HttpInvocationHandler(association, executorService, localTransactionContext, cancellationFlags, classResolverFilter, COMPRESSION_THRESHOLD, responseCompression), Methods.POST))
                 .addPrefixPath("/v1/open", new AllowedMethodsHandler(new HttpSessionOpenHandler(association, executorService, localTransactionContext), Methods.POST))
                 .addPrefixPath("/v1/cancel", new AllowedMethodsHandler(new HttpCancelHandler(association, executorService, localTransactionContext, cancellationFlags), Methods.DELETE))
                 .addPrefixPath("/v1/discover", new AllowedMethodsHandler(new HttpDiscoveryHandler(executorService, association), Methods.GET));
-        EncodingHandler encodingHandler = new EncodingHandler(pathHandler, new ContentEncodingRepository().addEncodingHandler(Headers.GZIP.toString(), new GzipEncodingProvider(), 1));
+        //the default providers create new zlib state for every exchange, so pooled instances are used instead
+        ObjectPool<Deflater> deflaters = DeflatingStreamSinkConduit.simpleDeflaterPool(ZLIB_POOL_SIZE, COMPRESSION_LEVEL);
+        ObjectPool<Inflater> inflaters = InflatingStreamSourceConduit.simpleInflaterPool(ZLIB_POOL_SIZE);
+        //the dictionary state is set again every time a deflater or inflater is recycled
+        PresetDictionaryCoding dictionaryCoding = HttpProtocolV1Dictionary.CODING;
+        ObjectPool<Deflater> dictionaryDeflaters = new SimpleObjectPool<>(ZLIB_POOL_SIZE, () -> dictionaryCoding.createDeflater(COMPRESSION_LEVEL),
+                deflater -> {
+                    deflater.reset();
+                    dictionaryCoding.prepare(deflater);
+                }, Deflater::end);
+        ObjectPool<Inflater> dictionaryInflaters = new SimpleObjectPool<>(ZLIB_POOL_SIZE, dictionaryCoding::createInflater,
+                inflater -> {
+                    inflater.reset();
+                    dictionaryCoding.prepare(inflater);
+                }, Inflater::end);
+        //invocation results that have been through adaptive compression must not be encoded again
+        Predicate notAdaptivelyCompressed = exchange -> exchange.getAttachment(HttpInvocationHandler.ADAPTIVE_COMPRESSION) == null;
+        EncodingHandler encodingHandler = new EncodingHandler(pathHandler, new ContentEncodingRepository()
+                .addEncodingHandler(Headers.GZIP.toString(), new GzipEncodingProvider(deflaters), 1, notAdaptivelyCompressed)
+                .addEncodingHandler(dictionaryCoding.getName(), () -> (factory, exchange) -> new DeflatingStreamSinkConduit(factory, exchange, dictionaryDeflaters), 2, notAdaptivelyCompressed));
         RequestEncodingHandler requestEncodingHandler = new RequestEncodingHandler(encodingHandler);
-        requestEncodingHandler.addEncoding(Headers.GZIP.toString(), GzipStreamSourceConduit.WRAPPER);
-        return requestEncodingHandler;
+        requestEncodingHandler.addEncoding(Headers.GZIP.toString(), (factory, exchange) -> new GzipStreamSourceConduit(exchange, factory.create(), inflaters));
+        requestEncodingHandler.addEncoding(dictionaryCoding.getName(), (factory, exchange) -> new InflatingStreamSourceConduit(exchange, factory.create(), dictionaryInflaters));
+        return exchange -> {
+            //lets clients know they can send requests in the dictionary coding, see RFC 7694
+            exchange.getResponseHeaders().put(Headers.ACCEPT_ENCODING, REQUEST_ENCODINGS);
+            requestEncodingHandler.handleRequest(exchange);
+        };
+    }
+
+    /**
+     * @return the statistics for invocation results that went through adaptive compression, which is enabled with
+     * the {@code org.wildfly.httpclient.ejb.compression-threshold} system property
+     */
+    public CompressionStatistics getResponseCompressionStatistics() {
+        return responseCompression;
     }
 
 }
@@ -26,7 +26,7 @@ import org.jboss.ejb.server.ModuleAvailabilityListener;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
-import org.jboss.marshalling.river.RiverMarshallerFactory;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.NoFlushByteOutput;
 
 import java.io.ByteArrayOutputStream;
@@ -42,6 +42,8 @@ import java.util.concurrent.ExecutorService;
 
 public class HttpDiscoveryHandler extends RemoteHTTPHandler {
 
+    private static final MarshallerPool MARSHALLERS = new MarshallerPool(createMarshallingConfig());
+
     private final Set<EJBModuleIdentifier> availableModules = new HashSet<>();
 
     public HttpDiscoveryHandler(ExecutorService executorService, Association association) {
@@ -63,7 +65,7 @@ public class HttpDiscoveryHandler extends RemoteHTTPHandler {
     protected void handleInternal(HttpServerExchange exchange) throws Exception {
         exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, EjbHeaders.EJB_DISCOVERY_RESPONSE_VERSION_ONE.toString());
         final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        Marshaller marshaller = new RiverMarshallerFactory().createMarshaller(createMarshallingConfig());
+        Marshaller marshaller = MARSHALLERS.getMarshaller();
         marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(out)));
         marshaller.writeInt(availableModules.size());
         for (EJBModuleIdentifier ejbModuleIdentifier : availableModules) {
@@ -71,10 +73,11 @@ public class HttpDiscoveryHandler extends RemoteHTTPHandler {
         }
         marshaller.finish();
         marshaller.flush();
+        MARSHALLERS.release(marshaller);
         exchange.getResponseSender().send(ByteBuffer.wrap(out.toByteArray()));
     }
 
-    private MarshallingConfiguration createMarshallingConfig() {
+    private static MarshallingConfiguration createMarshallingConfig() {
         final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
         marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
         marshallingConfiguration.setVersion(2);
@@ -34,6 +34,7 @@ import org.wildfly.discovery.spi.DiscoveryProvider;
 import org.wildfly.discovery.spi.DiscoveryRequest;
 import org.wildfly.discovery.spi.DiscoveryResult;
 import org.wildfly.httpclient.common.HttpTargetContext;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.WildflyHttpContext;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
@@ -66,6 +67,11 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
 
     private static final AuthenticationContextConfigurationClient AUTH_CONFIGURATION_CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
 
+    /**
+     * The discovery response does not depend on the target, so every target shares one configuration
+     */
+    private static final MarshallerPool UNMARSHALLERS = new MarshallerPool(createMarshallingConfig());
+
     private static final long CACHE_REFRESH_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
             WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.discovery.cache-refresh-timeout", "300000")));
 
@@ -163,11 +169,10 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
                 .setMethod(Methods.GET);
         request.getRequestHeaders().add(Headers.ACCEPT, DISCOVERY_ACCEPT);
 
-        targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
+        targetContext.sendIdempotentRequest(request, sslContext, authenticationConfiguration,
                 ((result, response, closeable) -> {
                     try {
-                        final MarshallingConfiguration marshallingConfiguration = createMarshallingConfig();
-                        final Unmarshaller unmarshaller = targetContext.createUnmarshaller(marshallingConfiguration);
+                        final Unmarshaller unmarshaller = UNMARSHALLERS.getUnmarshaller();
 
                         unmarshaller.start(new InputStreamByteInput(result));
                         int size = unmarshaller.readInt();
@@ -177,6 +182,8 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
                             ServiceURL url = createServiceURL(newUri, ejbModuleIdentifier);
                             serviceURLCache.add(url);
                         }
+                        unmarshaller.finish();
+                        UNMARSHALLERS.release(unmarshaller);
                     } catch (Exception e) {
                         EjbHttpClientMessages.MESSAGES.unableToPerformEjbDiscovery(e);
                     } finally {
@@ -191,7 +198,7 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
                 EjbHeaders.EJB_DISCOVERY_RESPONSE_VERSION_ONE, null);
     }
 
-    private MarshallingConfiguration createMarshallingConfig() {
+    private static MarshallingConfiguration createMarshallingConfig() {
         final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
         marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
         marshallingConfiguration.setVersion(2);
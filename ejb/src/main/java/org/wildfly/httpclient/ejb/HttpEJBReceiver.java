@@ -39,7 +39,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import javax.ejb.Asynchronous;
 import javax.net.ssl.SSLContext;
@@ -62,7 +62,10 @@ import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.GzipStreams;
+import org.wildfly.httpclient.common.PresetDictionaryCoding;
 import org.wildfly.httpclient.common.HttpTargetContext;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.WildflyHttpContext;
 import org.wildfly.httpclient.transaction.XidProvider;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
@@ -91,6 +94,9 @@ class HttpEJBReceiver extends EJBReceiver {
         AUTH_CONTEXT_CLIENT = AccessController.doPrivileged((PrivilegedAction<AuthenticationContextConfigurationClient>) () -> new AuthenticationContextConfigurationClient());
     }
 
+    private static final AttachmentKey<MarshallerPool> MARSHALLERS = AttachmentKey.create(MarshallerPool.class);
+    private static final String RESPONSE_ENCODINGS = HttpProtocolV1Dictionary.ENCODING + ", " + Headers.GZIP;
+
     private final AttachmentKey<EjbContextData> EJB_CONTEXT_DATA = AttachmentKey.create(EjbContextData.class);
     private final org.jboss.ejb.client.AttachmentKey<String> INVOCATION_ID = new org.jboss.ejb.client.AttachmentKey<>();
     private final RemoteTransactionContext transactionContext;
@@ -161,15 +167,18 @@ class HttpEJBReceiver extends EJBReceiver {
                 receiverContext.proceedAsynchronously();
             }
         }
+        //with adaptive compression the size of the request body decides, rather than the compression hint
+        final boolean adaptiveCompression = targetContext.getConnectionPool().getCompressionThreshold() > 0;
         boolean compressResponse = receiverContext.getClientInvocationContext().isCompressResponse();
         ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
         if (compressResponse) {
-            request.getRequestHeaders().put(Headers.ACCEPT_ENCODING, Headers.GZIP.toString());
+            //servers that do not know the dictionary coding fall back to gzip
+            request.getRequestHeaders().put(Headers.ACCEPT_ENCODING, RESPONSE_ENCODINGS);
         }
-        request.getRequestHeaders().put(Headers.TRANSFER_ENCODING, Headers.CHUNKED.toString());
-        final boolean compressRequest = receiverContext.getClientInvocationContext().isCompressRequest();
+        final boolean compressRequest = !adaptiveCompression && receiverContext.getClientInvocationContext().isCompressRequest();
         if (compressRequest) {
-            request.getRequestHeaders().put(Headers.CONTENT_ENCODING, Headers.GZIP.toString());
+            //the target context falls back to gzip on connections to servers that have not said they accept this coding
+            request.getRequestHeaders().put(Headers.CONTENT_ENCODING, HttpProtocolV1Dictionary.ENCODING);
         }
         final AuthenticationContext context = receiverContext.getAuthenticationContext();
         final AuthenticationContextConfigurationClient client = CLIENT;
@@ -178,8 +187,16 @@ class HttpEJBReceiver extends EJBReceiver {
         final SSLContext sslContext = client.getSSLContext(uri, context, "jndi", "jboss");
         targetContext.sendRequest(request, sslContext, authenticationConfiguration, (output -> {
                     OutputStream data = output;
-                    if (compressRequest) {
-                        data = new GZIPOutputStream(data);
+                    if (adaptiveCompression) {
+                        data = targetContext.compressAdaptively(request, data, getCompressionLevel(clientInvocationContext, targetContext));
+                    } else if (compressRequest) {
+                        //the coding is only decided once the request has a connection
+                        PresetDictionaryCoding requestCoding = PresetDictionaryCoding.forName(request.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING));
+                        if (requestCoding != null) {
+                            data = requestCoding.compress(data, getCompressionLevel(clientInvocationContext, targetContext));
+                        } else {
+                            data = GzipStreams.compress(data, getCompressionLevel(clientInvocationContext, targetContext));
+                        }
                     }
                     try {
                         marshalEJBRequest(Marshalling.createByteOutput(data), clientInvocationContext, targetContext);
@@ -200,8 +217,8 @@ class HttpEJBReceiver extends EJBReceiver {
                                 Object returned = null;
                                 try {
 
-                                    final MarshallingConfiguration marshallingConfiguration = createMarshallingConfig(targetContext.getUri());
-                                    final Unmarshaller unmarshaller = targetContext.createUnmarshaller(marshallingConfiguration);
+                                    final MarshallerPool marshallers = getMarshallers(targetContext);
+                                    final Unmarshaller unmarshaller = marshallers.getUnmarshaller();
 
                                     unmarshaller.start(new InputStreamByteInput(input));
                                     returned = unmarshaller.readObject();
@@ -212,6 +229,7 @@ class HttpEJBReceiver extends EJBReceiver {
                                         exception = EjbHttpClientMessages.MESSAGES.unexpectedDataInResponse();
                                     }
                                     unmarshaller.finish();
+                                    marshallers.release(unmarshaller);
 
                                     // If there are any attachments, add them to the client invocation's context data
                                     if (attachments != null) {
@@ -281,11 +299,12 @@ class HttpEJBReceiver extends EJBReceiver {
                 .setBeanName(locator.getBeanName());
         ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
         targetContext.sendRequest(request, sslContext, authenticationConfiguration, output -> {
-                    MarshallingConfiguration config = createMarshallingConfig(targetContext.getUri());
-                    Marshaller marshaller = targetContext.createMarshaller(config);
+                    MarshallerPool marshallers = getMarshallers(targetContext);
+                    Marshaller marshaller = marshallers.getMarshaller();
                     marshaller.start(Marshalling.createByteOutput(output));
                     writeTransaction(ContextTransactionManager.getInstance().getTransaction(), marshaller, targetContext.getUri());
                     marshaller.finish();
+                    marshallers.release(marshaller);
                 },
                 ((unmarshaller, response, c) -> {
                     try {
@@ -353,7 +372,7 @@ class HttpEJBReceiver extends EJBReceiver {
             } finally {
                 IoUtils.safeClose(closeable);
             }
-        }, throwable -> result.complete(false), null, null);
+        }, throwable -> result.complete(false), null, null, false, true);
         try {
             return result.get();
         } catch (InterruptedException | ExecutionException e) {
@@ -361,7 +380,11 @@ class HttpEJBReceiver extends EJBReceiver {
         }
     }
 
-    private MarshallingConfiguration createMarshallingConfig(URI uri) {
+    private static MarshallerPool getMarshallers(HttpTargetContext targetContext) {
+        return targetContext.getMarshallerPool(MARSHALLERS, HttpEJBReceiver::createMarshallingConfig);
+    }
+
+    private static MarshallingConfiguration createMarshallingConfig(URI uri) {
         final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
         marshallingConfiguration.setObjectResolver(new HttpProtocolV1ObjectResolver(uri));
         marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
@@ -369,10 +392,19 @@ class HttpEJBReceiver extends EJBReceiver {
         return marshallingConfiguration;
     }
 
+    /**
+     * The level requested for the invocation, either by a compression hint or the client context default, otherwise
+     * the level configured for the target.
+     */
+    private static int getCompressionLevel(EJBClientInvocationContext clientInvocationContext, HttpTargetContext targetContext) {
+        int level = clientInvocationContext.getCompressionLevel();
+        return level != Deflater.DEFAULT_COMPRESSION ? level : targetContext.getConnectionPool().getCompressionLevel();
+    }
+
     private void marshalEJBRequest(ByteOutput byteOutput, EJBClientInvocationContext clientInvocationContext, HttpTargetContext targetContext) throws IOException, RollbackException, SystemException {
 
-        MarshallingConfiguration config = createMarshallingConfig(targetContext.getUri());
-        Marshaller marshaller = targetContext.createMarshaller(config);
+        MarshallerPool marshallers = getMarshallers(targetContext);
+        Marshaller marshaller = marshallers.getMarshaller();
         marshaller.start(byteOutput);
         writeTransaction(clientInvocationContext.getTransaction(), marshaller, targetContext.getUri());
 
@@ -399,6 +431,7 @@ class HttpEJBReceiver extends EJBReceiver {
         }
         // finish marshalling
         marshaller.finish();
+        marshallers.release(marshaller);
     }
 
 
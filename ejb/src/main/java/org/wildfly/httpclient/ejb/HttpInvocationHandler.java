@@ -54,9 +54,13 @@ import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.SimpleClassResolver;
 import org.jboss.marshalling.Unmarshaller;
 import org.wildfly.common.annotation.NotNull;
+import org.wildfly.httpclient.common.AcceptEncoding;
+import org.wildfly.httpclient.common.AdaptiveCompressionOutputStream;
+import org.wildfly.httpclient.common.CompressionStatistics;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.ElytronIdentityHandler;
 import org.wildfly.httpclient.common.HttpServerHelper;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.NoFlushByteOutput;
 import org.wildfly.security.auth.server.SecurityIdentity;
 import org.wildfly.transaction.client.ImportResult;
@@ -64,6 +68,8 @@ import org.wildfly.transaction.client.LocalTransaction;
 import org.wildfly.transaction.client.LocalTransactionContext;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.Cookie;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
 
@@ -72,20 +78,34 @@ import io.undertow.util.StatusCodes;
  */
 class HttpInvocationHandler extends RemoteHTTPHandler {
 
+    /**
+     * The results are always written with the same configuration, the class resolver is only needed when reading
+     */
+    private static final MarshallerPool RESULT_MARSHALLERS = new MarshallerPool(createResultMarshallingConfig());
+    /**
+     * Marks a response that has been through adaptive compression, so the encoding handler leaves it alone
+     */
+    static final AttachmentKey<Boolean> ADAPTIVE_COMPRESSION = AttachmentKey.create(Boolean.class);
+
     private final Association association;
     private final ExecutorService executorService;
     private final LocalTransactionContext localTransactionContext;
     private final Map<InvocationIdentifier, CancelHandle> cancellationFlags;
     private final Function<String, Boolean> classResolverFilter;
+    private final int compressionThreshold;
+    private final CompressionStatistics compressionStatistics;
 
     HttpInvocationHandler(Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
-                          Map<InvocationIdentifier, CancelHandle> cancellationFlags, Function<String, Boolean> classResolverFilter) {
+                          Map<InvocationIdentifier, CancelHandle> cancellationFlags, Function<String, Boolean> classResolverFilter,
+                          int compressionThreshold, CompressionStatistics compressionStatistics) {
         super(executorService);
         this.association = association;
         this.executorService = executorService;
         this.localTransactionContext = localTransactionContext;
         this.cancellationFlags = cancellationFlags;
         this.classResolverFilter = classResolverFilter;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionStatistics = compressionStatistics;
     }
 
     @Override
@@ -200,7 +220,7 @@ class HttpInvocationHandler extends RemoteHTTPHandler {
                             locator = new StatelessEJBLocator<>(view, app, module, bean, distinct, Affinity.LOCAL);
                         }
 
-                        return new ResolvedInvocation(contextData, methodParams, locator, exchange, marshallingConfiguration, sessionAffinity, transaction, identifier);
+                        return new ResolvedInvocation(contextData, methodParams, locator, exchange, sessionAffinity, transaction, identifier);
                     } catch (IOException | ClassNotFoundException e) {
                         throw e;
                     } catch (Throwable e) {
@@ -317,17 +337,15 @@ class HttpInvocationHandler extends RemoteHTTPHandler {
         private final Object[] methodParams;
         private final EJBLocator<?> locator;
         private final HttpServerExchange exchange;
-        private final MarshallingConfiguration marshallingConfiguration;
         private final String sessionAffinity;
         private final Transaction transaction;
         private final InvocationIdentifier identifier;
 
-        public ResolvedInvocation(Map<String, Object> contextData, Object[] methodParams, EJBLocator<?> locator, HttpServerExchange exchange, MarshallingConfiguration marshallingConfiguration, String sessionAffinity, Transaction transaction, final InvocationIdentifier identifier) {
+        public ResolvedInvocation(Map<String, Object> contextData, Object[] methodParams, EJBLocator<?> locator, HttpServerExchange exchange, String sessionAffinity, Transaction transaction, final InvocationIdentifier identifier) {
             this.contextData = contextData;
             this.methodParams = methodParams;
             this.locator = locator;
             this.exchange = exchange;
-            this.marshallingConfiguration = marshallingConfiguration;
             this.sessionAffinity = sessionAffinity;
             this.transaction = transaction;
             this.identifier = identifier;
@@ -376,8 +394,13 @@ class HttpInvocationHandler extends RemoteHTTPHandler {
 //                                    if (output.getSessionAffinity() != null) {
 //                                        exchange.getResponseCookies().put("JSESSIONID", new CookieImpl("JSESSIONID", output.getSessionAffinity()).setPath(WILDFLY_SERVICES));
 //                                    }
-                final Marshaller marshaller = HttpServerHelper.RIVER_MARSHALLER_FACTORY.createMarshaller(marshallingConfiguration);
+                final Marshaller marshaller = RESULT_MARSHALLERS.getMarshaller();
                 OutputStream outputStream = exchange.getOutputStream();
+                if (compressionThreshold > 0 && acceptsGzip(exchange)) {
+                    exchange.putAttachment(ADAPTIVE_COMPRESSION, Boolean.TRUE);
+                    outputStream = new AdaptiveCompressionOutputStream(outputStream, compressionThreshold, EjbHttpService.COMPRESSION_LEVEL,
+                            () -> exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, Headers.GZIP.toString()), compressionStatistics);
+                }
                 final ByteOutput byteOutput = new NoFlushByteOutput(Marshalling.createByteOutput(outputStream));
                 // start the marshaller
                 marshaller.start(byteOutput);
@@ -390,6 +413,9 @@ class HttpInvocationHandler extends RemoteHTTPHandler {
                 }
                 marshaller.finish();
                 marshaller.flush();
+                RESULT_MARSHALLERS.release(marshaller);
+                //writes out anything the adaptive compression is still holding back
+                outputStream.close();
                 exchange.endExchange();
             } catch (Exception e) {
                 HttpServerHelper.sendException(exchange, 500, e);
@@ -397,6 +423,18 @@ class HttpInvocationHandler extends RemoteHTTPHandler {
         }
     }
 
+    private static boolean acceptsGzip(HttpServerExchange exchange) {
+        HeaderValues acceptEncoding = exchange.getRequestHeaders().get(Headers.ACCEPT_ENCODING);
+        return acceptEncoding != null && AcceptEncoding.parse(String.join(",", acceptEncoding)).accepts(Headers.GZIP.toString());
+    }
+
+    private static MarshallingConfiguration createResultMarshallingConfig() {
+        final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
+        marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
+        marshallingConfiguration.setVersion(2);
+        return marshallingConfiguration;
+    }
+
     private static class FilteringClassResolver extends SimpleClassResolver {
         private final Function<String, Boolean> classResolverFilter;
         FilteringClassResolver(ClassLoader classLoader, Function<String, Boolean> classResolverFilter) {
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.wildfly.httpclient.common.PresetDictionaryCoding;
+
+/**
+ * The preset dictionary content coding for the EJB protocol. River writes the full class descriptor of every class
+ * the first time it shows up in a stream, so every invocation and result repeats the names of the locator, affinity,
+ * session and exception classes of {@link HttpProtocolV1ObjectTable} along with their field names.
+ * <p>
+ * The dictionary is shipped as a resource rather than built from the classes, so that renaming or shading a class
+ * cannot change its bytes.
+ */
+final class HttpProtocolV1Dictionary {
+
+    static final String ENCODING = "x-wf-ejb-deflate-v1";
+
+    /**
+     * Do NOT change this resource, both sides have to use the same dictionary, a different one needs a new coding
+     * name and a new resource. Entries that are more likely to show up come last, as those are the cheapest to refer
+     * back to.
+     */
+    static final String RESOURCE = ENCODING + ".dict";
+
+    static final PresetDictionaryCoding CODING = PresetDictionaryCoding.register(ENCODING, loadDictionary());
+
+    private HttpProtocolV1Dictionary() {
+    }
+
+    static byte[] loadDictionary() {
+        try (InputStream in = HttpProtocolV1Dictionary.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing dictionary " + RESOURCE);
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
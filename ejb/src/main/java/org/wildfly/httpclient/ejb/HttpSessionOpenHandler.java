@@ -39,6 +39,7 @@ import org.wildfly.common.annotation.NotNull;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.ElytronIdentityHandler;
 import org.wildfly.httpclient.common.HttpServerHelper;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.security.auth.server.SecurityIdentity;
 import org.wildfly.transaction.client.ImportResult;
 import org.wildfly.transaction.client.LocalTransaction;
@@ -56,6 +57,8 @@ import io.undertow.util.StatusCodes;
  */
 class HttpSessionOpenHandler extends RemoteHTTPHandler {
 
+    private static final MarshallerPool UNMARSHALLERS = new MarshallerPool(createMarshallingConfig());
+
 
     private final Association association;
     private final ExecutorService executorService;
@@ -103,15 +106,13 @@ class HttpSessionOpenHandler extends RemoteHTTPHandler {
         exchange.dispatch(executorService, () -> {
             final ReceivedTransaction txConfig;
             try {
-                final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
-                marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
-                marshallingConfiguration.setVersion(2);
-                Unmarshaller unmarshaller = HttpServerHelper.RIVER_MARSHALLER_FACTORY.createUnmarshaller(marshallingConfiguration);
+                Unmarshaller unmarshaller = UNMARSHALLERS.getUnmarshaller();
 
                 try (InputStream inputStream = exchange.getInputStream()) {
                     unmarshaller.start(new InputStreamByteInput(inputStream));
                     txConfig = readTransaction(unmarshaller);
                     unmarshaller.finish();
+                    UNMARSHALLERS.release(unmarshaller);
                 }
             } catch (Exception e) {
                 HttpServerHelper.sendException(exchange, StatusCodes.INTERNAL_SERVER_ERROR, e);
@@ -204,11 +205,6 @@ class HttpSessionOpenHandler extends RemoteHTTPHandler {
                 @Override
                 public void convertToStateful(@NotNull SessionID sessionId) throws IllegalArgumentException, IllegalStateException {
 
-
-                    final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
-                    marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
-                    marshallingConfiguration.setVersion(2);
-
                     Cookie sessionCookie = exchange.getRequestCookies().get(EjbHttpService.JSESSIONID);
                     if (sessionCookie == null) {
                         String rootPath = exchange.getResolvedPath();
@@ -241,4 +237,11 @@ class HttpSessionOpenHandler extends RemoteHTTPHandler {
         }
         return s;
     }
+
+    private static MarshallingConfiguration createMarshallingConfig() {
+        final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
+        marshallingConfiguration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
+        marshallingConfiguration.setVersion(2);
+        return marshallingConfiguration;
+    }
 }
@@ -23,6 +23,7 @@ import java.util.concurrent.ExecutorService;
 import javax.transaction.xa.Xid;
 
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.HttpServerHelper;
 import org.wildfly.transaction.client.SimpleXid;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
@@ -45,6 +46,7 @@ public abstract class RemoteHTTPHandler implements HttpHandler {
 
     @Override
     public final void handleRequest(HttpServerExchange exchange) throws Exception {
+        HttpServerHelper.recordRequestDeadline(exchange);
         if (exchange.isInIoThread()) {
             if (executorService == null) {
                 exchange.dispatch(this);
@@ -58,6 +60,10 @@ public abstract class RemoteHTTPHandler implements HttpHandler {
             exchange.dispatch(executorService, this);
             return;
         }
+        if (HttpServerHelper.endIfRequestExpired(exchange)) {
+            //the client has already given up on this request, so don't bother running it
+            return;
+        }
         exchange.startBlocking();
         handleInternal(exchange);
     }
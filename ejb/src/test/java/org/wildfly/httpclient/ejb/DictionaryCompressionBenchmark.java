@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import javax.ejb.EJBException;
+
+import org.jboss.ejb.client.EJBClientInvocationContext;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.URIAffinity;
+import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.Marshalling;
+import org.jboss.marshalling.MarshallingConfiguration;
+import org.jboss.marshalling.river.RiverMarshallerFactory;
+import org.junit.Test;
+import org.wildfly.httpclient.common.GzipStreams;
+import org.wildfly.httpclient.common.PresetDictionaryCoding;
+
+/**
+ * Compares the compression ratio and throughput of the preset dictionary coding with plain gzip, on payloads shaped
+ * like typical invocations, results and exceptions. This is not run as part of the normal build, run it with
+ * {@code mvn test -pl ejb -Dtest=DictionaryCompressionBenchmark}.
+ */
+public class DictionaryCompressionBenchmark {
+
+    private static final int WARMUP = Integer.getInteger("benchmark.warmup", 20_000);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 100_000);
+
+    @Test
+    public void compareWithGzip() throws Exception {
+        Map<String, Object> attachments = new HashMap<>();
+        attachments.put("jboss.source.address", "127.0.0.1");
+        Map<String, Object> values = new HashMap<>();
+        values.put("created", new Date(0));
+        values.put("items", Arrays.asList(1, 2, 3));
+
+        byte[] invocation = marshal(EJBClientInvocationContext.PRIVATE_ATTACHMENTS_KEY, new HashMap<>(),
+                new StatelessEJBLocator<>(Runnable.class, "app", "module", "CalculatorBean", "", URIAffinity.forUri(new URI("http://localhost:8080"))),
+                "a parameter", 42, attachments);
+        byte[] result = marshal(values, attachments);
+        byte[] exception = marshal(new EJBException("invocation failed", new IllegalStateException("a message")));
+
+        PresetDictionaryCoding dictionary = HttpProtocolV1Dictionary.CODING;
+        Codec gzip = new Codec("gzip", out -> GzipStreams.compress(out, Deflater.DEFAULT_COMPRESSION), GzipStreams::decompress);
+        Codec preset = new Codec(dictionary.getName(), out -> dictionary.compress(out, Deflater.DEFAULT_COMPRESSION), dictionary::decompress);
+        for (int i = 0; i < 2; ++i) {
+            for (Codec codec : new Codec[]{gzip, preset}) {
+                run(codec, "invocation", invocation);
+                run(codec, "result", result);
+                run(codec, "exception", exception);
+            }
+        }
+    }
+
+    private static void run(Codec codec, String payloadName, byte[] payload) throws IOException {
+        byte[] compressed = codec.compress(payload);
+        for (int i = 0; i < WARMUP; ++i) {
+            codec.decompress(codec.compress(payload));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            codec.compress(payload);
+        }
+        long compressTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            codec.decompress(compressed);
+        }
+        long decompressTime = System.nanoTime() - start;
+        System.out.printf("%-20s %-10s %5d -> %5d bytes (%5.1f%%), compress %7.1f ns/op, decompress %7.1f ns/op%n",
+                codec.name, payloadName, payload.length, compressed.length, compressed.length * 100.0 / payload.length,
+                (double) compressTime / ITERATIONS, (double) decompressTime / ITERATIONS);
+    }
+
+    private static byte[] marshal(Object... objects) throws IOException {
+        MarshallingConfiguration configuration = new MarshallingConfiguration();
+        configuration.setObjectTable(HttpProtocolV1ObjectTable.INSTANCE);
+        configuration.setVersion(2);
+        Marshaller marshaller = new RiverMarshallerFactory().createMarshaller(configuration);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshaller.start(Marshalling.createByteOutput(out));
+        for (Object object : objects) {
+            marshaller.writeObject(object);
+        }
+        marshaller.finish();
+        return out.toByteArray();
+    }
+
+    private interface Compressor {
+        OutputStream compress(OutputStream out) throws IOException;
+    }
+
+    private interface Decompressor {
+        InputStream decompress(InputStream in) throws IOException;
+    }
+
+    private static final class Codec {
+
+        private final String name;
+        private final Compressor compressor;
+        private final Decompressor decompressor;
+        private final byte[] buffer = new byte[1024];
+
+        Codec(String name, Compressor compressor, Decompressor decompressor) {
+            this.name = name;
+            this.compressor = compressor;
+            this.decompressor = decompressor;
+        }
+
+        byte[] compress(byte[] data) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            try (OutputStream compressed = compressor.compress(out)) {
+                compressed.write(data);
+            }
+            return out.toByteArray();
+        }
+
+        int decompress(byte[] data) throws IOException {
+            int size = 0;
+            try (InputStream in = decompressor.decompress(new ByteArrayInputStream(data))) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                }
+            }
+            return size;
+        }
+    }
+}
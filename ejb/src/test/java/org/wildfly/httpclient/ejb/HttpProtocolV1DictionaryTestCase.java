@@ -0,0 +1,46 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpProtocolV1DictionaryTestCase {
+
+    /**
+     * Peers that are already deployed compress against these exact bytes, so if this fails the dictionary has been
+     * changed and needs a new coding name instead.
+     */
+    @Test
+    public void testDictionaryIsPinned() throws Exception {
+        byte[] dictionary = HttpProtocolV1Dictionary.loadDictionary();
+        Assert.assertEquals(2537, dictionary.length);
+        Assert.assertEquals("24352a6cbdbe7d4909d9f2a6aa02852451a3f3040c9b1b617463f3f82806a56e", hex(MessageDigest.getInstance("SHA-256").digest(dictionary)));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+}
@@ -31,15 +31,15 @@ import javax.naming.NamingException;
 import org.jboss.marshalling.ContextClassResolver;
 import org.jboss.marshalling.InputStreamByteInput;
 import org.jboss.marshalling.Marshaller;
-import org.jboss.marshalling.MarshallerFactory;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.Unmarshaller;
-import org.jboss.marshalling.river.RiverMarshallerFactory;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.ElytronIdentityHandler;
 import org.wildfly.httpclient.common.HttpServerHelper;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.NoFlushByteOutput;
+import org.wildfly.httpclient.common.RequestDeadlineHandler;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.RoutingHandler;
@@ -66,10 +66,15 @@ public class HttpRemoteNamingService {
     private static final String RENAME = "/v1/rename/{name}";
     private static final String CREATE_SUBCONTEXT = "/v1/create-subcontext/{name}";
 
-    private static final MarshallerFactory MARSHALLER_FACTORY = new RiverMarshallerFactory();
+    private static final MarshallerPool MARSHALLERS = new MarshallerPool(createMarshallingConfig());
 
     private final Context localContext;
     private final Function<String, Boolean> classResolverFilter;
+    /**
+     * The filtering class resolver resolves against the context class loader when it is used, so one pool serves
+     * every bind request
+     */
+    private final MarshallerPool bindUnmarshallers;
 
     public HttpRemoteNamingService(Context localContext) {
         this(localContext, null);
@@ -78,6 +83,11 @@ public class HttpRemoteNamingService {
     public HttpRemoteNamingService(Context localContext, Function<String, Boolean> classResolverFilter) {
         this.localContext = localContext;
         this.classResolverFilter = classResolverFilter;
+        final MarshallingConfiguration marshallingConfiguration = createMarshallingConfig();
+        if (classResolverFilter != null) {
+            marshallingConfiguration.setClassResolver(new FilterClassResolver(classResolverFilter));
+        }
+        this.bindUnmarshallers = new MarshallerPool(marshallingConfiguration);
     }
 
 
@@ -93,7 +103,7 @@ public class HttpRemoteNamingService {
         routingHandler.add(Methods.GET, LIST_BINDINGS, new ListBindingsHandler());
         routingHandler.add(Methods.PATCH, RENAME, new RenameHandler());
         routingHandler.add(Methods.PUT, CREATE_SUBCONTEXT, new CreateSubContextHandler());
-        return new BlockingHandler(new ElytronIdentityHandler(routingHandler));
+        return new RequestDeadlineHandler(new BlockingHandler(new ElytronIdentityHandler(routingHandler)));
     }
 
 
@@ -212,16 +222,12 @@ public class HttpRemoteNamingService {
                 exchange.endExchange();
                 return null;
             }
-            final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
-            marshallingConfiguration.setVersion(2);
-            if (classResolverFilter != null) {
-                marshallingConfiguration.setClassResolver(new FilterClassResolver(classResolverFilter));
-            }
             try (InputStream inputStream = exchange.getInputStream()) {
-                Unmarshaller unmarshaller = MARSHALLER_FACTORY.createUnmarshaller(marshallingConfiguration);
+                Unmarshaller unmarshaller = bindUnmarshallers.getUnmarshaller();
                 unmarshaller.start(new InputStreamByteInput(inputStream));
                 Object object = unmarshaller.readObject();
                 unmarshaller.finish();
+                bindUnmarshallers.release(unmarshaller);
                 doOperation(name, object);
             } catch (Exception e) {
                 if (e instanceof NamingException) {
@@ -241,13 +247,18 @@ public class HttpRemoteNamingService {
 
     private static void doMarshall(HttpServerExchange exchange, Object result) throws IOException {
         exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/x-wf-jndi-jbmar-value;version=1");
-        final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
-        marshallingConfiguration.setVersion(2);
-        Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(marshallingConfiguration);
+        Marshaller marshaller = MARSHALLERS.getMarshaller();
         marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(exchange.getOutputStream())));
         marshaller.writeObject(result);
         marshaller.finish();
         marshaller.flush();
+        MARSHALLERS.release(marshaller);
+    }
+
+    private static MarshallingConfiguration createMarshallingConfig() {
+        final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
+        marshallingConfiguration.setVersion(2);
+        return marshallingConfiguration;
     }
 
     public static void sendException(HttpServerExchange exchange, int status, Throwable e) throws IOException {
@@ -50,6 +50,7 @@ import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.Unmarshaller;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.HttpTargetContext;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.WildflyHttpContext;
 import org.wildfly.naming.client.AbstractContext;
 import org.wildfly.naming.client.CloseableNamingEnumeration;
@@ -65,6 +66,7 @@ import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient
 import org.xnio.IoUtils;
 
 import io.undertow.client.ClientRequest;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
@@ -91,6 +93,7 @@ public class HttpRootContext extends AbstractContext {
     private final String scheme;
 
     private static final HttpNamingEjbObjectResolverHelper helper;
+    private static final AttachmentKey<MarshallerPool> MARSHALLERS = AttachmentKey.create(MarshallerPool.class);
 
     static {
         HttpNamingEjbObjectResolverHelper h = null;
@@ -116,23 +119,23 @@ public class HttpRootContext extends AbstractContext {
 
     @Override
     protected Object lookupNative(Name name) throws NamingException {
-        return processInvocation(name, Methods.POST, "naming/v1/lookup/");
+        return processInvocation(name, Methods.POST, "naming/v1/lookup/", false);
     }
 
     @Override
     protected Object lookupLinkNative(Name name) throws NamingException {
-        return processInvocation(name, Methods.POST, "naming/v1/lookuplink/");
+        return processInvocation(name, Methods.POST, "naming/v1/lookuplink/", false);
     }
 
     @Override
     protected CloseableNamingEnumeration<NameClassPair> listNative(Name name) throws NamingException {
-        Collection<NameClassPair> result = (Collection<NameClassPair>) processInvocation(name, Methods.GET, "naming/v1/list/");
+        Collection<NameClassPair> result = (Collection<NameClassPair>) processInvocation(name, Methods.GET, "naming/v1/list/", true);
         return CloseableNamingEnumeration.fromIterable(result);
     }
 
     @Override
     protected CloseableNamingEnumeration<Binding> listBindingsNative(Name name) throws NamingException {
-        Collection<Binding> result = (Collection<Binding>) processInvocation(name, Methods.GET, "naming/v1/list-bindings/");
+        Collection<Binding> result = (Collection<Binding>) processInvocation(name, Methods.GET, "naming/v1/list-bindings/", true);
         return CloseableNamingEnumeration.fromIterable(result);
     }
 
@@ -164,10 +167,14 @@ public class HttpRootContext extends AbstractContext {
 
     @Override
     protected Context createSubcontextNative(Name name) throws NamingException {
-        processInvocation(name, Methods.PUT, "naming/v1/create-subcontext/");
+        processInvocation(name, Methods.PUT, "naming/v1/create-subcontext/", false);
         return new HttpRemoteContext(this, name.toString());
     }
 
+    private static MarshallerPool getMarshallers(HttpTargetContext targetContext) {
+        return targetContext.getMarshallerPool(MARSHALLERS, HttpRootContext::createMarshallingConfig);
+    }
+
     private static MarshallingConfiguration createMarshallingConfig(URI uri) {
         final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
         marshallingConfiguration.setVersion(2);
@@ -234,7 +241,11 @@ public class HttpRootContext extends AbstractContext {
         environment.updateBlacklist(location);
     }
 
-    private Object processInvocation(Name name, HttpString method, String pathSegment) throws NamingException {
+    /**
+     * @param idempotent {@code true} if the operation is a {@code GET} that only reads, so the request may be hedged.
+     *                   A lookup may create state on the server, such as a stateful session bean, so it is not.
+     */
+    private Object processInvocation(Name name, HttpString method, String pathSegment, boolean idempotent) throws NamingException {
         ProviderEnvironment environment = httpNamingProvider.getProviderEnvironment();
         final RetryContext context = canRetry(environment) ? new RetryContext() : null;
         return performWithRetry((contextOrNull, name1, param) -> {
@@ -256,7 +267,7 @@ public class HttpRootContext extends AbstractContext {
                         .setMethod(method);
                 clientRequest.getRequestHeaders().put(Headers.ACCEPT, ACCEPT_VALUE);
 
-                return performOperation(name1, peerIdentity.getUri(), clientRequest);
+                return performOperation(name1, peerIdentity.getUri(), clientRequest, idempotent);
 
             } catch (UnsupportedEncodingException e) {
                 NamingException namingException = new NamingException(e.getMessage());
@@ -266,7 +277,7 @@ public class HttpRootContext extends AbstractContext {
         }, environment, context, name, null);
     }
 
-    private Object performOperation(Name name, URI providerUri, ClientRequest clientRequest) throws NamingException {
+    private Object performOperation(Name name, URI providerUri, ClientRequest clientRequest, boolean idempotent) throws NamingException {
         final CompletableFuture<Object> result = new CompletableFuture<>();
         final HttpTargetContext targetContext = WildflyHttpContext.getCurrent().getTargetContext(providerUri);
         final ProviderEnvironment providerEnvironment = httpNamingProvider.getProviderEnvironment();
@@ -283,7 +294,7 @@ public class HttpRootContext extends AbstractContext {
             throw e2;
         }
         final ClassLoader tccl = getContextClassLoader();
-        targetContext.sendRequest(clientRequest, sslContext, authenticationConfiguration, null, (input, response, closeable) -> {
+        final HttpTargetContext.HttpResultHandler resultHandler = (input, response, closeable) -> {
             try {
                 if (response.getResponseCode() == StatusCodes.NO_CONTENT) {
                     result.complete(new HttpRemoteContext(HttpRootContext.this, name.toString()));
@@ -297,8 +308,8 @@ public class HttpRootContext extends AbstractContext {
                     Object returned = null;
                     ClassLoader old = setContextClassLoader(tccl);
                     try {
-                        final MarshallingConfiguration marshallingConfiguration = createMarshallingConfig(providerUri);
-                        final Unmarshaller unmarshaller = targetContext.createUnmarshaller(marshallingConfiguration);
+                        final MarshallerPool marshallers = getMarshallers(targetContext);
+                        final Unmarshaller unmarshaller = marshallers.getUnmarshaller();
                         unmarshaller.start(new InputStreamByteInput(input));
                         returned = unmarshaller.readObject();
                         // finish unmarshalling
@@ -306,6 +317,7 @@ public class HttpRootContext extends AbstractContext {
                             exception = HttpNamingClientMessages.MESSAGES.unexpectedDataInResponse();
                         }
                         unmarshaller.finish();
+                        marshallers.release(unmarshaller);
 
                         if (response.getResponseCode() >= 400) {
                             exception = (Exception) returned;
@@ -326,7 +338,12 @@ public class HttpRootContext extends AbstractContext {
             } finally {
                 IoUtils.safeClose(closeable);
             }
-        }, result::completeExceptionally, VALUE_TYPE, null, true);
+        };
+        if (idempotent) {
+            targetContext.sendIdempotentRequest(clientRequest, sslContext, authenticationConfiguration, resultHandler, result::completeExceptionally, VALUE_TYPE, null, true);
+        } else {
+            targetContext.sendRequest(clientRequest, sslContext, authenticationConfiguration, null, resultHandler, result::completeExceptionally, VALUE_TYPE, null, true);
+        }
 
         try {
             return result.get();
@@ -411,10 +428,12 @@ public class HttpRootContext extends AbstractContext {
         }
         targetContext.sendRequest(clientRequest, sslContext, authenticationConfiguration, output -> {
             if (object != null) {
-                Marshaller marshaller = targetContext.createMarshaller(createMarshallingConfig(providerUri));
+                MarshallerPool marshallers = getMarshallers(targetContext);
+                Marshaller marshaller = marshallers.getMarshaller();
                 marshaller.start(Marshalling.createByteOutput(output));
                 marshaller.writeObject(object);
                 marshaller.finish();
+                marshallers.release(marshaller);
             }
             output.close();
         }, (input, response, closeable) -> {
@@ -85,7 +85,7 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
             cr.getRequestHeaders().put(Headers.ACCEPT, TransactionConstants.EXCEPTION);
             cr.getRequestHeaders().put(Headers.CONTENT_TYPE, TransactionConstants.XID_VERSION_1);
             targetContext.sendRequest(cr, sslContext, authenticationConfiguration, output -> {
-                Marshaller marshaller = targetContext.createMarshaller(HttpRemoteTransactionPeer.createMarshallingConf());
+                Marshaller marshaller = HttpRemoteTransactionPeer.MARSHALLERS.getMarshaller();
                 marshaller.start(Marshalling.createByteOutput(output));
                 marshaller.writeInt(id.getFormatId());
                 final byte[] gtid = id.getGlobalTransactionId();
@@ -95,6 +95,7 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
                 marshaller.writeInt(bq.length);
                 marshaller.write(bq);
                 marshaller.finish();
+                HttpRemoteTransactionPeer.MARSHALLERS.release(marshaller);
                 output.close();
             }, (input, response, closable) -> {
                 try {
@@ -102,7 +103,7 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
                 } finally {
                     IoUtils.safeClose(closable);
                 }
-            }, result::completeExceptionally, null, null);
+            }, result::completeExceptionally, null, null, false, true);
 
             try {
                 result.get();
@@ -154,7 +155,7 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
             cr.getRequestHeaders().put(Headers.ACCEPT, TransactionConstants.EXCEPTION);
             cr.getRequestHeaders().put(Headers.CONTENT_TYPE, TransactionConstants.XID_VERSION_1);
             targetContext.sendRequest(cr, sslContext, authenticationConfiguration, output -> {
-                Marshaller marshaller = targetContext.createMarshaller(HttpRemoteTransactionPeer.createMarshallingConf());
+                Marshaller marshaller = HttpRemoteTransactionPeer.MARSHALLERS.getMarshaller();
                 marshaller.start(Marshalling.createByteOutput(output));
                 marshaller.writeInt(id.getFormatId());
                 final byte[] gtid = id.getGlobalTransactionId();
@@ -164,6 +165,7 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
                 marshaller.writeInt(bq.length);
                 marshaller.write(bq);
                 marshaller.finish();
+                HttpRemoteTransactionPeer.MARSHALLERS.release(marshaller);
                 output.close();
             }, (input, response, closeable) -> {
                 try {
@@ -171,7 +173,7 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
                 } finally {
                     IoUtils.safeClose(closeable);
                 }
-            }, result::completeExceptionally, null, null);
+            }, result::completeExceptionally, null, null, false, true);
 
             try {
                 result.get();
@@ -31,6 +31,7 @@ import org.jboss.marshalling.InputStreamByteInput;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.Unmarshaller;
 import org.wildfly.httpclient.common.HttpTargetContext;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
 import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
@@ -51,6 +52,7 @@ import static java.security.AccessController.doPrivileged;
  */
 public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
     private static final AuthenticationContextConfigurationClient CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
+    static final MarshallerPool MARSHALLERS = new MarshallerPool(createMarshallingConf());
 
     private final HttpTargetContext targetContext;
     private final SSLContext sslContext;
@@ -96,9 +98,10 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
             throw xaException;
         }
 
-        targetContext.sendRequest(cr,  sslContext, authenticationConfiguration,null, (result, response, closeable) -> {
+        //a recovery scan moves the scan cursor on the server, so it must not be hedged
+        targetContext.sendRequest(cr, sslContext, authenticationConfiguration, null, (result, response, closeable) -> {
             try {
-                Unmarshaller unmarshaller = targetContext.createUnmarshaller(createMarshallingConf());
+                Unmarshaller unmarshaller = MARSHALLERS.getUnmarshaller();
                 unmarshaller.start(new InputStreamByteInput(result));
                 int length = unmarshaller.readInt();
                 Xid[] ret = new Xid[length];
@@ -112,8 +115,9 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
                     unmarshaller.readFully(branchId);
                     ret[i] = new SimpleXid(formatId, globalId, branchId);
                 }
-                xidList.complete(ret);
                 unmarshaller.finish();
+                MARSHALLERS.release(unmarshaller);
+                xidList.complete(ret);
             } catch (Exception e) {
                 xidList.completeExceptionally(e);
             } finally {
@@ -156,7 +160,7 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
 
         targetContext.sendRequest(cr, sslContext, authenticationConfiguration, null, (result, response, closeable) -> {
             try {
-                Unmarshaller unmarshaller = targetContext.createUnmarshaller(createMarshallingConf());
+                Unmarshaller unmarshaller = MARSHALLERS.getUnmarshaller();
                 unmarshaller.start(new InputStreamByteInput(result));
                 int formatId = unmarshaller.readInt();
                 int len = unmarshaller.readInt();
@@ -166,8 +170,9 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
                 byte[] branchId = new byte[len];
                 unmarshaller.readFully(branchId);
                 SimpleXid simpleXid = new SimpleXid(formatId, globalId, branchId);
-                beginXid.complete(simpleXid);
                 unmarshaller.finish();
+                MARSHALLERS.release(unmarshaller);
+                beginXid.complete(simpleXid);
             } catch (Exception e) {
                 beginXid.completeExceptionally(e);
             } finally {
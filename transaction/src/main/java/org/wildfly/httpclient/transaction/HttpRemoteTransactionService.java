@@ -28,15 +28,15 @@ import javax.transaction.xa.Xid;
 import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.InputStreamByteInput;
 import org.jboss.marshalling.Marshaller;
-import org.jboss.marshalling.MarshallerFactory;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.Unmarshaller;
-import org.jboss.marshalling.river.RiverMarshallerFactory;
 import org.wildfly.common.function.ExceptionBiFunction;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.ElytronIdentityHandler;
+import org.wildfly.httpclient.common.MarshallerPool;
 import org.wildfly.httpclient.common.NoFlushByteOutput;
+import org.wildfly.httpclient.common.RequestDeadlineHandler;
 import org.wildfly.transaction.client.ImportResult;
 import org.wildfly.transaction.client.LocalTransaction;
 import org.wildfly.transaction.client.LocalTransactionContext;
@@ -57,7 +57,7 @@ public class HttpRemoteTransactionService {
     private final LocalTransactionContext transactionContext;
     private final Function<LocalTransaction, Xid> xidResolver;
 
-    private static final MarshallerFactory MARSHALLER_FACTORY = new RiverMarshallerFactory();
+    private static final MarshallerPool MARSHALLERS = new MarshallerPool(createMarshallingConf());
 
     public HttpRemoteTransactionService(LocalTransactionContext transactionContext, Function<LocalTransaction, Xid> xidResolver) {
         this.transactionContext = transactionContext;
@@ -75,7 +75,7 @@ public class HttpRemoteTransactionService {
         routingHandler.add(Methods.POST, TransactionConstants.V1_XA_PREP, new XAPrepHandler());
         routingHandler.add(Methods.POST, TransactionConstants.V1_XA_ROLLBACK, new XARollbackHandler());
         routingHandler.add(Methods.GET, TransactionConstants.V1_XA_RECOVER, new XARecoveryHandler());
-        return new BlockingHandler(new ElytronIdentityHandler(routingHandler));
+        return new RequestDeadlineHandler(new BlockingHandler(new ElytronIdentityHandler(routingHandler)));
     }
 
     abstract class AbstractTransactionHandler implements HttpHandler {
@@ -90,7 +90,7 @@ public class HttpRemoteTransactionService {
             }
 
             try {
-                Unmarshaller unmarshaller = MARSHALLER_FACTORY.createUnmarshaller(createMarshallingConf());
+                Unmarshaller unmarshaller = MARSHALLERS.getUnmarshaller();
                 unmarshaller.start(new InputStreamByteInput(exchange.getInputStream()));
                 int formatId = unmarshaller.readInt();
                 int len = unmarshaller.readInt();
@@ -101,6 +101,7 @@ public class HttpRemoteTransactionService {
                 unmarshaller.readFully(branchId);
                 SimpleXid simpleXid = new SimpleXid(formatId, globalId, branchId);
                 unmarshaller.finish();
+                MARSHALLERS.release(unmarshaller);
 
                 ImportResult<LocalTransaction> transaction = transactionContext.findOrImportTransaction(simpleXid, 0);
                 transaction.getTransaction().performFunction((ExceptionBiFunction<ImportResult<LocalTransaction>, HttpServerExchange, Void, Exception>) (o, exchange2) -> {
@@ -131,7 +132,7 @@ public class HttpRemoteTransactionService {
                 final LocalTransaction transaction = transactionContext.beginTransaction(timeout);
                 final Xid xid = xidResolver.apply(transaction);
                 final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(createMarshallingConf());
+                Marshaller marshaller = MARSHALLERS.getMarshaller();
                 marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(out)));
                 marshaller.writeInt(xid.getFormatId());
                 marshaller.writeInt(xid.getGlobalTransactionId().length);
@@ -139,6 +140,7 @@ public class HttpRemoteTransactionService {
                 marshaller.writeInt(xid.getBranchQualifier().length);
                 marshaller.write(xid.getBranchQualifier());
                 marshaller.finish();
+                MARSHALLERS.release(marshaller);
                 exchange.getResponseSender().send(ByteBuffer.wrap(out.toByteArray()));
             } catch (Exception e) {
                 sendException(exchange, StatusCodes.INTERNAL_SERVER_ERROR, e);
@@ -167,7 +169,7 @@ public class HttpRemoteTransactionService {
 
                 final Xid[] recoveryList = transactionContext.getRecoveryInterface().recover(flags, parentName);
                 final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(createMarshallingConf());
+                Marshaller marshaller = MARSHALLERS.getMarshaller();
                 marshaller.start(new NoFlushByteOutput(Marshalling.createByteOutput(out)));
                 marshaller.writeInt(recoveryList.length);
                 for (int i = 0; i < recoveryList.length; ++i) {
@@ -179,6 +181,7 @@ public class HttpRemoteTransactionService {
                     marshaller.write(xid.getBranchQualifier());
                 }
                 marshaller.finish();
+                MARSHALLERS.release(marshaller);
                 exchange.getResponseSender().send(ByteBuffer.wrap(out.toByteArray()));
             } catch (Exception e) {
                 sendException(exchange, StatusCodes.INTERNAL_SERVER_ERROR, e);
@@ -259,9 +262,7 @@ public class HttpRemoteTransactionService {
             exchange.setStatusCode(status);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/x-wf-jbmar-exception;version=1");
 
-            final MarshallingConfiguration marshallingConfiguration = new MarshallingConfiguration();
-            marshallingConfiguration.setVersion(2);
-            final Marshaller marshaller = MARSHALLER_FACTORY.createMarshaller(marshallingConfiguration);
+            final Marshaller marshaller = MARSHALLERS.getMarshaller();
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             final ByteOutput byteOutput = new NoFlushByteOutput(Marshalling.createByteOutput(outputStream));
             // start the marshaller
@@ -270,6 +271,7 @@ public class HttpRemoteTransactionService {
             marshaller.write(0);
             marshaller.finish();
             marshaller.flush();
+            MARSHALLERS.release(marshaller);
             exchange.getResponseSender().send(ByteBuffer.wrap(outputStream.toByteArray()));
         } catch (IOException e1) {
             HttpRemoteTransactionMessages.MESSAGES.debugf(e, "Failed to write exception");
@@ -110,7 +110,7 @@ class HttpSubordinateTransactionHandle implements SubordinateTransactionControl
         cr.getRequestHeaders().put(Headers.ACCEPT, TransactionConstants.EXCEPTION);
         cr.getRequestHeaders().put(Headers.CONTENT_TYPE, TransactionConstants.XID_VERSION_1);
         targetContext.sendRequest(cr, sslContext, authenticationConfiguration, output -> {
-            Marshaller marshaller = targetContext.createMarshaller(HttpRemoteTransactionPeer.createMarshallingConf());
+            Marshaller marshaller = HttpRemoteTransactionPeer.MARSHALLERS.getMarshaller();
             marshaller.start(Marshalling.createByteOutput(output));
             marshaller.writeInt(id.getFormatId());
             final byte[] gtid = id.getGlobalTransactionId();
@@ -120,6 +120,7 @@ class HttpSubordinateTransactionHandle implements SubordinateTransactionControl
             marshaller.writeInt(bq.length);
             marshaller.write(bq);
             marshaller.finish();
+            HttpRemoteTransactionPeer.MARSHALLERS.release(marshaller);
             output.close();
         }, (input, response, closeable) -> {
             try {
@@ -127,7 +128,7 @@ class HttpSubordinateTransactionHandle implements SubordinateTransactionControl
             } finally {
                 IoUtils.safeClose(closeable);
             }
-        }, result::completeExceptionally, null, null);
+        }, result::completeExceptionally, null, null, false, true);
 
         try {
             try {